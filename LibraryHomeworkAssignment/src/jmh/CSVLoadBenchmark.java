@@ -0,0 +1,90 @@
+package jmh;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.services.BulkCSVLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import test.benchmark.SyntheticCatalogue;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Compares the original readLine/split loader with BulkCSVLoader, on one thread and on
+// every core into a presized store. Each operation is one full load of the catalogue.
+// Usage: mvn -B -Pjmh verify -Djmh.args="CSVLoadBenchmark -p rows=2000000"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CSVLoadBenchmark {
+    @Param({"2000000"})
+    int rows;
+
+    Path csv;
+    int cores;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cores = Runtime.getRuntime().availableProcessors();
+        csv = Files.createTempFile("catalogue", ".csv");
+        SyntheticCatalogue.write(csv, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public LibraryDataStore legacy() throws Exception {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        legacyLoad(dataStore, csv.toString());
+        return dataStore;
+    }
+
+    @Benchmark
+    public LibraryDataStore bulkSingleThread() throws Exception {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        BulkCSVLoader.load(dataStore, csv, 1);
+        return dataStore;
+    }
+
+    @Benchmark
+    public LibraryDataStore bulkParallelPresized() throws Exception {
+        return BulkCSVLoader.loadNewStore(csv, cores, new ArrayList<>());
+    }
+
+    // The loader as it was before BulkCSVLoader, kept here as the baseline
+    private static void legacyLoad(LibraryDataStore dataStore, String filePath) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] data = line.split(",");
+                ItemType type = ItemType.fromCsvName(data[2]);
+                if (type != null) {
+                    dataStore.addItem(type.create(Integer.parseInt(data[0]), Integer.parseInt(data[1]), data[3]));
+                }
+            }
+        }
+    }
+}
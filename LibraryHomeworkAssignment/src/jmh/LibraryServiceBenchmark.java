@@ -0,0 +1,191 @@
+package jmh;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BatchMode;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+import test.benchmark.SyntheticCatalogue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// The main LibraryService operations over generated catalogues.
+// Usage: mvn -B -Pjmh verify -Djmh.args="LibraryServiceBenchmark -p size=1000000 -t 4"
+// Run with a heap large enough for the biggest catalogue, e.g. -jvmArgs -Xmx8g for 10M items.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryServiceBenchmark {
+    // Share of copies on loan with a due date in the past, so the overdue queries have work to do
+    private static final int OVERDUE_PERCENT = 1;
+    // Held so the quieter levels are not lost when the loggers are garbage collected
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final Logger CSV_LOGGER = Logger.getLogger(CSVUtility.class.getName());
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    Path csv;
+    LibraryService libraryService;
+    // Each thread cycles through its own slice of the lower half of the catalogue, so borrows succeed
+    final AtomicInteger slices = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SERVICE_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        CSV_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        csv = Files.createTempFile("catalogue", ".csv");
+        SyntheticCatalogue.write(csv, size);
+        LibraryDataStore dataStore = new LibraryDataStore(size);
+        CSVUtility.loadItemsFromCSV(dataStore, csv.toString());
+        libraryService = new LibraryService(dataStore);
+        lendOverdueCopies();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(csv);
+    }
+
+    @State(Scope.Thread)
+    public static class Patron {
+        User user;
+        int first;
+        int perThread;
+        int next;
+        int[] batch;
+
+        @Param({"16"})
+        int batchSize;
+
+        @Setup(Level.Trial)
+        public void setUp(LibraryServiceBenchmark benchmark, BenchmarkParams params) {
+            int slice = benchmark.slices.getAndIncrement();
+            user = new User("Bench" + slice);
+            perThread = Math.max(batchSize, benchmark.size / params.getThreads() / 2);
+            first = 1 + slice * perThread;
+            batch = new int[batchSize];
+        }
+
+        int nextUniqueId() {
+            int uniqueId = first + next;
+            next = (next + 1) % perThread;
+            return uniqueId;
+        }
+
+        int[] nextBatch() {
+            if (next + batchSize > perThread) {
+                next = 0;
+            }
+            for (int i = 0; i < batchSize; i++) {
+                batch[i] = first + next + i;
+            }
+            next += batchSize;
+            return batch;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public LibraryDataStore loadItemsFromCSV() throws Exception {
+        LibraryDataStore dataStore = new LibraryDataStore(size);
+        CSVUtility.loadItemsFromCSV(dataStore, csv.toString());
+        return dataStore;
+    }
+
+    @Benchmark
+    public boolean borrowItemReturnItem(Patron patron) {
+        int uniqueId = patron.nextUniqueId();
+        return libraryService.borrowItem(uniqueId, patron.user) && libraryService.returnItem(uniqueId, patron.user);
+    }
+
+    @Benchmark
+    public boolean isAvailable() {
+        return libraryService.isAvailable(1 + ThreadLocalRandom.current().nextInt(size));
+    }
+
+    // One operation is a whole batch, so items per second is ops/s times the batch size
+    @Benchmark
+    public void borrowItemsReturnItems(Patron patron, Blackhole blackhole) {
+        int[] uniqueIds = patron.nextBatch();
+        blackhole.consume(libraryService.borrowItems(uniqueIds, patron.user, BatchMode.BEST_EFFORT));
+        blackhole.consume(libraryService.returnItems(uniqueIds, patron.user, BatchMode.BEST_EFFORT));
+    }
+
+    @Benchmark
+    public List<Item> getCurrentInventory() {
+        return libraryService.getCurrentInventory();
+    }
+
+    @Benchmark
+    public List<String> getInventory() {
+        return libraryService.getInventory();
+    }
+
+    @Benchmark
+    public List<Item> getOverdueItems() {
+        return libraryService.getOverdueItems();
+    }
+
+    // Catalogue browsing: a page of the inventory per read, one borrow or return per 100 reads
+    @Benchmark
+    public void getInventoryPage(Patron patron, Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(101) == 100) {
+            int uniqueId = 1 + random.nextInt(size);
+            if (!libraryService.borrowItem(uniqueId, patron.user)) {
+                libraryService.returnItem(uniqueId, patron.user);
+            }
+        } else {
+            List<String> titles = libraryService.getInventory();
+            int page = random.nextInt(100) * 20;
+            for (int i = page; i < Math.min(page + 20, titles.size()); i++) {
+                blackhole.consume(titles.get(i));
+            }
+        }
+    }
+
+    private void lendOverdueCopies() {
+        User user = new User("Overdue");
+        LocalDate past = LocalDate.now().minusDays(30);
+        int lent = 0;
+        for (int uniqueId = size; uniqueId > size - size * OVERDUE_PERCENT / 100; uniqueId--) {
+            if (libraryService.borrowItem(uniqueId, user)) {
+                libraryService.updateDueDate(uniqueId, past);
+                lent++;
+            }
+        }
+        if (lent == 0) {
+            throw new IllegalStateException("No overdue copies were set up");
+        }
+    }
+}
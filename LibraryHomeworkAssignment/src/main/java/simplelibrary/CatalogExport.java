@@ -0,0 +1,28 @@
+package main.java.simplelibrary;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.data.LibrarySnapshot;
+import main.java.simplelibrary.services.CSVUtility;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Converts an inventory CSV into the binary catalogue format read by LibrarySnapshot.
+// Usage: CatalogExport <inventory.csv> <catalogue.bin>
+public class CatalogExport {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CatalogExport <inventory.csv> <catalogue.bin>");
+            System.exit(2);
+        }
+        LibraryDataStore dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, args[0]);
+
+        Path output = Paths.get(args[1]).toAbsolutePath();
+        // No journal belongs to an exported catalogue, so replay would start from the first segment
+        LibrarySnapshot.write(output, dataStore, 1);
+        System.out.println("Exported " + dataStore.getItems().size() + " items to " + output);
+    }
+}
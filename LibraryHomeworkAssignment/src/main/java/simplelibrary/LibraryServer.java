@@ -0,0 +1,27 @@
+package main.java.simplelibrary;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.http.LibraryHttpServer;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+// Serves a catalogue over HTTP until the process is stopped.
+// Usage: LibraryServer [port] [inventory.csv]
+public class LibraryServer {
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        String csv = args.length > 1 ? args[1] : "src/main/resources/inventory.csv";
+
+        LibraryDataStore dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, csv);
+        LibraryService libraryService = new LibraryService(dataStore);
+
+        LibraryHttpServer server = new LibraryHttpServer(libraryService, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+    }
+}
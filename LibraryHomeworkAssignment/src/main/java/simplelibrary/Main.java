@@ -27,8 +27,7 @@ public class Main {
 
         LibraryService libraryService = new LibraryService(dataStore);
 
-        User user1 = new User("Alice");
-        dataStore.getUsers().put(user1.getUsername(), user1);
+        User user1 = dataStore.getUserRegistry().register("Alice");
 
         // Borrow an item
         libraryService.borrowItem(1, user1);
@@ -0,0 +1,111 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// Copies currently on the shelf, grouped by itemId and by title. Each title also gets an
+// ordinal in the order it was first catalogued so listings do not depend on hash order.
+// Changes to the shelf are passed on to versions, which publishes inventory snapshots.
+class AvailabilityIndex {
+    private final ConcurrentHashMap<Integer, ItemIdCopies> byItemId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TitleCopies> byTitle = new ConcurrentHashMap<>();
+    private final AtomicInteger titleOrdinals = new AtomicInteger();
+    private final InventoryVersions versions = new InventoryVersions(this);
+
+    // Counts a copy into the catalogue under its itemId and title, whether it is on the
+    // shelf or on loan; add() then puts it on the shelf
+    void catalogue(Item item) {
+        byItemId.compute(item.getItemId(), (itemId, copies) -> {
+            copies = copies == null ? new ItemIdCopies() : copies;
+            copies.catalogued++;
+            return copies;
+        });
+        titleCopies(item);
+    }
+
+    // Takes a copy off the shelf and out of the catalogue, e.g. when it moves to another
+    // branch. The itemId is no longer catalogued once its last copy has gone.
+    void uncatalogue(Item item) {
+        remove(item);
+        byItemId.computeIfPresent(item.getItemId(), (itemId, copies) -> --copies.catalogued == 0 ? null : copies);
+    }
+
+    void add(Item item) {
+        itemIdCopies(item).add(item);
+        TitleCopies title = titleCopies(item);
+        if (title.copies.add(item)) {
+            versions.added(item, title);
+        }
+    }
+
+    private Set<Item> itemIdCopies(Item item) {
+        return byItemId.computeIfAbsent(item.getItemId(), k -> new ItemIdCopies()).onShelf;
+    }
+
+    private TitleCopies titleCopies(Item item) {
+        return byTitle.computeIfAbsent(item.getTitle(), title -> new TitleCopies(title, titleOrdinals.getAndIncrement()));
+    }
+
+    void remove(Item item) {
+        ItemIdCopies copies = byItemId.get(item.getItemId());
+        if (copies != null) {
+            copies.onShelf.remove(item);
+        }
+        TitleCopies title = byTitle.get(item.getTitle());
+        if (title != null && title.copies.remove(item)) {
+            versions.removed(item, title);
+        }
+    }
+
+    // Whether any copy of the itemId has been catalogued, on the shelf or not
+    boolean isCatalogued(int itemId) {
+        return byItemId.containsKey(itemId);
+    }
+
+    Set<Item> copiesOf(int itemId) {
+        ItemIdCopies copies = byItemId.get(itemId);
+        return copies == null ? Collections.emptySet() : Collections.unmodifiableSet(copies.onShelf);
+    }
+
+    Set<Item> copiesOf(String title) {
+        TitleCopies copies = byTitle.get(title);
+        return copies == null ? Collections.emptySet() : Collections.unmodifiableSet(copies.copies);
+    }
+
+    // The shelf as it is now, without blocking writers
+    InventorySnapshot snapshot() {
+        return versions.current();
+    }
+
+    int titleCount() {
+        return titleOrdinals.get();
+    }
+
+    void forEachTitle(BiConsumer<TitleCopies, Set<Item>> action) {
+        for (TitleCopies title : byTitle.values()) {
+            action.accept(title, title.copies);
+        }
+    }
+
+    private static final class ItemIdCopies {
+        final Set<Item> onShelf = ConcurrentHashMap.newKeySet();
+        // Copies in the catalogue, on the shelf or not; only changed inside byItemId.compute
+        int catalogued;
+    }
+
+    static final class TitleCopies {
+        final String title;
+        final int ordinal;
+        final Set<Item> copies = ConcurrentHashMap.newKeySet();
+
+        private TitleCopies(String title, int ordinal) {
+            this.title = title;
+            this.ordinal = ordinal;
+        }
+    }
+}
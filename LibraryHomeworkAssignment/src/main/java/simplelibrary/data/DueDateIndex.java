@@ -0,0 +1,65 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.Loan;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+// Open loans ordered by due date, then uniqueId. Everything due before a date is a
+// head of the map, so overdue lookups only touch the overdue loans.
+class DueDateIndex {
+    private final ConcurrentSkipListMap<Key, Item> loans = new ConcurrentSkipListMap<>();
+
+    void add(long dueEpochDay, Item item) {
+        if (dueEpochDay != Loan.NO_DUE_DATE) {
+            loans.put(new Key(dueEpochDay, item.getUniqueId()), item);
+        }
+    }
+
+    void remove(long dueEpochDay, Item item) {
+        if (dueEpochDay != Loan.NO_DUE_DATE) {
+            loans.remove(new Key(dueEpochDay, item.getUniqueId()));
+        }
+    }
+
+    // Weakly consistent, in due date order; loans placed or returned during the walk may or may not be seen
+    Stream<Item> dueBefore(long epochDay) {
+        return loans.headMap(new Key(epochDay, Integer.MIN_VALUE)).values().stream();
+    }
+
+    // Loans due on or after from and before to, in due date order
+    Stream<Item> dueBetween(long fromEpochDay, long toEpochDay) {
+        if (fromEpochDay >= toEpochDay) {
+            return Stream.empty();
+        }
+        return loans.subMap(new Key(fromEpochDay, Integer.MIN_VALUE), new Key(toEpochDay, Integer.MIN_VALUE)).values().stream();
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private final long dueDate;
+        private final int uniqueId;
+
+        Key(long dueDate, int uniqueId) {
+            this.dueDate = dueDate;
+            this.uniqueId = uniqueId;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byDate = Long.compare(dueDate, other.dueDate);
+            return byDate != 0 ? byDate : Integer.compare(uniqueId, other.uniqueId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return uniqueId == key.uniqueId && dueDate == key.dueDate;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(dueDate) + uniqueId;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package main.java.simplelibrary.data;
+
+// How long a borrow or return waits for its journal record to reach disk
+public enum DurabilityMode {
+    // Each record is written and forced before the next one is appended
+    SYNC,
+    // Records are forced in batches by a flusher thread; callers wait for their batch
+    GROUP_COMMIT,
+    // Records are forced in the background every few milliseconds; callers never wait
+    ASYNC
+}
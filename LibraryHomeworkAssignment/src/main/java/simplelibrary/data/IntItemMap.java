@@ -0,0 +1,488 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Item map keyed by primitive uniqueId, for catalogues too large for ConcurrentHashMap's
+// per-entry overhead (a boxed key and a node per item). Keys and values sit in parallel
+// arrays probed linearly, so an entry costs two array slots.
+//
+// The map is split into segments that each have their own lock for writers. Readers take
+// no lock: a slot's key is written before its value is published, so a reader that sees
+// a value also sees the key it belongs to. Iteration is weakly consistent, as with
+// ConcurrentHashMap.
+//
+// remove(key, value) and replace(key, oldValue, newValue) match the value by identity.
+// Item.equals compares uniqueIds only, which the key already fixes, so an equals match
+// would accept any copy stored under the key.
+public class IntItemMap extends AbstractMap<Integer, Item> implements ConcurrentMap<Integer, Item> {
+    private static final int SEGMENTS = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    // Marks a slot whose item was removed; its key stays so probes continue past it
+    private static final Item REMOVED = new Item(0, 0, null) {
+    };
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public IntItemMap() {
+        this(0);
+    }
+
+    public IntItemMap(int expectedItems) {
+        int perSegment = capacityFor(expectedItems / SEGMENTS + 1);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> 26) & (SEGMENTS - 1)];
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = MIN_SEGMENT_CAPACITY;
+        // Keep the load factor at or below 2/3
+        while (capacity * 2 < entries * 3) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Lookup without boxing the key
+    public Item get(int key) {
+        int hash = hash(key);
+        return segmentFor(hash).table.find(key, hash);
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Item get(Object key) {
+        return key instanceof Integer ? get((int) (Integer) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Item put(Integer key, Item value) {
+        Objects.requireNonNull(value);
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value, false);
+    }
+
+    @Override
+    public Item putIfAbsent(Integer key, Item value) {
+        Objects.requireNonNull(value);
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value, true);
+    }
+
+    @Override
+    public Item remove(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int hash = hash((Integer) key);
+        return segmentFor(hash).remove((Integer) key, hash, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof Integer) || value == null) {
+            return false;
+        }
+        int hash = hash((Integer) key);
+        return segmentFor(hash).remove((Integer) key, hash, value) != null;
+    }
+
+    @Override
+    public boolean replace(Integer key, Item oldValue, Item newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        int hash = hash(key);
+        return segmentFor(hash).replace(key, hash, oldValue, newValue) != null;
+    }
+
+    @Override
+    public Item replace(Integer key, Item value) {
+        Objects.requireNonNull(value);
+        int hash = hash(key);
+        return segmentFor(hash).replace(key, hash, null, value);
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.count > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Collection<Item> values() {
+        return new AbstractCollection<Item>() {
+            @Override
+            public Iterator<Item> iterator() {
+                return new SlotIterator<Item>() {
+                    @Override
+                    Item element(int key, Item item) {
+                        return item;
+                    }
+                };
+            }
+
+            // Splits by segment and then by slot range, so parallel streams over the
+            // catalogue divide the work evenly
+            @Override
+            public Spliterator<Item> spliterator() {
+                return new ItemSpliterator(0, SEGMENTS);
+            }
+
+            @Override
+            public int size() {
+                return IntItemMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Integer, Item>> entrySet() {
+        return new AbstractSet<Entry<Integer, Item>>() {
+            @Override
+            public Iterator<Entry<Integer, Item>> iterator() {
+                return new SlotIterator<Entry<Integer, Item>>() {
+                    @Override
+                    Entry<Integer, Item> element(int key, Item item) {
+                        return new SimpleImmutableEntry<>(key, item);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return IntItemMap.this.size();
+            }
+        };
+    }
+
+    private static final class Table {
+        private final int[] keys;
+        private final AtomicReferenceArray<Item> values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private Item find(int key, int hash) {
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                Item value = values.get(slot);
+                if (value == null) {
+                    return null;
+                }
+                if (keys[slot] == key) {
+                    return value == REMOVED ? null : value;
+                }
+            }
+        }
+
+        // Slot holding the key, or the empty slot where it would go
+        private int slotFor(int key, int hash) {
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                if (values.get(slot) == null || keys[slot] == key) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        private volatile Table table;
+        private volatile int count;
+        // Slots with a key, live or removed; drives resizing
+        private int used;
+
+        private Segment(int capacity) {
+            this.table = new Table(capacity);
+        }
+
+        private synchronized Item put(int key, int hash, Item value, boolean onlyIfAbsent) {
+            Table current = table;
+            int slot = current.slotFor(key, hash);
+            Item previous = current.values.get(slot);
+            if (previous == null) {
+                current.keys[slot] = key;
+                current.values.set(slot, value);
+                count++;
+                if (++used * 3 > current.keys.length * 2) {
+                    rehash();
+                }
+                return null;
+            }
+            if (previous == REMOVED) {
+                current.values.set(slot, value);
+                count++;
+                return null;
+            }
+            if (!onlyIfAbsent) {
+                current.values.set(slot, value);
+            }
+            return previous;
+        }
+
+        // Removes the key, or only if it maps to expected itself when that is not null
+        private synchronized Item remove(int key, int hash, Object expected) {
+            Table current = table;
+            int slot = current.slotFor(key, hash);
+            Item previous = current.values.get(slot);
+            if (previous == null || previous == REMOVED || (expected != null && expected != previous)) {
+                return null;
+            }
+            current.values.set(slot, REMOVED);
+            count--;
+            return previous;
+        }
+
+        // Replaces the key's value, or only if it maps to expected itself when that is not null
+        private synchronized Item replace(int key, int hash, Item expected, Item value) {
+            Table current = table;
+            int slot = current.slotFor(key, hash);
+            Item previous = current.values.get(slot);
+            if (previous == null || previous == REMOVED || (expected != null && expected != previous)) {
+                return null;
+            }
+            current.values.set(slot, value);
+            return previous;
+        }
+
+        private synchronized void clear() {
+            table = new Table(MIN_SEGMENT_CAPACITY);
+            count = 0;
+            used = 0;
+        }
+
+        // Copies the live entries into a table sized for them, dropping removed slots.
+        // The old table is never written again, so readers still using it stay consistent.
+        private void rehash() {
+            Table old = table;
+            Table resized = new Table(capacityFor(count * 2));
+            for (int slot = 0; slot < old.keys.length; slot++) {
+                Item value = old.values.get(slot);
+                if (value != null && value != REMOVED) {
+                    int target = resized.slotFor(old.keys[slot], hash(old.keys[slot]));
+                    resized.keys[target] = old.keys[slot];
+                    resized.values.lazySet(target, value);
+                }
+            }
+            used = count;
+            table = resized;
+        }
+    }
+
+    // Weakly consistent like SlotIterator. Walks the slots of one segment's table at a
+    // time, then the whole segments from segment up to segmentEnd.
+    private final class ItemSpliterator implements Spliterator<Item> {
+        private static final int MIN_SPLIT_SLOTS = 1024;
+
+        private int segment;
+        private final int segmentEnd;
+        private Table table;
+        private int slot;
+        private int slotEnd;
+
+        private ItemSpliterator(int segment, int segmentEnd) {
+            this.segment = segment;
+            this.segmentEnd = segmentEnd;
+        }
+
+        private ItemSpliterator(Table table, int slot, int slotEnd) {
+            this(0, 0);
+            this.table = table;
+            this.slot = slot;
+            this.slotEnd = slotEnd;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            while (true) {
+                if (table != null && slot < slotEnd) {
+                    Item value = table.values.get(slot++);
+                    if (value != null && value != REMOVED) {
+                        action.accept(value);
+                        return true;
+                    }
+                } else if (segment < segmentEnd) {
+                    table = segments[segment++].table;
+                    slot = 0;
+                    slotEnd = table.keys.length;
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Item> action) {
+            while (true) {
+                if (table != null) {
+                    AtomicReferenceArray<Item> values = table.values;
+                    for (int i = slot; i < slotEnd; i++) {
+                        Item value = values.get(i);
+                        if (value != null && value != REMOVED) {
+                            action.accept(value);
+                        }
+                    }
+                    table = null;
+                }
+                if (segment >= segmentEnd) {
+                    return;
+                }
+                table = segments[segment++].table;
+                slot = 0;
+                slotEnd = table.keys.length;
+            }
+        }
+
+        @Override
+        public Spliterator<Item> trySplit() {
+            if (segmentEnd - segment >= 2) {
+                int middle = (segment + segmentEnd) >>> 1;
+                ItemSpliterator prefix = new ItemSpliterator(segment, middle);
+                segment = middle;
+                return prefix;
+            }
+            if (table == null && segment < segmentEnd) {
+                table = segments[segment++].table;
+                slot = 0;
+                slotEnd = table.keys.length;
+            }
+            if (table == null || slotEnd - slot < 2 * MIN_SPLIT_SLOTS) {
+                return null;
+            }
+            int middle = (slot + slotEnd) >>> 1;
+            ItemSpliterator prefix = new ItemSpliterator(table, slot, middle);
+            slot = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = table == null ? 0 : (long) (slotEnd - slot) * 2 / 3;
+            for (int i = segment; i < segmentEnd; i++) {
+                size += segments[i].count;
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return CONCURRENT | DISTINCT | NONNULL;
+        }
+    }
+
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private int segment = -1;
+        private Table table;
+        private int slot;
+        private int nextKey;
+        private Item nextItem;
+        private int lastKey;
+        private boolean canRemove;
+
+        SlotIterator() {
+            advance();
+        }
+
+        abstract T element(int key, Item item);
+
+        private void advance() {
+            nextItem = null;
+            while (true) {
+                if (table == null || slot >= table.keys.length) {
+                    if (++segment >= segments.length) {
+                        return;
+                    }
+                    table = segments[segment].table;
+                    slot = 0;
+                    continue;
+                }
+                Item value = table.values.get(slot);
+                int key = table.keys[slot];
+                slot++;
+                if (value != null && value != REMOVED) {
+                    nextKey = key;
+                    nextItem = value;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextItem != null;
+        }
+
+        @Override
+        public T next() {
+            if (nextItem == null) {
+                throw new NoSuchElementException();
+            }
+            T element = element(nextKey, nextItem);
+            lastKey = nextKey;
+            canRemove = true;
+            advance();
+            return element;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            canRemove = false;
+            IntItemMap.this.remove(lastKey);
+        }
+    }
+}
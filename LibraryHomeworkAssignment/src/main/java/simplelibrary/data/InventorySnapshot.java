@@ -0,0 +1,136 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+// The copies on the shelf and their distinct titles at one point in time. A snapshot
+// never changes once published, so it can be read without locks while loans go on; ask
+// LibraryDataStore.inventorySnapshot for a newer one. Snapshots taken while the shelf is
+// unchanged are the same object, so taking one costs nothing between writes.
+public final class InventorySnapshot {
+    static final InventorySnapshot EMPTY = new InventorySnapshot(0, new Item[1][0], new TitleChunk[0]);
+
+    private final long version;
+    // Copies on the shelf, bucketed by uniqueId hash, each bucket sorted by uniqueId
+    private final Item[][] buckets;
+    // itemOffsets[b] is the number of copies in the buckets before b
+    private final int[] itemOffsets;
+    private final TitleChunk[] titleChunks;
+    private final int[] titleOffsets;
+    private final List<Item> items = new ItemList();
+    private final List<String> titles = new TitleList();
+
+    InventorySnapshot(long version, Item[][] buckets, TitleChunk[] titleChunks) {
+        this.version = version;
+        this.buckets = buckets;
+        this.titleChunks = titleChunks;
+        this.itemOffsets = new int[buckets.length + 1];
+        for (int b = 0; b < buckets.length; b++) {
+            itemOffsets[b + 1] = itemOffsets[b] + buckets[b].length;
+        }
+        this.titleOffsets = new int[titleChunks.length + 1];
+        for (int c = 0; c < titleChunks.length; c++) {
+            titleOffsets[c + 1] = titleOffsets[c] + titleChunks[c].available.length;
+        }
+    }
+
+    // Goes up by one each time a changed shelf is published
+    public long getVersion() {
+        return version;
+    }
+
+    // Copies on the shelf, in no particular order
+    public List<Item> getItems() {
+        return items;
+    }
+
+    // Distinct titles with at least one copy on the shelf, in the order they were catalogued
+    public List<String> getTitles() {
+        return titles;
+    }
+
+    Item[][] buckets() {
+        return buckets;
+    }
+
+    TitleChunk[] titleChunks() {
+        return titleChunks;
+    }
+
+    // Index of the part holding element index, given each part's starting offset
+    private static int partOf(int[] offsets, int index) {
+        int found = Arrays.binarySearch(offsets, index);
+        if (found < 0) {
+            return -found - 2;
+        }
+        // Skip empty parts that start at the same offset
+        while (offsets[found + 1] == index) {
+            found++;
+        }
+        return found;
+    }
+
+    // Available-copy counts for a run of consecutive title ordinals, and the titles among
+    // them that have a copy on the shelf, in ordinal order
+    static final class TitleChunk {
+        static final int SIZE = 1024;
+        private static final String[] NONE = new String[0];
+
+        final String[] names;
+        final int[] counts;
+        final String[] available;
+
+        TitleChunk(String[] names, int[] counts) {
+            this.names = names;
+            this.counts = counts;
+            int size = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    size++;
+                }
+            }
+            this.available = size == 0 ? NONE : new String[size];
+            for (int i = 0, next = 0; next < size; i++) {
+                if (counts[i] > 0) {
+                    available[next++] = names[i];
+                }
+            }
+        }
+    }
+
+    private final class ItemList extends AbstractList<Item> implements RandomAccess {
+        @Override
+        public Item get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int bucket = partOf(itemOffsets, index);
+            return buckets[bucket][index - itemOffsets[bucket]];
+        }
+
+        @Override
+        public int size() {
+            return itemOffsets[buckets.length];
+        }
+    }
+
+    private final class TitleList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int chunk = partOf(titleOffsets, index);
+            return titleChunks[chunk].available[index - titleOffsets[chunk]];
+        }
+
+        @Override
+        public int size() {
+            return titleOffsets[titleChunks.length];
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.data.InventorySnapshot.TitleChunk;
+import main.java.simplelibrary.models.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Publishes InventorySnapshots of an AvailabilityIndex. Writers append each shelf change
+// to a change log and carry on; they never wait for readers. A reader that finds changes
+// newer than the published snapshot takes the publish lock, applies them to copies of
+// only the buckets and title chunks they touch, and publishes the result.
+//
+// Nothing is logged until the first snapshot is asked for, and a log that grows past its
+// limit is abandoned, so an unread store does not accumulate changes. Either way the next
+// reader rebuilds from the index: it starts a fresh log, copies the index while writers
+// go on, then applies what the fresh log caught. A writer logs only after changing the
+// index, so every change the copy may have missed is in the log, and changes are
+// applied as set operations, so replaying one the copy already saw does nothing.
+class InventoryVersions {
+    private static final int MIN_BUCKETS = 64;
+    private static final int ITEMS_PER_BUCKET = 256;
+    private static final int MIN_LOG_LIMIT = 1 << 16;
+    private static final Comparator<Item> BY_UNIQUE_ID = Comparator.comparingInt(Item::getUniqueId);
+
+    private final AvailabilityIndex index;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private volatile ChangeLog log = ChangeLog.abandoned();
+    private volatile Published published = new Published(InventorySnapshot.EMPTY, log, 0);
+
+    InventoryVersions(AvailabilityIndex index) {
+        this.index = index;
+    }
+
+    void added(Item item, AvailabilityIndex.TitleCopies title) {
+        log.append(new Change(item, title, true));
+    }
+
+    void removed(Item item, AvailabilityIndex.TitleCopies title) {
+        log.append(new Change(item, title, false));
+    }
+
+    InventorySnapshot current() {
+        Published current = published;
+        if (current.log == log && !current.log.abandoned && current.log.appended.get() == current.applied) {
+            return current.snapshot;
+        }
+        publishLock.lock();
+        try {
+            current = published;
+            ChangeLog changes = current.log;
+            if (changes != log || changes.abandoned) {
+                current = rebuild(current.snapshot.getVersion() + 1);
+            } else if (changes.appended.get() != current.applied) {
+                Builder builder = new Builder(current.snapshot);
+                long applied = current.applied + changes.drainTo(builder);
+                if (changes.abandoned) {
+                    current = rebuild(current.snapshot.getVersion() + 1);
+                } else {
+                    current = new Published(builder.build(current.snapshot.getVersion() + 1), changes, applied);
+                }
+            }
+            published = current;
+            return current.snapshot;
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private Published rebuild(long version) {
+        while (true) {
+            int expected = Math.max(published.snapshot.getItems().size(), index.titleCount());
+            ChangeLog fresh = new ChangeLog(Math.max(MIN_LOG_LIMIT, expected));
+            log = fresh;
+            Builder builder = new Builder(bucketsFor(expected));
+            index.forEachTitle(builder::addAll);
+            builder.sortBuckets();
+            long applied = fresh.drainTo(builder);
+            if (!fresh.abandoned) {
+                return new Published(builder.build(version), fresh, applied);
+            }
+        }
+    }
+
+    private static int bucketsFor(int items) {
+        int buckets = MIN_BUCKETS;
+        while (buckets * ITEMS_PER_BUCKET < items) {
+            buckets <<= 1;
+        }
+        return buckets;
+    }
+
+    private static final class Published {
+        private final InventorySnapshot snapshot;
+        // The log the snapshot follows and how many of its changes it includes
+        private final ChangeLog log;
+        private final long applied;
+
+        private Published(InventorySnapshot snapshot, ChangeLog log, long applied) {
+            this.snapshot = snapshot;
+            this.log = log;
+            this.applied = applied;
+        }
+    }
+
+    private static final class Change {
+        private final Item item;
+        private final AvailabilityIndex.TitleCopies title;
+        private final boolean added;
+
+        private Change(Item item, AvailabilityIndex.TitleCopies title, boolean added) {
+            this.item = item;
+            this.title = title;
+            this.added = added;
+        }
+    }
+
+    private static final class ChangeLog {
+        private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+        // Counted before the change is queued, so a reader that sees the count knows to look
+        private final AtomicLong appended = new AtomicLong();
+        // Changes taken off the queue so far; only written under the publish lock
+        private volatile long drained;
+        // Changes that may wait for a reader before the log is abandoned
+        private final long limit;
+        private volatile boolean abandoned;
+
+        private ChangeLog(long limit) {
+            this.limit = limit;
+        }
+
+        private static ChangeLog abandoned() {
+            ChangeLog log = new ChangeLog(0);
+            log.abandoned = true;
+            return log;
+        }
+
+        private void append(Change change) {
+            if (abandoned) {
+                return;
+            }
+            if (appended.incrementAndGet() - drained > limit) {
+                abandoned = true;
+                changes.clear();
+                return;
+            }
+            changes.add(change);
+        }
+
+        // Applies everything queued so far and returns how many changes that was
+        private long drainTo(Builder builder) {
+            long count = 0;
+            Change change;
+            while (!abandoned && (change = changes.poll()) != null) {
+                builder.apply(change);
+                count++;
+            }
+            drained += count;
+            return count;
+        }
+    }
+
+    // Copies of a snapshot's buckets and title chunks, each copied the first time a change touches it
+    private static final class Builder {
+        private final Item[][] buckets;
+        private final List<List<Item>> touched;
+        private TitleChunk[] chunks;
+        private String[][] chunkNames;
+        private int[][] chunkCounts;
+
+        private Builder(InventorySnapshot base) {
+            this.buckets = base.buckets().clone();
+            this.touched = new ArrayList<>(Collections.nCopies(buckets.length, null));
+            this.chunks = base.titleChunks().clone();
+            this.chunkNames = new String[chunks.length][];
+            this.chunkCounts = new int[chunks.length][];
+        }
+
+        private Builder(int bucketCount) {
+            this(new InventorySnapshot(0, emptyBuckets(bucketCount), new TitleChunk[0]));
+        }
+
+        private static Item[][] emptyBuckets(int count) {
+            Item[][] buckets = new Item[count][];
+            Arrays.fill(buckets, new Item[0]);
+            return buckets;
+        }
+
+        private int bucketOf(Item item) {
+            int h = item.getUniqueId() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (buckets.length - 1);
+        }
+
+        private List<Item> bucket(int b) {
+            List<Item> copy = touched.get(b);
+            if (copy == null) {
+                copy = new ArrayList<>(Arrays.asList(buckets[b]));
+                touched.set(b, copy);
+            }
+            return copy;
+        }
+
+        // Bulk load for a rebuild: copies are appended unsorted, then sorted once
+        private void addAll(AvailabilityIndex.TitleCopies title, Iterable<Item> copies) {
+            for (Item item : copies) {
+                bucket(bucketOf(item)).add(item);
+                titleCounts(title.ordinal)[title.ordinal % TitleChunk.SIZE]++;
+                chunkNames[title.ordinal / TitleChunk.SIZE][title.ordinal % TitleChunk.SIZE] = title.title;
+            }
+        }
+
+        private void sortBuckets() {
+            for (List<Item> bucket : touched) {
+                if (bucket != null) {
+                    bucket.sort(BY_UNIQUE_ID);
+                }
+            }
+        }
+
+        private void apply(Change change) {
+            List<Item> bucket = bucket(bucketOf(change.item));
+            int position = search(bucket, change.item.getUniqueId());
+            int ordinal = change.title.ordinal;
+            if (change.added && position < 0) {
+                bucket.add(-position - 1, change.item);
+                titleCounts(ordinal)[ordinal % TitleChunk.SIZE]++;
+                chunkNames[ordinal / TitleChunk.SIZE][ordinal % TitleChunk.SIZE] = change.title.title;
+            } else if (!change.added && position >= 0) {
+                position = indexOf(bucket, position, change.item);
+                if (position >= 0) {
+                    bucket.remove(position);
+                    titleCounts(ordinal)[ordinal % TitleChunk.SIZE]--;
+                }
+            }
+        }
+
+        // Finds this exact copy among those sharing its uniqueId around position. A rebuild
+        // can briefly see both an item and the one replacing it under the same uniqueId.
+        private static int indexOf(List<Item> bucket, int position, Item item) {
+            int uniqueId = item.getUniqueId();
+            while (position > 0 && bucket.get(position - 1).getUniqueId() == uniqueId) {
+                position--;
+            }
+            for (; position < bucket.size() && bucket.get(position).getUniqueId() == uniqueId; position++) {
+                if (bucket.get(position) == item) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        private static int search(List<Item> bucket, int uniqueId) {
+            int low = 0;
+            int high = bucket.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int id = bucket.get(middle).getUniqueId();
+                if (id < uniqueId) {
+                    low = middle + 1;
+                } else if (id > uniqueId) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private int[] titleCounts(int ordinal) {
+            int chunk = ordinal / TitleChunk.SIZE;
+            if (chunk >= chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunk + 1);
+                chunkNames = Arrays.copyOf(chunkNames, chunk + 1);
+                chunkCounts = Arrays.copyOf(chunkCounts, chunk + 1);
+            }
+            if (chunkCounts[chunk] == null) {
+                TitleChunk base = chunks[chunk];
+                chunkNames[chunk] = base == null ? new String[TitleChunk.SIZE] : base.names.clone();
+                chunkCounts[chunk] = base == null ? new int[TitleChunk.SIZE] : base.counts.clone();
+            }
+            return chunkCounts[chunk];
+        }
+
+        private InventorySnapshot build(long version) {
+            for (int b = 0; b < buckets.length; b++) {
+                List<Item> bucket = touched.get(b);
+                if (bucket != null) {
+                    buckets[b] = bucket.toArray(new Item[0]);
+                }
+            }
+            for (int c = 0; c < chunks.length; c++) {
+                if (chunkCounts[c] != null) {
+                    chunks[c] = new TitleChunk(chunkNames[c], chunkCounts[c]);
+                } else if (chunks[c] == null) {
+                    chunks[c] = new TitleChunk(new String[TitleChunk.SIZE], new int[TitleChunk.SIZE]);
+                }
+            }
+            return new InventorySnapshot(version, buckets, chunks);
+        }
+    }
+}
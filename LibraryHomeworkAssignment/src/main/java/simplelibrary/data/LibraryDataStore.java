@@ -1,32 +1,321 @@
 package main.java.simplelibrary.data;
 
 import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.Loan;
 import main.java.simplelibrary.models.User;
 
-
-import java.util.HashSet;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 public class LibraryDataStore {
-    private final ConcurrentHashMap<Integer, Item> items = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<User, HashSet<Item>> userItems = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Item> items;
+    // Set when items is an IntItemMap, so lookups by uniqueId can skip boxing
+    private final IntItemMap intItems;
+    private final UserRegistry users = new UserRegistry();
+    // Items on loan per user, indexed by user id. Replaced by a larger copy under
+    // userItemsLock when a new id does not fit.
+    private volatile AtomicReferenceArray<Set<Item>> userItems = new AtomicReferenceArray<>(16);
+    private final Object userItemsLock = new Object();
+    private final Map<User, Set<Item>> userItemsView = new UserItemsView();
+    private final DueDateIndex dueDates = new DueDateIndex();
+    private final AvailabilityIndex available = new AvailabilityIndex();
+    private final LongAdder activeLoans = new LongAdder();
+    private final TitleIndex titleIndex = new TitleIndex();
+
+    public LibraryDataStore() {
+        this(0);
+    }
+
+    // Sizes the item map up front so a bulk load of expectedItems never has to resize it
+    public LibraryDataStore(int expectedItems) {
+        this(expectedItems, ItemStoreBackend.fromSystemProperty());
+    }
+
+    public LibraryDataStore(int expectedItems, ItemStoreBackend backend) {
+        if (backend == ItemStoreBackend.INT_MAP) {
+            this.intItems = new IntItemMap(expectedItems);
+            this.items = intItems;
+        } else {
+            this.intItems = null;
+            this.items = new ConcurrentHashMap<>(Math.max(16, expectedItems));
+        }
+    }
 
     public Map<Integer, Item> getItems() {
         return (items);
     }
 
+    public Item getItem(int uniqueId) {
+        return intItems != null ? intItems.get(uniqueId) : items.get(uniqueId);
+    }
+
+    public UserRegistry getUserRegistry() {
+        return users;
+    }
+
+    // Registered users by username, read-only; register new users through getUserRegistry()
     public Map<String, User> getUsers() {
-        return (users);
+        return users.asMap();
+    }
+
+    // Read-only view of the loan sets keyed by User, kept for callers written before loans
+    // were indexed by user id. Any User instance with the right username finds its set.
+    @Deprecated
+    public Map<User, Set<Item>> getUserItems() {
+        return userItemsView;
+    }
+
+    // Items currently on loan to a user, or null if the user has never borrowed anything
+    public Set<Item> borrowedItems(User user) {
+        User registered = users.find(user);
+        return registered == null ? null : loansOf(registered.getId(), false);
+    }
+
+    // Returns the set of items borrowed by a user, creating it on first use.
+    // The set is concurrent so that loans of different items by the same user
+    // can be recorded without a shared lock.
+    public Set<Item> borrowedItemsFor(User user) {
+        return loansOf(users.register(user).getId(), true);
+    }
+
+    private Set<Item> loansOf(int userId, boolean create) {
+        AtomicReferenceArray<Set<Item>> table = userItems;
+        if (userId < table.length()) {
+            Set<Item> loans = table.get(userId);
+            if (loans != null || !create) {
+                return loans;
+            }
+        } else if (!create) {
+            return null;
+        }
+        synchronized (userItemsLock) {
+            table = userItems;
+            if (userId >= table.length()) {
+                AtomicReferenceArray<Set<Item>> grown = new AtomicReferenceArray<>(Math.max(table.length() * 2, userId + 1));
+                for (int i = 0; i < table.length(); i++) {
+                    grown.set(i, table.get(i));
+                }
+                userItems = grown;
+                table = grown;
+            }
+            Set<Item> loans = table.get(userId);
+            if (loans == null) {
+                loans = ConcurrentHashMap.newKeySet();
+                table.set(userId, loans);
+            }
+            return loans;
+        }
+    }
+
+    // Loan index: items are keyed by uniqueId and carry their own loan, so this is a
+    // single hash lookup regardless of how many items the borrower holds.
+    public Loan getLoan(int uniqueId) {
+        Item item = getItem(uniqueId);
+        return item == null ? null : item.getLoan();
+    }
+
+    public User getBorrower(int uniqueId) {
+        Loan loan = getLoan(uniqueId);
+        return loan == null ? null : loan.getBorrower();
+    }
+
+    // Indexes a loan that has just been placed on an item. Callers serialise loan
+    // changes per item, so the indexes never see the same item twice at once.
+    public void recordLoan(Item item, Loan loan) {
+        available.remove(item);
+        if (loan.getBorrower() != null) {
+            borrowedItemsFor(loan.getBorrower()).add(item);
+        }
+        dueDates.add(loan.getDueEpochDay(), item);
+        activeLoans.increment();
+    }
+
+    // Removes a loan that has just been taken off an item from the indexes
+    public void clearLoan(Item item, Loan loan) {
+        Set<Item> borrowedItems = loan.getBorrower() == null ? null : borrowedItems(loan.getBorrower());
+        if (borrowedItems != null) {
+            borrowedItems.remove(item);
+        }
+        dueDates.remove(loan.getDueEpochDay(), item);
+        available.add(item);
+        activeLoans.decrement();
+    }
+
+    // Number of items on loan, kept as loans are recorded and cleared
+    public long activeLoanCount() {
+        return activeLoans.sum();
+    }
+
+    // Re-indexes an item whose loan was replaced in one step, e.g. renewed or handed
+    // straight to the next borrower; the item stays off the shelf throughout
+    public void replaceLoan(Item item, Loan previous, Loan next) {
+        Set<Item> borrowedItems = previous.getBorrower() == null ? null : borrowedItems(previous.getBorrower());
+        if (borrowedItems != null) {
+            borrowedItems.remove(item);
+        }
+        dueDates.remove(previous.getDueEpochDay(), item);
+        if (next.getBorrower() != null) {
+            borrowedItemsFor(next.getBorrower()).add(item);
+        }
+        dueDates.add(next.getDueEpochDay(), item);
+    }
+
+    // Loans due strictly before the given date, earliest first
+    public Stream<Item> overdueItems(LocalDate asOf) {
+        return overdueItems(asOf.toEpochDay());
     }
 
-    public Map<User, HashSet<Item>> getUserItems() {
-        return (userItems);
+    public Stream<Item> overdueItems(long asOfEpochDay) {
+        return dueDates.dueBefore(asOfEpochDay);
+    }
+
+    // Loans due on or after fromEpochDay and strictly before toEpochDay, earliest first
+    public Stream<Item> itemsDueBetween(long fromEpochDay, long toEpochDay) {
+        return dueDates.dueBetween(fromEpochDay, toEpochDay);
+    }
+
+    // Copies of an itemId that are on the shelf right now
+    public Set<Item> availableCopies(int itemId) {
+        return available.copiesOf(itemId);
+    }
+
+    // Whether the catalogue has any copy of the itemId, on the shelf or on loan
+    public boolean isCatalogued(int itemId) {
+        return available.isCatalogued(itemId);
+    }
+
+    // Copies with the given title that are on the shelf right now
+    public Set<Item> availableCopies(String title) {
+        return available.copiesOf(title);
+    }
+
+    // Titles matching a search query, best first; the last word of the query may be
+    // incomplete. With availableOnly, titles with no copy on the shelf are left out.
+    public List<String> searchTitles(String query, int limit, boolean availableOnly) {
+        return titleIndex.search(query, limit, availableOnly ? title -> !available.copiesOf(title).isEmpty() : title -> true);
+    }
+
+    // Copies on the shelf and their titles as of now. Readers never block loans, and a
+    // snapshot stays the same however the shelf changes afterwards.
+    public InventorySnapshot inventorySnapshot() {
+        return available.snapshot();
+    }
+
+    // Every copy with its loan, read in parallel on the pool without blocking loans
+    public LoanSnapshot loanSnapshot(ForkJoinPool pool) {
+        return LoanSnapshot.capture(items.values(), pool);
+    }
+
+    // Distinct titles with at least one copy on the shelf, in the order they were catalogued
+    public Stream<String> availableTitles() {
+        return inventorySnapshot().getTitles().stream();
+    }
+
+    public Stream<Item> availableItems() {
+        return inventorySnapshot().getItems().stream();
     }
 
     public void addItem(Item item) {
-        items.put(item.getUniqueId(), item);
+        Item previous = items.put(item.getUniqueId(), item);
+        if (previous == item) {
+            return;
+        }
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(item);
+    }
+
+    // Adds an item unless one with the same uniqueId is already present
+    public boolean addItemIfAbsent(Item item) {
+        if (items.putIfAbsent(item.getUniqueId(), item) != null) {
+            return false;
+        }
+        index(item);
+        return true;
+    }
+
+    // Removes this exact item, e.g. when it moves to another branch. Returns false if the
+    // uniqueId is not present or belongs to a different item. The item is matched by
+    // reference, since Item.equals only compares uniqueIds.
+    public boolean removeItem(Item item) {
+        boolean removed;
+        if (intItems != null) {
+            removed = intItems.remove(item.getUniqueId(), item);
+        } else {
+            boolean[] matched = new boolean[1];
+            items.computeIfPresent(item.getUniqueId(), (uniqueId, current) -> {
+                matched[0] = current == item;
+                return matched[0] ? null : current;
+            });
+            removed = matched[0];
+        }
+        if (!removed) {
+            return false;
+        }
+        unindex(item);
+        return true;
+    }
+
+    private void index(Item item) {
+        titleIndex.add(item.getTitle());
+        Loan loan = item.getLoan();
+        available.catalogue(item);
+        if (loan == null) {
+            available.add(item);
+        } else {
+            recordLoan(item, loan);
+        }
+    }
+
+    // Adds a bulk load's distinct titles to the search index in one pass, before its items
+    void indexTitles(Collection<String> titles) {
+        titleIndex.addAll(titles);
+    }
+
+    private final class UserItemsView extends AbstractMap<User, Set<Item>> {
+        @Override
+        public Set<Item> get(Object key) {
+            return key instanceof User ? borrowedItems((User) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<User, Set<Item>>> entrySet() {
+            Set<Entry<User, Set<Item>>> entries = new LinkedHashSet<>();
+            AtomicReferenceArray<Set<Item>> table = userItems;
+            for (int id = 0; id < table.length(); id++) {
+                Set<Item> loans = table.get(id);
+                if (loans != null) {
+                    entries.add(new SimpleImmutableEntry<>(users.get(id), loans));
+                }
+            }
+            return Collections.unmodifiableSet(entries);
+        }
+    }
+
+    private void unindex(Item item) {
+        Loan loan = item.getLoan();
+        if (loan != null) {
+            clearLoan(item, loan);
+        }
+        available.uncatalogue(item);
     }
 
 }
@@ -0,0 +1,118 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.Loan;
+import main.java.simplelibrary.models.LoanTransaction;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.logging.Logger;
+
+// Keeps a data store durable across restarts with a snapshot plus the loan journal.
+//
+// Startup: recover() loads the latest snapshot (if any) and replays the journal segments
+// written since. Every journal record sets an item's loan outright rather than changing
+// it relative to its current state, so replaying a record whose effect is already in
+// the snapshot is harmless.
+//
+// Checkpoint: the journal is rotated first and the snapshot taken afterwards. Any change
+// journaled before the rotation is already visible in the items the snapshot reads, and
+// anything later is replayed from the new segment, so older segments can be deleted.
+public class LibraryPersistence implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LibraryPersistence.class.getName());
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private final Path directory;
+    private final LoanJournal journal;
+
+    private LibraryPersistence(Path directory, LoanJournal journal) {
+        this.directory = directory;
+        this.journal = journal;
+    }
+
+    public static LibraryPersistence open(Path directory, DurabilityMode mode) throws IOException {
+        return new LibraryPersistence(directory, LoanJournal.open(directory, mode));
+    }
+
+    public LoanJournal getJournal() {
+        return journal;
+    }
+
+    // If there is no snapshot the catalogue has to be loaded, e.g. from CSV, before recover()
+    public boolean hasSnapshot() {
+        return Files.exists(directory.resolve(SNAPSHOT_FILE));
+    }
+
+    // Restores the snapshot and replays the journal into the data store. Returns the number
+    // of journal records applied.
+    public int recover(LibraryDataStore dataStore) throws IOException {
+        long replayFrom = 1;
+        if (hasSnapshot()) {
+            replayFrom = LibrarySnapshot.read(directory.resolve(SNAPSHOT_FILE), dataStore);
+        }
+        int[] applied = {0};
+        LoanJournal.replay(directory, replayFrom,
+                username -> dataStore.getUserRegistry().register(username),
+                transaction -> {
+                    if (apply(dataStore, transaction)) {
+                        applied[0]++;
+                    }
+                });
+        LOGGER.info("Recovered library state: replayed " + applied[0] + " journal records from segment " + replayFrom);
+        return applied[0];
+    }
+
+    // Writes a new snapshot and drops the journal segments it makes redundant
+    public void checkpoint(LibraryDataStore dataStore) throws IOException {
+        long segment = journal.rotate();
+        LibrarySnapshot.write(directory.resolve(SNAPSHOT_FILE), dataStore, segment);
+        journal.deleteSegmentsBefore(segment);
+    }
+
+    private static boolean apply(LibraryDataStore dataStore, LoanTransaction transaction) {
+        Item item = dataStore.getItem(transaction.getUniqueId());
+        // A copy that arrived from another branch after the snapshot was taken
+        if (item == null && transaction.getType() == LoanTransaction.Type.TRANSFERRED_IN) {
+            dataStore.addItemIfAbsent(transaction.createItem());
+            item = dataStore.getItem(transaction.getUniqueId());
+        }
+        if (item == null) {
+            return false;
+        }
+        if (transaction.getType() == LoanTransaction.Type.TRANSFERRED_OUT) {
+            return dataStore.removeItem(item);
+        }
+        Loan current = item.getLoan();
+        if (current != null) {
+            dataStore.clearLoan(item, current);
+        }
+        if (transaction.getType() == LoanTransaction.Type.RETURNED || transaction.getUser() == null) {
+            item.setLoan(null);
+        } else {
+            // Records carry the day the loan began, as the service's clock saw it. Older ones
+            // do not: a renewal then keeps the day already known, and a borrow is taken to
+            // have begun on the day it was journaled in this JVM's zone.
+            long borrowedEpochDay;
+            if (transaction.hasBorrowedDate()) {
+                borrowedEpochDay = transaction.getBorrowedEpochDay();
+            } else if (transaction.getType() == LoanTransaction.Type.RENEWED && current != null) {
+                borrowedEpochDay = current.getBorrowedEpochDay();
+            } else {
+                borrowedEpochDay = LocalDate.ofInstant(Instant.ofEpochMilli(transaction.getTimestampMillis()), ZoneId.systemDefault()).toEpochDay();
+            }
+            Loan loan = new Loan(transaction.getUser(), borrowedEpochDay, transaction.getDueEpochDay());
+            item.setLoan(loan);
+            dataStore.recordLoan(item, loan);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
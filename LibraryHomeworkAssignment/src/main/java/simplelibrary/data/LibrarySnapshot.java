@@ -0,0 +1,295 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.Loan;
+import main.java.simplelibrary.models.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Binary copy of the catalogue and its loans, used both as the persistence snapshot and
+// as a fast-loading alternative to the CSV.
+//
+// Layout (big-endian):
+//   header   magic, version, journal segment, item/title/user counts, section offsets
+//   titles   [length][UTF-8 bytes] per distinct title; copies share one entry
+//   users    [length][UTF-8 bytes] per distinct borrower
+//   items    fixed-width records: uniqueId, itemId, title index, borrower index (-1 if
+//            on the shelf), due date and borrowed date as epoch days, type tag
+//   footer   magic, item count
+// Fixed-width item records let the file be memory-mapped and decoded in parallel slices.
+// Version 2 files, whose records have no borrowed date, can still be read.
+//
+// Snapshots are written to a temporary file and moved into place, so a crash during a
+// checkpoint leaves the previous snapshot intact.
+public class LibrarySnapshot {
+    private static final int MAGIC = 0x4C494243; // "LIBC"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 56;
+    private static final int RECORD_SIZE = 28;
+    // The previous version, without borrowed dates
+    private static final int V2 = 2;
+    private static final int V2_RECORD_SIZE = 24;
+    private static final int NO_BORROWER = -1;
+    // Written for a missing due date or borrowed date
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    // Items decoded per mapped slice
+    private static final int SLICE_RECORDS = 1 << 20;
+
+    // Records which journal segment replay has to start from after loading this snapshot
+    public static void write(Path file, LibraryDataStore dataStore, long replayFromSegment) throws IOException {
+        // Capture each item with one read of its loan so borrower and due date belong together
+        List<Item> items = new ArrayList<>(dataStore.getItems().size());
+        List<Loan> loans = new ArrayList<>(dataStore.getItems().size());
+        for (Item item : dataStore.getItems().values()) {
+            items.add(item);
+            loans.add(item.getLoan());
+        }
+
+        Map<String, Integer> titleIndex = new HashMap<>();
+        List<String> titles = new ArrayList<>();
+        Map<String, Integer> userIndex = new HashMap<>();
+        List<String> users = new ArrayList<>();
+        int[] titleOf = new int[items.size()];
+        int[] borrowerOf = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            titleOf[i] = intern(items.get(i).getTitle(), titleIndex, titles);
+            Loan loan = loans.get(i);
+            borrowerOf[i] = loan == null || loan.getBorrower() == null
+                    ? NO_BORROWER
+                    : intern(loan.getBorrower().getUsername(), userIndex, users);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.position(HEADER_SIZE);
+            long titlesOffset = HEADER_SIZE;
+            for (String title : titles) {
+                buffer = putString(channel, buffer, title);
+            }
+            long usersOffset = channel.position() + buffer.position();
+            for (String user : users) {
+                buffer = putString(channel, buffer, user);
+            }
+            long itemsOffset = channel.position() + buffer.position();
+            for (int i = 0; i < items.size(); i++) {
+                buffer = ensureRemaining(channel, buffer, RECORD_SIZE);
+                Item item = items.get(i);
+                Loan loan = loans.get(i);
+                buffer.putInt(item.getUniqueId());
+                buffer.putInt(item.getItemId());
+                buffer.putInt(titleOf[i]);
+                buffer.putInt(borrowerOf[i]);
+                buffer.putInt(loan == null || !loan.hasDueDate() ? NO_DATE : Math.toIntExact(loan.getDueEpochDay()));
+                buffer.putInt(loan == null || !loan.hasBorrowedDate() ? NO_DATE : Math.toIntExact(loan.getBorrowedEpochDay()));
+                buffer.put((byte) ItemType.of(item).ordinal());
+                buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+            }
+            buffer = ensureRemaining(channel, buffer, 8);
+            buffer.putInt(MAGIC);
+            buffer.putInt(items.size());
+            drain(channel, buffer);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(replayFromSegment)
+                    .putInt(items.size()).putInt(titles.size()).putInt(users.size()).putInt(0)
+                    .putLong(titlesOffset).putLong(usersOffset).putLong(itemsOffset);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Adds the snapshot's items to the data store and returns the first journal segment to replay
+    public static long read(Path file, LibraryDataStore dataStore) throws IOException {
+        return read(file, dataStore, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static long read(Path file, LibraryDataStore dataStore, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(channel, file);
+
+            ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, header.titlesOffset, header.itemsOffset - header.titlesOffset);
+            String[] titles = new String[header.titleCount];
+            for (int i = 0; i < titles.length; i++) {
+                titles[i] = getString(strings);
+            }
+            User[] users = new User[header.userCount];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = dataStore.getUserRegistry().register(getString(strings));
+            }
+
+            ByteBuffer footer = ByteBuffer.allocate(8);
+            channel.read(footer, header.itemsOffset + (long) header.itemCount * header.recordSize);
+            footer.flip();
+            if (footer.remaining() < 8 || footer.getInt() != MAGIC || footer.getInt() != header.itemCount) {
+                throw new IOException("Library snapshot is truncated: " + file);
+            }
+
+            dataStore.indexTitles(Arrays.asList(titles));
+            decodeItems(channel, header, titles, users, dataStore, parallelism);
+            return header.journalSegment;
+        }
+    }
+
+    // Loads a snapshot into a data store presized for its item count
+    public static LibraryDataStore loadNewStore(Path file) throws IOException {
+        LibraryDataStore dataStore = new LibraryDataStore(itemCount(file));
+        read(file, dataStore);
+        return dataStore;
+    }
+
+    // Number of items in a snapshot, read from its header, e.g. to presize a data store
+    public static int itemCount(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readHeader(channel, file).itemCount;
+        }
+    }
+
+    private static void decodeItems(FileChannel channel, Header header, String[] titles, User[] users,
+                                    LibraryDataStore dataStore, int parallelism) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            List<Future<?>> slices = new ArrayList<>();
+            for (int first = 0; first < header.itemCount; first += SLICE_RECORDS) {
+                int count = Math.min(SLICE_RECORDS, header.itemCount - first);
+                long offset = header.itemsOffset + (long) first * header.recordSize;
+                slices.add(executor.submit(() -> {
+                    ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) count * header.recordSize);
+                    decodeSlice(records, count, header.recordSize, titles, users, dataStore);
+                    return null;
+                }));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading snapshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load snapshot", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void decodeSlice(ByteBuffer records, int count, int recordSize, String[] titles, User[] users,
+                                    LibraryDataStore dataStore) {
+        ItemType[] types = ItemType.values();
+        boolean hasBorrowedDate = recordSize == RECORD_SIZE;
+        int typeOffset = hasBorrowedDate ? 24 : 20;
+        for (int i = 0; i < count; i++) {
+            int base = i * recordSize;
+            int uniqueId = records.getInt(base);
+            int itemId = records.getInt(base + 4);
+            String title = titles[records.getInt(base + 8)];
+            int borrower = records.getInt(base + 12);
+            int dueEpochDay = records.getInt(base + 16);
+            int borrowedEpochDay = hasBorrowedDate ? records.getInt(base + 20) : NO_DATE;
+            Item item = types[records.get(base + typeOffset)].create(uniqueId, itemId, title);
+            if (borrower != NO_BORROWER) {
+                item.setLoan(new Loan(users[borrower],
+                        borrowedEpochDay == NO_DATE ? Loan.NOT_RECORDED : borrowedEpochDay,
+                        dueEpochDay == NO_DATE ? Loan.NO_DUE_DATE : dueEpochDay));
+            }
+            dataStore.addItemIfAbsent(item);
+        }
+    }
+
+    private static Header readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(buffer, 0);
+        buffer.flip();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a library snapshot: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION && version != V2) {
+            throw new IOException("Unsupported library snapshot version " + version + ": " + file);
+        }
+        Header header = new Header();
+        header.recordSize = version == VERSION ? RECORD_SIZE : V2_RECORD_SIZE;
+        header.journalSegment = buffer.getLong();
+        header.itemCount = buffer.getInt();
+        header.titleCount = buffer.getInt();
+        header.userCount = buffer.getInt();
+        buffer.getInt();
+        header.titlesOffset = buffer.getLong();
+        buffer.getLong();
+        header.itemsOffset = buffer.getLong();
+        return header;
+    }
+
+    private static final class Header {
+        private long journalSegment;
+        private int itemCount;
+        private int titleCount;
+        private int userCount;
+        private long titlesOffset;
+        private long itemsOffset;
+        private int recordSize;
+    }
+
+    private static int intern(String value, Map<String, Integer> index, List<String> values) {
+        Integer existing = index.putIfAbsent(value, values.size());
+        if (existing != null) {
+            return existing;
+        }
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    private static ByteBuffer putString(FileChannel channel, ByteBuffer buffer, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (4 + bytes.length > buffer.capacity()) {
+            drain(channel, buffer);
+            buffer = ByteBuffer.allocateDirect(4 + bytes.length);
+        }
+        buffer = ensureRemaining(channel, buffer, 4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+        return buffer;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,482 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.Loan;
+import main.java.simplelibrary.models.LoanTransaction;
+import main.java.simplelibrary.models.User;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only log of borrow, return, renewal and transfer records, split into numbered
+// segment files in one directory. Records are framed as [length][body][crc32] so a torn write
+// at the end of a segment is detected and ignored on replay. A journal opened after a
+// crash starts a new segment, so any segment may end in a torn write; a bad record with
+// data after it is corruption, and replay fails rather than skip part of the history.
+//
+// Appends only copy the record into a buffer. Depending on the DurabilityMode the buffer
+// is then written and forced by the appending thread, by a flusher thread as soon as
+// there is something to write (many transactions share one force), or by a flusher
+// thread on a timer.
+public class LoanJournal implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long DEFAULT_ASYNC_FLUSH_MILLIS = 10;
+    private static final byte NO_USER = -1;
+    private static final int MAX_RECORD = 1 << 20;
+    // Due dates are written as epoch days, with Loan.NO_DUE_DATE for none. Fields added
+    // later go after the user name, and only when set, so older records still decode.
+    // Transfers always write the borrowed day, then the item's type, itemId and title.
+
+    private final Path directory;
+    private final DurabilityMode mode;
+    private final long asyncFlushMillis;
+
+    // Guards the pending buffer and sequence numbers
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+    // Held by whoever is writing to the channel
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException failure;
+    private boolean running = true;
+
+    private FileChannel channel;
+    private long segment;
+    private final Thread flusher;
+
+    private LoanJournal(Path directory, DurabilityMode mode, long asyncFlushMillis) throws IOException {
+        this.directory = directory;
+        this.mode = mode;
+        this.asyncFlushMillis = asyncFlushMillis;
+        Files.createDirectories(directory);
+        List<Long> segments = segments(directory);
+        this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        this.channel = openSegment(segment);
+        if (mode == DurabilityMode.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::flushLoop, "library-journal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    // Opens a journal that appends to a new segment after any already in the directory
+    public static LoanJournal open(Path directory, DurabilityMode mode) throws IOException {
+        return new LoanJournal(directory, mode, DEFAULT_ASYNC_FLUSH_MILLIS);
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    // Adds a record to the journal. Callers must append records for the same item in the
+    // order the changes were made, e.g. while holding that item's lock.
+    public void append(LoanTransaction transaction) {
+        lock.lock();
+        try {
+            checkFailure();
+            encode(transaction);
+            appendedSeq++;
+            if (mode == DurabilityMode.SYNC) {
+                flush();
+                checkFailure();
+            } else if (mode == DurabilityMode.GROUP_COMMIT) {
+                flushRequested.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adds several records at once, sharing one buffer lock and, in SYNC mode, one force.
+    // Either all of them are taken or, if the journal has failed, none are.
+    public void appendAll(List<LoanTransaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            checkFailure();
+            for (LoanTransaction transaction : transactions) {
+                encode(transaction);
+            }
+            appendedSeq += transactions.size();
+            if (mode == DurabilityMode.SYNC) {
+                flush();
+                checkFailure();
+            } else if (mode == DurabilityMode.GROUP_COMMIT) {
+                flushRequested.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until everything appended so far is on disk. Returns at once in ASYNC mode.
+    // Throws if the journal failed first; the caller then undoes the changes it appended.
+    public void awaitDurable() {
+        if (mode != DurabilityMode.GROUP_COMMIT) {
+            return;
+        }
+        lock.lock();
+        try {
+            long target = appendedSeq;
+            while (durableSeq < target) {
+                checkFailure();
+                flushRequested.signal();
+                durableAdvanced.awaitUninterruptibly();
+            }
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forces everything appended so far to disk, then starts a new segment. Records
+    // appended afterwards go to the new segment, whose number is returned.
+    public long rotate() throws IOException {
+        writeLock.lock();
+        try {
+            lock.lock();
+            try {
+                flush();
+                if (failure != null) {
+                    throw new IOException("Loan journal is no longer writable", failure);
+                }
+                channel.close();
+                segment++;
+                channel = openSegment(segment);
+                return segment;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Deletes segments older than the given one, once a snapshot no longer needs them
+    public void deleteSegmentsBefore(long firstNeeded) throws IOException {
+        for (long old : segments(directory)) {
+            if (old < firstNeeded) {
+                Files.deleteIfExists(segmentPath(directory, old));
+            }
+        }
+    }
+
+    // Reads every complete record in the segments from firstSegment on, oldest first.
+    // Throws if a segment holds a bad record that is not a torn tail; the records before
+    // it have been handled by then.
+    public static void replay(Path directory, long firstSegment, Function<String, User> users, Consumer<LoanTransaction> handler) throws IOException {
+        for (long segment : segments(directory)) {
+            if (segment < firstSegment) {
+                continue;
+            }
+            Path path = segmentPath(directory, segment);
+            long badRecord;
+            try (InputStream in = Files.newInputStream(path)) {
+                badRecord = readSegment(new DataInputStream(new BufferedInputStream(in)), Files.size(path), users, handler);
+            }
+            if (badRecord >= 0 && !isZeroFrom(path, badRecord)) {
+                throw new IOException("Loan journal segment " + path + " is corrupt at byte " + badRecord
+                        + "; later records were not replayed");
+            }
+        }
+    }
+
+    // Returns the offset of the first bad record, or -1 if the segment ends cleanly or in
+    // a torn write that reaches the end of the file
+    private static long readSegment(DataInputStream in, long size, Function<String, User> users, Consumer<LoanTransaction> handler) throws IOException {
+        CRC32 crc = new CRC32();
+        long offset = 0;
+        while (offset < size) {
+            if (size - offset < 8) {
+                return -1;
+            }
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD) {
+                return offset;
+            }
+            if (size - offset - 8 < length) {
+                return -1;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            crc.reset();
+            crc.update(body);
+            if (in.readInt() != (int) crc.getValue()) {
+                // A record the crash cut short is the last one in its segment
+                return offset + 8 + length == size ? -1 : offset;
+            }
+            handler.accept(decode(ByteBuffer.wrap(body), users));
+            offset += 8 + length;
+        }
+        return -1;
+    }
+
+    // A crash can also leave the file extended over blocks that were never written
+    private static boolean isZeroFrom(Path path, long offset) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            in.skipNBytes(offset);
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void encode(LoanTransaction transaction) {
+        User user = transaction.getUser();
+        byte[] name = user == null ? null : user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] title = transaction.isTransfer() ? transaction.getTitle().getBytes(StandardCharsets.UTF_8) : null;
+        boolean borrowedDate = transaction.hasBorrowedDate() || title != null;
+        int bodyLength = 1 + 4 + 8 + 8 + 4 + (name == null ? 0 : name.length)
+                + (borrowedDate ? 8 : 0) + (title == null ? 0 : 1 + 4 + 4 + title.length);
+        ensureCapacity(4 + bodyLength + 4);
+
+        pending.putInt(bodyLength);
+        int bodyStart = pending.position();
+        pending.put((byte) transaction.getType().ordinal());
+        pending.putInt(transaction.getUniqueId());
+        pending.putLong(transaction.getDueEpochDay());
+        pending.putLong(transaction.getTimestampMillis());
+        if (name == null) {
+            pending.putInt(NO_USER);
+        } else {
+            pending.putInt(name.length);
+            pending.put(name);
+        }
+        if (borrowedDate) {
+            pending.putLong(transaction.getBorrowedEpochDay());
+        }
+        if (title != null) {
+            pending.put((byte) transaction.getItemType().ordinal());
+            pending.putInt(transaction.getItemId());
+            pending.putInt(title.length);
+            pending.put(title);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), bodyStart, bodyLength);
+        pending.putInt((int) crc.getValue());
+    }
+
+    private static LoanTransaction decode(ByteBuffer body, Function<String, User> users) {
+        LoanTransaction.Type type = LoanTransaction.Type.values()[body.get()];
+        int uniqueId = body.getInt();
+        long dueEpochDay = body.getLong();
+        long timestamp = body.getLong();
+        int nameLength = body.getInt();
+        User user = null;
+        if (nameLength >= 0) {
+            byte[] name = new byte[nameLength];
+            body.get(name);
+            user = users.apply(new String(name, StandardCharsets.UTF_8));
+        }
+        long borrowedEpochDay = body.remaining() >= 8 ? body.getLong() : Loan.NOT_RECORDED;
+        if (type != LoanTransaction.Type.TRANSFERRED_OUT && type != LoanTransaction.Type.TRANSFERRED_IN) {
+            return new LoanTransaction(type, uniqueId, user, borrowedEpochDay, dueEpochDay, timestamp);
+        }
+        ItemType itemType = ItemType.values()[body.get()];
+        int itemId = body.getInt();
+        byte[] title = new byte[body.getInt()];
+        body.get(title);
+        return new LoanTransaction(type, uniqueId, user, borrowedEpochDay, dueEpochDay, timestamp,
+                itemType, itemId, new String(title, StandardCharsets.UTF_8));
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    // Writes and forces the pending buffer. Called with lock held; in SYNC mode and
+    // during rotation this is the only writer, otherwise the flusher thread is.
+    private void flush() {
+        if (pending.position() == 0) {
+            return;
+        }
+        try {
+            pending.flip();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            channel.force(false);
+            pending.clear();
+            durableSeq = appendedSeq;
+            durableAdvanced.signalAll();
+        } catch (IOException e) {
+            // The records were not made durable; the appender rolls them back
+            pending.clear();
+            appendedSeq = durableSeq;
+            fail(e);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (running && pending.position() == 0) {
+                    if (mode == DurabilityMode.ASYNC) {
+                        flushRequested.await(asyncFlushMillis, TimeUnit.MILLISECONDS);
+                    } else {
+                        flushRequested.await();
+                    }
+                }
+                if (!running && pending.position() == 0) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            long upTo;
+            writeLock.lock();
+            try {
+                lock.lock();
+                try {
+                    // A rotation may have written the batch while we waited for the write lock
+                    if (pending.position() == 0) {
+                        continue;
+                    }
+                    // Swap buffers so appenders keep going while this batch is written
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    upTo = appendedSeq;
+                } finally {
+                    lock.unlock();
+                }
+
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+                writing.clear();
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    fail(e);
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            } finally {
+                writeLock.unlock();
+            }
+
+            lock.lock();
+            try {
+                durableSeq = Math.max(durableSeq, upTo);
+                durableAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        durableAdvanced.signalAll();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Loan journal is no longer writable", failure);
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Writes out anything still pending and closes the current segment
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            running = false;
+            flushRequested.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writeLock.lock();
+        try {
+            lock.lock();
+            try {
+                flush();
+                channel.close();
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
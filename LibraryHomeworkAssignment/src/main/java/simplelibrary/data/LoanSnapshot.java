@@ -0,0 +1,196 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.Loan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+// Every copy on loan with the loan it had when the snapshot was taken, for reports that
+// aggregate over the whole library, and the number of copies of each type catalogued.
+// Copies and loans are held in two parallel arrays, addressed by an index from 0 to
+// size() - 1.
+//
+// The catalogue is read in parallel, split with its map's spliterator, and each copy's
+// loan is read once without taking a lock, so taking a snapshot never holds up a borrow
+// or return. A loan that changes while the snapshot is taken is seen either before or
+// after the change, never half way. The snapshot does not change afterwards, so reports
+// run against the same snapshot always agree with each other.
+public final class LoanSnapshot {
+    // Copies read by one task while taking the snapshot, and indexes per task of a query
+    private static final int LEAF_SIZE = 4096;
+
+    private static final ItemType[] TYPES = ItemType.values();
+
+    private final Item[] items;
+    private final Loan[] loans;
+    private final long[] copiesByType;
+
+    private LoanSnapshot(Item[] items, Loan[] loans, long[] copiesByType) {
+        this.items = items;
+        this.loans = loans;
+        this.copiesByType = copiesByType;
+    }
+
+    static LoanSnapshot capture(Collection<Item> catalogue, ForkJoinPool pool) {
+        List<Piece> pieces = pool.invoke(new Capture(catalogue.spliterator()));
+        int size = 0;
+        long[] copiesByType = new long[TYPES.length];
+        for (Piece piece : pieces) {
+            size += piece.size;
+            for (int t = 0; t < TYPES.length; t++) {
+                copiesByType[t] += piece.copiesByType[t];
+            }
+        }
+        Item[] items = new Item[size];
+        Loan[] loans = new Loan[size];
+        int offset = 0;
+        for (Piece piece : pieces) {
+            System.arraycopy(piece.items, 0, items, offset, piece.size);
+            System.arraycopy(piece.loans, 0, loans, offset, piece.size);
+            offset += piece.size;
+        }
+        return new LoanSnapshot(items, loans, copiesByType);
+    }
+
+    // Copies on loan
+    public int size() {
+        return items.length;
+    }
+
+    public Item getItem(int index) {
+        return items[index];
+    }
+
+    // The copy's loan when the snapshot was taken
+    public Loan getLoan(int index) {
+        return loans[index];
+    }
+
+    // Copies in the catalogue, on the shelf or on loan
+    public long getCopyCount() {
+        long copies = 0;
+        for (long count : copiesByType) {
+            copies += count;
+        }
+        return copies;
+    }
+
+    public long getCopyCount(ItemType type) {
+        return copiesByType[type.ordinal()];
+    }
+
+    // Indexes of every copy on loan, as a parallel stream that splits into runs of LEAF_SIZE
+    public IntStream indexes() {
+        return StreamSupport.intStream(new IndexSpliterator(0, items.length), true);
+    }
+
+    // Reads the catalogue into pieces of about LEAF_SIZE copies, in splitting order
+    private static final class Capture extends RecursiveTask<List<Piece>> {
+        private static final long serialVersionUID = 1L;
+        private final Spliterator<Item> source;
+
+        private Capture(Spliterator<Item> source) {
+            this.source = source;
+        }
+
+        @Override
+        protected List<Piece> compute() {
+            Spliterator<Item> prefix = source.estimateSize() > LEAF_SIZE ? source.trySplit() : null;
+            if (prefix == null) {
+                Piece piece = new Piece();
+                source.forEachRemaining(piece::add);
+                List<Piece> pieces = new ArrayList<>(1);
+                pieces.add(piece);
+                return pieces;
+            }
+            Capture rest = new Capture(source);
+            rest.fork();
+            List<Piece> pieces = new Capture(prefix).compute();
+            pieces.addAll(rest.join());
+            return pieces;
+        }
+    }
+
+    private static final class Piece {
+        private Item[] items = new Item[64];
+        private Loan[] loans = new Loan[64];
+        private int size;
+        private final long[] copiesByType = new long[TYPES.length];
+
+        private void add(Item item) {
+            copiesByType[ItemType.of(item).ordinal()]++;
+            // One read, so the borrower and due date belong to the same loan
+            Loan loan = item.getLoan();
+            if (loan == null) {
+                return;
+            }
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                loans = Arrays.copyOf(loans, size * 2);
+            }
+            items[size] = item;
+            loans[size++] = loan;
+        }
+    }
+
+    // Halves its range down to LEAF_SIZE indexes, fewer and larger tasks than the
+    // single-element splits of IntStream.range
+    private static final class IndexSpliterator implements Spliterator.OfInt {
+        private int from;
+        private final int to;
+
+        private IndexSpliterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(from++);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            int end = to;
+            for (int i = from; i < end; i++) {
+                action.accept(i);
+            }
+            from = end;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if (to - from < 2 * LEAF_SIZE) {
+                return null;
+            }
+            int middle = (from + to) >>> 1;
+            IndexSpliterator prefix = new IndexSpliterator(from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL | DISTINCT;
+        }
+    }
+}
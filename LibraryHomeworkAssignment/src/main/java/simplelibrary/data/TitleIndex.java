@@ -0,0 +1,414 @@
+package main.java.simplelibrary.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+// Inverted index from title words to the distinct titles containing them. Titles are
+// lower-cased and split on anything that is not a letter or digit. Each distinct title
+// gets a dense id in the order it was first catalogued.
+//
+// A word's titles are grouped by how many words the title has, each group in ascending
+// id order. Searches walk the groups shortest first, so the best matches come first and
+// a search stops as soon as it has enough of them instead of ranking every match. A
+// search also stops after MAX_EXAMINED postings, so very common words cannot make it slow.
+//
+// Titles are added under one writer lock; searches take no lock. A title stays in the
+// index once added, even if every copy later leaves the catalogue.
+class TitleIndex {
+    // Titles of 1 to LENGTH_GROUPS - 1 words each have a group; longer ones share the last
+    private static final int LENGTH_GROUPS = 8;
+    // Words a trailing prefix may stand for, taken in alphabetical order
+    static final int MAX_PREFIX_WORDS = 512;
+    // Postings a search may look at before it returns what it has found
+    static final int MAX_EXAMINED = 1 << 13;
+    // Largest prefix expansion whose titles are gathered into a set to check against
+    private static final int MAX_MARKED = 1 << 15;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+    // The same words in order, for prefix lookups; only written when a word is new.
+    // Replaced by addAll when it is empty, which builds it in one pass.
+    private volatile ConcurrentSkipListMap<String, Postings> words = new ConcurrentSkipListMap<>();
+    // Replaced (never shrunk) when it fills up; guarded by this for writers
+    private volatile String[] titles = new String[1024];
+    private volatile int size;
+
+    void add(String title) {
+        if (title != null && !ids.containsKey(title)) {
+            register(title);
+        }
+    }
+
+    private synchronized void register(String title) {
+        if (ids.containsKey(title)) {
+            return;
+        }
+        int id = size;
+        append(title, id, words);
+        // Publishes the title, then makes it visible to searches
+        size = id + 1;
+        ids.put(title, id);
+    }
+
+    // Adds many titles under one lock, e.g. a snapshot's title dictionary. Words seen for
+    // the first time are put into the prefix map together and in order, which costs a
+    // fraction of inserting them one at a time in catalogue order. Searches see the new
+    // titles once all of them are in.
+    synchronized void addAll(Collection<String> newTitles) {
+        int id = size;
+        TreeMap<String, Postings> newWords = new TreeMap<>();
+        for (String title : newTitles) {
+            if (title != null && !ids.containsKey(title)) {
+                append(title, id, newWords);
+                ids.put(title, id++);
+            }
+        }
+        if (words.isEmpty()) {
+            words = new ConcurrentSkipListMap<>(newWords);
+        } else {
+            words.putAll(newWords);
+        }
+        size = id;
+    }
+
+    // Writes a title into the table and its id into its words' postings. New words go into
+    // newWords, which is the prefix map itself for a single title.
+    private void append(String title, int id, Map<String, Postings> newWords) {
+        List<String> tokens = tokenize(title);
+        String[] table = titles;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, Math.max(table.length * 2, id + 1));
+        }
+        table[id] = title;
+        titles = table;
+        int group = Math.min(tokens.size(), LENGTH_GROUPS) - 1;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            // Titles have few words, so a scan finds repeats faster than a set
+            if (tokens.subList(0, i).contains(token)) {
+                continue;
+            }
+            Postings word = postings.get(token);
+            if (word == null) {
+                word = new Postings();
+                postings.put(token, word);
+                newWords.put(token, word);
+            }
+            word.append(group, id);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Titles containing every word of the query, shortest titles first. The last word is
+    // treated as a prefix unless the query ends with a separator, so "java conc" finds
+    // "Java Concurrency In Practice". When the query is a single prefix, titles with it as
+    // a whole word come first.
+    List<String> search(String query, int limit, Predicate<String> filter) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String prefix = Character.isLetterOrDigit(query.charAt(query.length() - 1)) ? tokens.remove(tokens.size() - 1) : null;
+        List<Postings> required = new ArrayList<>();
+        for (String token : new HashSet<>(tokens)) {
+            Postings word = postings.get(token);
+            if (word == null) {
+                return new ArrayList<>();
+            }
+            required.add(word);
+        }
+        required.sort(Comparator.comparingInt(word -> word.total));
+
+        // Size before table: a table read after the size holds every title below it
+        int visible = size;
+        Results results = new Results(limit, filter, titles, visible);
+        if (prefix == null) {
+            results.scan(required.subList(0, 1), required.subList(1, required.size()), null);
+            return results.titles();
+        }
+
+        List<Postings> expansion = new ArrayList<>();
+        long expansionTotal = 0;
+        for (Postings word : words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            if (expansion.size() == MAX_PREFIX_WORDS) {
+                break;
+            }
+            expansion.add(word);
+            expansionTotal += word.total;
+        }
+        if (expansion.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (required.isEmpty()) {
+            Postings exact = postings.get(prefix);
+            if (exact != null) {
+                results.scan(Collections.singletonList(exact), required, null);
+            }
+            results.scan(expansion, required, null);
+        } else if (expansion.size() < MAX_PREFIX_WORDS && expansionTotal < required.get(0).total) {
+            // The prefix is the rarer side, so its words drive the search
+            results.scan(expansion, required, null);
+        } else if (expansion.size() < MAX_PREFIX_WORDS && expansionTotal <= MAX_MARKED) {
+            IdSet matching = new IdSet((int) expansionTotal);
+            for (Postings word : expansion) {
+                word.addTo(matching);
+            }
+            results.scan(required.subList(0, 1), required.subList(1, required.size()), matching::contains);
+        } else {
+            String[] table = titles;
+            results.scan(required.subList(0, 1), required.subList(1, required.size()),
+                    id -> hasWordStartingWith(table[id], prefix));
+        }
+        return results.titles();
+    }
+
+    // Lower-cases and splits on anything that is not a letter or digit
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    // Whether some word of the title starts with the lower-case prefix, checked in place
+    private static boolean hasWordStartingWith(String title, String prefix) {
+        for (int i = 0; i + prefix.length() <= title.length(); i++) {
+            if (!Character.isLetterOrDigit(title.charAt(i)) || (i > 0 && Character.isLetterOrDigit(title.charAt(i - 1)))) {
+                continue;
+            }
+            int j = 0;
+            while (j < prefix.length() && Character.toLowerCase(title.charAt(i + j)) == prefix.charAt(j)) {
+                j++;
+            }
+            if (j == prefix.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Index of the first id at or after from that is not below id, galloping from from so
+    // that a run of ascending lookups costs about the log of the gaps between them
+    private static int seek(int[] ids, int count, int from, int id) {
+        int step = 1;
+        int high = from;
+        while (high < count && ids[high] < id) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int found = Arrays.binarySearch(ids, from, Math.min(high, count), id);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    // Collects the first matches up to the limit, skipping titles already taken
+    private static final class Results {
+        private final int limit;
+        private final Predicate<String> filter;
+        private final String[] titles;
+        private final int visible;
+        private final int[] chosen;
+        private int count;
+        private int examined;
+        // Where each of the other words' ids was last found in the group being walked
+        private int[] positions = new int[0];
+
+        private Results(int limit, Predicate<String> filter, String[] titles, int visible) {
+            this.limit = limit;
+            this.filter = filter;
+            this.titles = titles;
+            this.visible = visible;
+            this.chosen = new int[Math.min(limit, 1024)];
+        }
+
+        private boolean isDone() {
+            return count == chosen.length || examined >= MAX_EXAMINED;
+        }
+
+        // Walks the drivers' titles, shortest first, keeping those that also have every
+        // word in others and pass check, if there is one. Within a length, titles come
+        // word by word in the order the drivers are given.
+        private void scan(List<Postings> drivers, List<Postings> others, IntPredicate check) {
+            for (int group = 0; group < LENGTH_GROUPS; group++) {
+                for (Postings driver : drivers) {
+                    Group titles = driver.group(group);
+                    if (titles == null) {
+                        continue;
+                    }
+                    int count = titles.count;
+                    int[] ids = titles.ids;
+                    if (positions.length < others.size()) {
+                        positions = new int[others.size()];
+                    }
+                    Arrays.fill(positions, 0);
+                    for (int i = 0; i < count; i++) {
+                        if (isDone()) {
+                            return;
+                        }
+                        int id = ids[i];
+                        examined++;
+                        if (id < visible && containsAll(others, group, id)
+                                && (check == null || check.test(id))) {
+                            offer(id);
+                        }
+                    }
+                }
+            }
+        }
+
+        // The driver's ids ascend, so each other word is searched from where it last matched
+        private boolean containsAll(List<Postings> words, int group, int id) {
+            for (int w = 0; w < words.size(); w++) {
+                Group titles = words.get(w).group(group);
+                if (titles == null) {
+                    return false;
+                }
+                int count = titles.count;
+                int[] ids = titles.ids;
+                int position = seek(ids, count, positions[w], id);
+                positions[w] = position;
+                if (position == count || ids[position] != id) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void offer(int id) {
+            for (int i = 0; i < count; i++) {
+                if (chosen[i] == id) {
+                    return;
+                }
+            }
+            if (filter.test(titles[id])) {
+                chosen[count++] = id;
+            }
+        }
+
+        private List<String> titles() {
+            List<String> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(titles[chosen[i]]);
+            }
+            return result;
+        }
+    }
+
+    // One word's titles, grouped by title length
+    private static final class Postings {
+        private volatile Group[] groups = new Group[0];
+        private volatile int total;
+
+        private Group group(int group) {
+            Group[] current = groups;
+            return group < current.length ? current[group] : null;
+        }
+
+        private void addTo(IdSet set) {
+            for (Group group : groups) {
+                if (group != null) {
+                    int count = group.count;
+                    int[] ids = group.ids;
+                    for (int i = 0; i < count; i++) {
+                        set.add(ids[i]);
+                    }
+                }
+            }
+        }
+
+        private void append(int group, int id) {
+            Group[] current = groups;
+            if (group >= current.length || current[group] == null) {
+                // A new group is published with a fresh array, never written into one readers have
+                current = Arrays.copyOf(current, Math.max(current.length, group + 1));
+                current[group] = new Group();
+                groups = current;
+            }
+            current[group].append(id);
+            total = total + 1;
+        }
+    }
+
+    // Ascending title ids. Only the writer appends; the array is written before count, so
+    // a reader that reads count and then ids sees every id below count.
+    private static final class Group {
+        private volatile int[] ids = new int[2];
+        private volatile int count;
+
+        private void append(int id) {
+            int[] current = ids;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                ids = current;
+            }
+            current[count] = id;
+            count = count + 1;
+        }
+    }
+
+    // Open-addressed set of title ids, sized once for the ids it will hold
+    private static final class IdSet {
+        private final int[] slots;
+        private final int mask;
+
+        private IdSet(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            this.slots = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        // Ids are stored plus one so that zero marks an empty slot
+        private void add(int id) {
+            for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+                if (slots[slot] == 0) {
+                    slots[slot] = id + 1;
+                    return;
+                }
+                if (slots[slot] == id + 1) {
+                    return;
+                }
+            }
+        }
+
+        private boolean contains(int id) {
+            for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+                if (slots[slot] == 0) {
+                    return false;
+                }
+                if (slots[slot] == id + 1) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package main.java.simplelibrary.data;
+
+import main.java.simplelibrary.models.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps one User instance per username and gives each a dense int id, so loan
+// structures can be indexed by id instead of hashing User objects.
+public class UserRegistry {
+    private final ConcurrentHashMap<String, User> byName = new ConcurrentHashMap<>();
+    // Replaced (never shrunk) when it fills up; guarded by this for writers
+    private volatile User[] byId = new User[16];
+    private int nextId;
+
+    // Returns the registered user with this username, registering it on first use
+    public User register(String username) {
+        User user = byName.get(username);
+        return user != null ? user : create(username);
+    }
+
+    // Returns the registered instance for any User object, registering it on first use.
+    // Costs an array read when the user already came from this registry.
+    public User register(User user) {
+        return isRegistered(user) ? user : register(user.getUsername());
+    }
+
+    private synchronized User create(String username) {
+        User user = byName.get(username);
+        if (user != null) {
+            return user;
+        }
+        int id = nextId++;
+        user = new User(id, username);
+        User[] table = byId;
+        if (id >= table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[id] = user;
+        // Publishes the new slot, and the new table if it grew
+        byId = table;
+        byName.put(username, user);
+        return user;
+    }
+
+    // The registered instance for a user, or null if it was never registered
+    public User find(User user) {
+        return isRegistered(user) ? user : byName.get(user.getUsername());
+    }
+
+    public User get(String username) {
+        return byName.get(username);
+    }
+
+    public User get(int id) {
+        User[] table = byId;
+        return id >= 0 && id < table.length ? table[id] : null;
+    }
+
+    // Ids run from 0 to size() - 1
+    public int size() {
+        return byName.size();
+    }
+
+    public Map<String, User> asMap() {
+        return Collections.unmodifiableMap(byName);
+    }
+
+    private boolean isRegistered(User user) {
+        return get(user.getId()) == user;
+    }
+}
@@ -0,0 +1,343 @@
+package main.java.simplelibrary.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BatchMode;
+import main.java.simplelibrary.services.BatchResult;
+import main.java.simplelibrary.services.LibraryMetrics;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// JSON-over-HTTP front end for a LibraryService, built on the JDK's own HTTP server.
+//
+//   POST /items/{uniqueId}/borrow?user=NAME     200, or 409 if it is on loan
+//   POST /items/{uniqueId}/return?user=NAME     200, or 409 if the user does not hold it
+//   GET  /items/{uniqueId}/available            {"uniqueId":1,"available":true}
+//   POST /batch/borrow?user=NAME[&mode=ALL_OR_NOTHING]   body: uniqueIds separated by
+//   POST /batch/return?user=NAME[&mode=...]              commas or whitespace
+//   GET  /inventory                             distinct titles on the shelf
+//   GET  /search?q=java+conc[&limit=10][&available=true]   titles matching as you type
+//   GET  /overdue                               overdue items, earliest due date first
+//   GET  /metrics                               LibraryMetrics snapshot
+//
+// Every response has a Content-Length, so connections are kept alive and clients may
+// pipeline requests on them. Each request runs on its own virtual thread when the JDK
+// has them (21 and later), otherwise on a cached thread pool.
+public class LibraryHttpServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LibraryHttpServer.class.getName());
+    // Pending connections the OS may queue, so bursts of new clients are not refused
+    private static final int BACKLOG = 4096;
+
+    static {
+        // Small JSON responses otherwise wait on Nagle's algorithm and the client's delayed
+        // ACK, about 40 ms per request. Read once when the JDK server is first used.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final LibraryService libraryService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public LibraryHttpServer(LibraryService libraryService, InetSocketAddress address) throws IOException {
+        this.libraryService = libraryService;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = newRequestExecutor();
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    // One virtual thread per task when the running JDK supports it. Looked up reflectively
+    // so the server still compiles and runs on older JDKs.
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "library-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Library HTTP server listening on " + server.getAddress());
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting requests, gives those in progress a second to finish and stops their threads
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // Read whatever body was sent so the connection is ready for the next request
+            String body = readBody(exchange);
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (path.length == 4 && path[1].equals("items")) {
+                handleItem(exchange, method, parseId(path[2]), path[3], query);
+            } else if (path.length == 3 && path[1].equals("batch")) {
+                handleBatch(exchange, method, path[2], query, body);
+            } else if (path.length == 2 && path[1].equals("inventory")) {
+                if (requireMethod(exchange, method, "GET")) {
+                    send(exchange, 200, stringArray(libraryService.getInventory()));
+                }
+            } else if (path.length == 2 && path[1].equals("search")) {
+                if (requireMethod(exchange, method, "GET")) {
+                    int limit = query.containsKey("limit") ? parseNumber(query.get("limit"), "limit") : 10;
+                    boolean availableOnly = Boolean.parseBoolean(query.get("available"));
+                    send(exchange, 200, stringArray(libraryService.searchTitles(query.getOrDefault("q", ""), limit, availableOnly)));
+                }
+            } else if (path.length == 2 && path[1].equals("overdue")) {
+                if (requireMethod(exchange, method, "GET")) {
+                    send(exchange, 200, itemArray(libraryService.getOverdueItems()));
+                }
+            } else if (path.length == 2 && path[1].equals("metrics")) {
+                if (requireMethod(exchange, method, "GET")) {
+                    send(exchange, 200, metrics(libraryService.getMetricsSnapshot()));
+                }
+            } else {
+                sendError(exchange, 404, "No such resource: " + exchange.getRequestURI().getPath());
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Request failed: " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleItem(HttpExchange exchange, String method, int uniqueId, String action,
+                            Map<String, String> query) throws IOException {
+        if (libraryService.getItems().get(uniqueId) == null) {
+            sendError(exchange, 404, "No item with uniqueId " + uniqueId);
+            return;
+        }
+        switch (action) {
+            case "available":
+                if (requireMethod(exchange, method, "GET")) {
+                    send(exchange, 200, "{\"uniqueId\":" + uniqueId + ",\"available\":" + libraryService.isAvailable(uniqueId) + "}");
+                }
+                break;
+            case "borrow":
+                if (requireMethod(exchange, method, "POST")) {
+                    boolean borrowed = libraryService.borrowItem(uniqueId, userOf(query));
+                    send(exchange, borrowed ? 200 : 409, "{\"uniqueId\":" + uniqueId + ",\"borrowed\":" + borrowed + "}");
+                }
+                break;
+            case "return":
+                if (requireMethod(exchange, method, "POST")) {
+                    boolean returned = libraryService.returnItem(uniqueId, userOf(query));
+                    send(exchange, returned ? 200 : 409, "{\"uniqueId\":" + uniqueId + ",\"returned\":" + returned + "}");
+                }
+                break;
+            default:
+                sendError(exchange, 404, "No such item action: " + action);
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange, String method, String action, Map<String, String> query,
+                             String body) throws IOException {
+        if (!requireMethod(exchange, method, "POST")) {
+            return;
+        }
+        String[] tokens = body.trim().isEmpty() ? new String[0] : body.trim().split("[,\\s]+");
+        int[] uniqueIds = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            uniqueIds[i] = parseId(tokens[i]);
+        }
+        BatchMode mode = query.containsKey("mode") ? BatchMode.valueOf(query.get("mode")) : BatchMode.BEST_EFFORT;
+        BatchResult result;
+        if (action.equals("borrow")) {
+            result = libraryService.borrowItems(uniqueIds, userOf(query), mode);
+        } else if (action.equals("return")) {
+            result = libraryService.returnItems(uniqueIds, userOf(query), mode);
+        } else {
+            sendError(exchange, 404, "No such batch action: " + action);
+            return;
+        }
+
+        StringBuilder json = new StringBuilder("{\"succeeded\":").append(result.getSucceededCount()).append(",\"results\":[");
+        for (int i = 0; i < result.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"uniqueId\":").append(result.getUniqueId(i))
+                    .append(",\"status\":\"").append(result.getStatus(i)).append("\"}");
+        }
+        send(exchange, 200, json.append("]}").toString());
+    }
+
+    private static boolean requireMethod(HttpExchange exchange, String method, String expected) throws IOException {
+        if (method.equals(expected)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", expected);
+        sendError(exchange, 405, "Use " + expected);
+        return false;
+    }
+
+    private static User userOf(Map<String, String> query) {
+        String name = query.get("user");
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Missing user parameter");
+        }
+        return new User(name);
+    }
+
+    private static int parseId(String value) {
+        return parseNumber(value, "uniqueId");
+    }
+
+    private static int parseNumber(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a valid " + name + ": " + value);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, "{\"error\":" + quote(message) + "}");
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String stringArray(Collection<String> values) {
+        StringBuilder json = new StringBuilder("[");
+        for (String value : values) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(quote(value));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String itemArray(List<Item> items) {
+        StringBuilder json = new StringBuilder("[");
+        for (Item item : items) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            User borrower = item.getBorrowedBy();
+            json.append("{\"uniqueId\":").append(item.getUniqueId())
+                    .append(",\"itemId\":").append(item.getItemId())
+                    .append(",\"title\":").append(quote(item.getTitle()))
+                    .append(",\"type\":\"").append(ItemType.of(item).getCsvName()).append('"')
+                    .append(",\"borrower\":").append(borrower == null ? "null" : quote(borrower.getUsername()))
+                    .append(",\"dueDate\":").append(item.getDueDate() == null ? "null" : "\"" + item.getDueDate() + "\"")
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String metrics(LibraryMetrics.Snapshot snapshot) {
+        StringBuilder json = new StringBuilder("{\"itemsOnShelf\":").append(snapshot.getItemsOnShelf())
+                .append(",\"activeLoans\":").append(snapshot.getActiveLoans())
+                .append(",\"overdueLoans\":").append(snapshot.getOverdueLoans())
+                .append(",\"contendedLocks\":").append(snapshot.getContendedLocks())
+                .append(",\"operations\":{");
+        boolean first = true;
+        for (Map.Entry<LibraryMetrics.Operation, LibraryMetrics.OperationSnapshot> entry : snapshot.getOperations().entrySet()) {
+            LibraryMetrics.OperationSnapshot operation = entry.getValue();
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(entry.getKey()).append("\":{\"calls\":").append(operation.getCalls())
+                    .append(",\"failures\":").append(operation.getFailures())
+                    .append(",\"p50Nanos\":").append(operation.getP50Nanos())
+                    .append(",\"p99Nanos\":").append(operation.getP99Nanos())
+                    .append(",\"maxNanos\":").append(operation.getMaxNanos()).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
@@ -1,14 +1,19 @@
 package main.java.simplelibrary.models;
 
 import java.time.LocalDate;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public abstract class Item {
-    private int uniqueId;
-    private int itemId;
+    private final int uniqueId;
+    private final int itemId;
     private String type;
-    private String title;
-    private LocalDate dueDate;
-    private User borrowedBy;
+    private final String title;
+    // null while the item is on the shelf; replaced as a whole via compare-and-set.
+    // Updated through a field updater rather than an AtomicReference to save an object per item.
+    private volatile Loan loan;
+    private static final AtomicReferenceFieldUpdater<Item, Loan> LOAN =
+            AtomicReferenceFieldUpdater.newUpdater(Item.class, Loan.class, "loan");
 
     public Item(int uniqueId, int itemId, String title) {
         this.uniqueId = uniqueId;
@@ -21,24 +26,86 @@ public abstract class Item {
         return uniqueId;
     }
 
-    public LocalDate getDueDate() {
-        return dueDate;
+    public int getItemId() {
+        return itemId;
     }
 
-    public void setDueDate(LocalDate dueDate) {
-        this.dueDate = dueDate;
+    public Loan getLoan() {
+        return loan;
     }
 
-    public User getBorrowedBy() {
-        return borrowedBy;
+    public boolean isAvailable() {
+        return loan == null;
+    }
+
+    // Moves the item from available to on loan. Returns the new loan, or null if it
+    // was already on loan.
+    public Loan tryBorrow(User borrower, long dueEpochDay) {
+        return tryBorrow(borrower, Loan.NOT_RECORDED, dueEpochDay);
     }
 
-    public void setBorrowedBy(User borrowedBy) {
-        this.borrowedBy = borrowedBy;
+    public Loan tryBorrow(User borrower, long borrowedEpochDay, long dueEpochDay) {
+        Loan update = new Loan(borrower, borrowedEpochDay, dueEpochDay);
+        return LOAN.compareAndSet(this, null, update) ? update : null;
+    }
+
+    public Loan tryBorrow(User borrower, LocalDate dueDate) {
+        return tryBorrow(borrower, dueDate == null ? Loan.NO_DUE_DATE : dueDate.toEpochDay());
+    }
+
+    // Moves the item back to available. Returns the loan that ended, or null if the
+    // item was not on loan to the given user.
+    public Loan tryReturn(User borrower) {
+        Loan current;
+        do {
+            current = loan;
+            if (current == null || !Objects.equals(current.getBorrower(), borrower)) {
+                return null;
+            }
+        } while (!LOAN.compareAndSet(this, current, null));
+        return current;
+    }
+
+    // Overwrites the loan state unconditionally, for restoring persisted state
+    public void setLoan(Loan loan) {
+        this.loan = loan;
+    }
+
+    // Replaces the current loan, e.g. to move its due date. Fails if the loan changed meanwhile.
+    public boolean replaceLoan(Loan expected, Loan update) {
+        return expected != null && update != null && LOAN.compareAndSet(this, expected, update);
+    }
+
+    public LocalDate getDueDate() {
+        Loan current = loan;
+        return current == null ? null : current.getDueDate();
+    }
+
+    // Loan.NO_DUE_DATE while the item is on the shelf
+    public long getDueEpochDay() {
+        Loan current = loan;
+        return current == null ? Loan.NO_DUE_DATE : current.getDueEpochDay();
+    }
+
+    public User getBorrowedBy() {
+        Loan current = loan;
+        return current == null ? null : current.getBorrower();
     }
 
     public String getTitle() {
         return this.title;
     }
-}
 
+    // Items are identified by their uniqueId so loan sets can be probed by id
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Item)) return false;
+        return uniqueId == ((Item) o).uniqueId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(uniqueId);
+    }
+}
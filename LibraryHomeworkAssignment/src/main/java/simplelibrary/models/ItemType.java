@@ -0,0 +1,51 @@
+package main.java.simplelibrary.models;
+
+// The kinds of item the library lends, with the name used for them in the catalogue CSV
+public enum ItemType {
+    BOOK("Book"),
+    DVD("DVD"),
+    VHS("VHS"),
+    CD("CD");
+
+    private static final ItemType[] VALUES = values();
+
+    private final String csvName;
+
+    ItemType(String csvName) {
+        this.csvName = csvName;
+    }
+
+    public String getCsvName() {
+        return csvName;
+    }
+
+    public Item create(int uniqueId, int itemId, String title) {
+        switch (this) {
+            case BOOK:
+                return new Book(uniqueId, itemId, title);
+            case DVD:
+                return new DVD(uniqueId, itemId, title);
+            case VHS:
+                return new VHS(uniqueId, itemId, title);
+            default:
+                return new CD(uniqueId, itemId, title);
+        }
+    }
+
+    // Returns the type with the given catalogue name, or null if there is none
+    public static ItemType fromCsvName(String name) {
+        for (ItemType type : VALUES) {
+            if (type.csvName.equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    public static ItemType of(Item item) {
+        if (item instanceof Book) return BOOK;
+        if (item instanceof DVD) return DVD;
+        if (item instanceof VHS) return VHS;
+        return CD;
+    }
+}
@@ -0,0 +1,56 @@
+package main.java.simplelibrary.models;
+
+import java.time.LocalDate;
+
+// Immutable record of an item being on loan. An item swaps whole Loan instances
+// atomically, so readers always see a borrower and due date that belong together.
+// Dates are kept as epoch days so date comparisons need no LocalDate.
+public final class Loan {
+    public static final long NO_DUE_DATE = Long.MIN_VALUE;
+    // For loans whose start was never recorded, e.g. borrowed through tryBorrow without
+    // one. Kept apart from NO_DUE_DATE so neither can be mistaken for the other.
+    public static final long NOT_RECORDED = Long.MAX_VALUE;
+
+    private final User borrower;
+    private final long borrowedEpochDay;
+    private final long dueEpochDay;
+
+    public Loan(User borrower, long dueEpochDay) {
+        this(borrower, NOT_RECORDED, dueEpochDay);
+    }
+
+    public Loan(User borrower, long borrowedEpochDay, long dueEpochDay) {
+        this.borrower = borrower;
+        this.borrowedEpochDay = borrowedEpochDay;
+        this.dueEpochDay = dueEpochDay;
+    }
+
+    public Loan(User borrower, LocalDate dueDate) {
+        this(borrower, dueDate == null ? NO_DUE_DATE : dueDate.toEpochDay());
+    }
+
+    public User getBorrower() {
+        return borrower;
+    }
+
+    // The day the item was lent; a renewal keeps it
+    public boolean hasBorrowedDate() {
+        return borrowedEpochDay != NOT_RECORDED;
+    }
+
+    public long getBorrowedEpochDay() {
+        return borrowedEpochDay;
+    }
+
+    public boolean hasDueDate() {
+        return dueEpochDay != NO_DUE_DATE;
+    }
+
+    public long getDueEpochDay() {
+        return dueEpochDay;
+    }
+
+    public LocalDate getDueDate() {
+        return hasDueDate() ? LocalDate.ofEpochDay(dueEpochDay) : null;
+    }
+}
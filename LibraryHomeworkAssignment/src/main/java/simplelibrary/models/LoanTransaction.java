@@ -0,0 +1,125 @@
+package main.java.simplelibrary.models;
+
+import java.time.LocalDate;
+
+// A completed change to an item's loan, or a notice that a loan is overdue, as handed to audit sinks.
+// TRANSFERRED_OUT and TRANSFERRED_IN record a copy leaving one branch's journal and joining
+// another's; they carry the item itself so replay can re-create it.
+public final class LoanTransaction {
+    // OVERDUE is only announced to sinks, never journaled. New types go at the end,
+    // since the journal stores the ordinal.
+    public enum Type { BORROWED, RETURNED, RENEWED, OVERDUE, TRANSFERRED_OUT, TRANSFERRED_IN }
+
+    private final Type type;
+    private final int uniqueId;
+    private final User user;
+    // Loan.NOT_RECORDED unless the record carries the day the loan began
+    private final long borrowedEpochDay;
+    // Loan.NO_DUE_DATE when there is none
+    private final long dueEpochDay;
+    private final long timestampMillis;
+    // Only set on transfers
+    private final ItemType itemType;
+    private final int itemId;
+    private final String title;
+
+    public LoanTransaction(Type type, int uniqueId, User user, long dueEpochDay, long timestampMillis) {
+        this(type, uniqueId, user, Loan.NOT_RECORDED, dueEpochDay, timestampMillis);
+    }
+
+    public LoanTransaction(Type type, int uniqueId, User user, long borrowedEpochDay, long dueEpochDay, long timestampMillis) {
+        this(type, uniqueId, user, borrowedEpochDay, dueEpochDay, timestampMillis, null, 0, null);
+    }
+
+    public LoanTransaction(Type type, int uniqueId, User user, long borrowedEpochDay, long dueEpochDay, long timestampMillis,
+                           ItemType itemType, int itemId, String title) {
+        this.type = type;
+        this.uniqueId = uniqueId;
+        this.user = user;
+        this.borrowedEpochDay = borrowedEpochDay;
+        this.dueEpochDay = dueEpochDay;
+        this.timestampMillis = timestampMillis;
+        this.itemType = itemType;
+        this.itemId = itemId;
+        this.title = title;
+    }
+
+    // A change journaled for this loan, carrying the day it began
+    public static LoanTransaction of(Type type, int uniqueId, Loan loan, long timestampMillis) {
+        return new LoanTransaction(type, uniqueId, loan.getBorrower(), loan.getBorrowedEpochDay(), loan.getDueEpochDay(), timestampMillis);
+    }
+
+    // A copy moving between branches, with the loan it arrives on, or null if it is on the shelf
+    public static LoanTransaction transfer(Type type, Item item, Loan loan, long timestampMillis) {
+        return new LoanTransaction(type, item.getUniqueId(),
+                loan == null ? null : loan.getBorrower(),
+                loan == null ? Loan.NOT_RECORDED : loan.getBorrowedEpochDay(),
+                loan == null ? Loan.NO_DUE_DATE : loan.getDueEpochDay(),
+                timestampMillis, ItemType.of(item), item.getItemId(), item.getTitle());
+    }
+
+    public LoanTransaction(Type type, int uniqueId, User user, LocalDate dueDate, long timestampMillis) {
+        this(type, uniqueId, user, dueDate == null ? Loan.NO_DUE_DATE : dueDate.toEpochDay(), timestampMillis);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getUniqueId() {
+        return uniqueId;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public boolean hasBorrowedDate() {
+        return borrowedEpochDay != Loan.NOT_RECORDED;
+    }
+
+    public long getBorrowedEpochDay() {
+        return borrowedEpochDay;
+    }
+
+    public long getDueEpochDay() {
+        return dueEpochDay;
+    }
+
+    public LocalDate getDueDate() {
+        return dueEpochDay == Loan.NO_DUE_DATE ? null : LocalDate.ofEpochDay(dueEpochDay);
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public boolean isTransfer() {
+        return itemType != null;
+    }
+
+    public ItemType getItemType() {
+        return itemType;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    // A new instance of the transferred copy, on the shelf
+    public Item createItem() {
+        return itemType.create(uniqueId, itemId, title);
+    }
+
+    @Override
+    public String toString() {
+        return type + " uniqueId=" + uniqueId
+                + " user=" + (user == null ? null : user.getUsername())
+                + " dueDate=" + getDueDate()
+                + " at=" + timestampMillis;
+    }
+}
@@ -1,13 +1,45 @@
 package main.java.simplelibrary.models;
 
 public class User {
+    // Id of a user that has not been through a UserRegistry
+    public static final int UNREGISTERED = -1;
+
     private final String username;
+    private final int id;
 
     public User(String username) {
+        this(UNREGISTERED, username);
+    }
+
+    // Used by UserRegistry, which hands out ids densely from 0
+    public User(int id, String username) {
+        this.id = id;
         this.username = username;
     }
 
     public String getUsername() {
         return username;
     }
+
+    public int getId() {
+        return id;
+    }
+
+    // Users are identified by their username, so any instance can stand for a registered user
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof User)) return false;
+        return username.equals(((User) o).username);
+    }
+
+    @Override
+    public int hashCode() {
+        return username.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return username;
+    }
 }
@@ -0,0 +1,89 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.models.LoanTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Hands transactions to a background thread which passes them on in batches. The
+// request thread only does a non-blocking queue offer; if the queue is full the
+// transaction is counted as dropped rather than slowing down the checkout.
+public class AsyncAuditSink implements AuditSink, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(AsyncAuditSink.class.getName());
+    private static final int MAX_BATCH = 256;
+
+    private final BlockingQueue<LoanTransaction> queue;
+    private final Consumer<List<LoanTransaction>> batchWriter;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public AsyncAuditSink(Consumer<List<LoanTransaction>> batchWriter, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchWriter = batchWriter;
+        this.writerThread = new Thread(this::drainLoop, "library-audit-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Writes each batch to a logger, one line per transaction
+    public static AsyncAuditSink toLogger(Logger logger, int capacity) {
+        return new AsyncAuditSink(batch -> {
+            for (LoanTransaction transaction : batch) {
+                logger.info(transaction.toString());
+            }
+        }, capacity);
+    }
+
+    @Override
+    public void record(LoanTransaction transaction) {
+        if (!running || !queue.offer(transaction)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void drainLoop() {
+        List<LoanTransaction> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                LoanTransaction first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                batchWriter.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Audit batch of " + batch.size() + " transactions could not be written", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Stops accepting transactions and waits for the ones already queued to be written.
+    // If the caller is interrupted it stops waiting; the writer still drains the queue.
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
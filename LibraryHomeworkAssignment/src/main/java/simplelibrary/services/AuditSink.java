@@ -0,0 +1,15 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.models.LoanTransaction;
+
+// Receives every successful borrow, return and renewal. Called on the request thread
+// after the item's lock has been released, so implementations should not block.
+public interface AuditSink {
+    void record(LoanTransaction transaction);
+
+    // False while records would go nowhere, e.g. a bus without subscribers, so callers
+    // can hold back records they would otherwise have to send only once
+    default boolean isListening() {
+        return true;
+    }
+}
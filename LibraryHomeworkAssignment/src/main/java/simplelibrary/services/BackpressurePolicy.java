@@ -0,0 +1,11 @@
+package main.java.simplelibrary.services;
+
+// What publishing does when a subscriber's ring buffer is full
+public enum BackpressurePolicy {
+    // Discard the event and count it; the publisher never waits
+    DROP,
+    // Wait until the subscriber has made room, slowing the publisher down to its pace
+    BLOCK,
+    // Append the event to a file, delivered once the subscriber has caught up with the ring
+    SPILL
+}
@@ -0,0 +1,9 @@
+package main.java.simplelibrary.services;
+
+// How a batch of borrows or returns treats items that cannot be processed
+public enum BatchMode {
+    // Nothing in the batch is changed unless every item can be
+    ALL_OR_NOTHING,
+    // Every item that can be processed is; the rest are reported as failed
+    BEST_EFFORT
+}
@@ -0,0 +1,57 @@
+package main.java.simplelibrary.services;
+
+// Per-item outcome of borrowItems/returnItems, in the same order as the uniqueIds passed in
+public class BatchResult {
+
+    public enum Status {
+        SUCCEEDED,
+        // No item with this uniqueId exists
+        NOT_FOUND,
+        // The uniqueId already appeared earlier in the batch
+        DUPLICATE,
+        // Already on loan when borrowing, or not on loan to this user when returning
+        REJECTED,
+        // Could have succeeded, but another item made an ALL_OR_NOTHING batch fail
+        ROLLED_BACK
+    }
+
+    private final int[] uniqueIds;
+    private final Status[] statuses;
+    private final int succeededCount;
+
+    BatchResult(int[] uniqueIds, Status[] statuses) {
+        this.uniqueIds = uniqueIds.clone();
+        this.statuses = statuses;
+        int succeeded = 0;
+        for (Status status : statuses) {
+            if (status == Status.SUCCEEDED) {
+                succeeded++;
+            }
+        }
+        this.succeededCount = succeeded;
+    }
+
+    public int size() {
+        return statuses.length;
+    }
+
+    public int getUniqueId(int index) {
+        return uniqueIds[index];
+    }
+
+    public Status getStatus(int index) {
+        return statuses[index];
+    }
+
+    public boolean isSucceeded(int index) {
+        return statuses[index] == Status.SUCCEEDED;
+    }
+
+    public int getSucceededCount() {
+        return succeededCount;
+    }
+
+    public boolean isAllSucceeded() {
+        return succeededCount == statuses.length;
+    }
+}
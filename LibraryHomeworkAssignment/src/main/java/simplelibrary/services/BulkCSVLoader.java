@@ -0,0 +1,476 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Loads a UniqueID,ItemID,Type,Title catalogue from a memory-mapped file.
+//
+// One sequential pass over the bytes finds record boundaries (tracking RFC 4180 quotes,
+// so quoted titles may contain commas, quotes and newlines) and cuts the file into
+// chunks. The chunks are then tokenised and inserted in parallel. Rows that cannot be
+// loaded are reported with their line number instead of being dropped silently.
+//
+// When several rows share a UniqueID the last one in the file is kept, as if the rows
+// were added one after another; it also replaces an item already in the store. Which
+// chunk inserts first is down to scheduling, so rows that find their UniqueID taken are
+// set aside and settled by line number once every chunk is done.
+public class BulkCSVLoader {
+    private static final int FIELDS = 4;
+    // Upper bound for a single mapping while scanning, and for a chunk
+    private static final long MAX_MAPPING = 1L << 30;
+    private static final long MIN_CHUNK = 1L << 20;
+    private static final byte[][] TYPE_NAMES = new byte[ItemType.values().length][];
+
+    static {
+        for (ItemType type : ItemType.values()) {
+            TYPE_NAMES[type.ordinal()] = type.getCsvName().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    public static CSVLoadReport load(LibraryDataStore dataStore, String filePath) throws IOException {
+        return load(dataStore, Paths.get(filePath), Runtime.getRuntime().availableProcessors());
+    }
+
+    public static CSVLoadReport load(LibraryDataStore dataStore, Path path, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return load(dataStore, channel, split(channel, parallelism), parallelism);
+        }
+    }
+
+    // Loads into a new data store whose maps are sized for the number of rows in the file
+    public static LibraryDataStore loadNewStore(Path path, int parallelism, List<CSVLoadReport.RejectedRow> rejectedRows) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Split split = split(channel, parallelism);
+            LibraryDataStore dataStore = new LibraryDataStore((int) Math.min(Integer.MAX_VALUE, split.records));
+            rejectedRows.addAll(load(dataStore, channel, split, parallelism).getRejectedRows());
+            return dataStore;
+        }
+    }
+
+    private static CSVLoadReport load(LibraryDataStore dataStore, FileChannel channel, Split split, int parallelism) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, split.chunks.size())));
+        try {
+            List<Future<ChunkParser>> results = new ArrayList<>();
+            for (int i = 0; i < split.chunks.size(); i++) {
+                Chunk chunk = split.chunks.get(i);
+                boolean header = i == 0;
+                results.add(executor.submit(() -> {
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+                    return new ChunkParser(buffer, chunk.firstLine, header, dataStore).parse();
+                }));
+            }
+
+            int loaded = 0;
+            List<CSVLoadReport.RejectedRow> rejected = new ArrayList<>();
+            List<ChunkParser> parsers = new ArrayList<>(results.size());
+            for (Future<ChunkParser> result : results) {
+                ChunkParser parser = result.get();
+                parsers.add(parser);
+                loaded += parser.loaded;
+                rejected.addAll(parser.rejected);
+            }
+            loaded += keepLastDuplicates(dataStore, parsers, rejected);
+            return new CSVLoadReport(loaded, rejected);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading catalogue", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load catalogue", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Settles rows whose UniqueID was taken when they were inserted: for each such UniqueID
+    // the row on the highest line stays in the store and the others are rejected. Returns
+    // the change in the number of loaded rows.
+    private static int keepLastDuplicates(LibraryDataStore dataStore, List<ChunkParser> parsers,
+                                          List<CSVLoadReport.RejectedRow> rejected) {
+        Map<Integer, DuplicateRow> last = new HashMap<>();
+        List<DuplicateRow> duplicates = new ArrayList<>();
+        for (ChunkParser parser : parsers) {
+            for (DuplicateRow row : parser.duplicates) {
+                duplicates.add(row);
+                last.merge(row.item.getUniqueId(), row, (a, b) -> a.line > b.line ? a : b);
+            }
+        }
+        if (duplicates.isEmpty()) {
+            return 0;
+        }
+
+        // Line of the row each of those UniqueIDs was inserted from; absent if the item
+        // was in the store before the load
+        Map<Integer, Long> insertedLine = new HashMap<>();
+        for (ChunkParser parser : parsers) {
+            for (int i = 0; i < parser.insertedCount; i++) {
+                long row = parser.inserted[i];
+                int uniqueId = (int) (row >>> 32);
+                if (last.containsKey(uniqueId)) {
+                    insertedLine.put(uniqueId, parser.firstLine + (row & 0xFFFFFFFFL));
+                }
+            }
+        }
+
+        int loadedChange = 0;
+        for (DuplicateRow winner : last.values()) {
+            int uniqueId = winner.item.getUniqueId();
+            Long inserted = insertedLine.get(uniqueId);
+            if (inserted != null && inserted > winner.line) {
+                continue;
+            }
+            dataStore.addItem(winner.item);
+            if (inserted == null) {
+                loadedChange++;
+            } else {
+                rejected.add(new CSVLoadReport.RejectedRow(inserted, duplicateOf(uniqueId, winner.line)));
+            }
+        }
+        for (DuplicateRow row : duplicates) {
+            int uniqueId = row.item.getUniqueId();
+            // The inserted row is kept over every duplicate if it is the last of them
+            long winnerLine = last.get(uniqueId).line;
+            Long inserted = insertedLine.get(uniqueId);
+            long keptLine = inserted == null ? winnerLine : Math.max(inserted, winnerLine);
+            if (row.line != keptLine) {
+                rejected.add(new CSVLoadReport.RejectedRow(row.line, duplicateOf(uniqueId, keptLine)));
+            }
+        }
+        rejected.sort(Comparator.comparingLong(CSVLoadReport.RejectedRow::getLineNumber));
+        return loadedChange;
+    }
+
+    private static String duplicateOf(int uniqueId, long keptLine) {
+        return "duplicate UniqueID " + uniqueId + ", line " + keptLine + " is kept";
+    }
+
+    private static Split split(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long target = Math.min(MAX_MAPPING / 2, Math.max(MIN_CHUNK, size / (Math.max(1, parallelism) * 4L) + 1));
+
+        Split split = new Split();
+        long chunkStart = 0;
+        long chunkLine = 1;
+        long line = 1;
+        boolean inQuotes = false;
+        for (long base = 0; base < size; base += MAX_MAPPING) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(MAX_MAPPING, size - base));
+            for (int i = 0, n = buffer.limit(); i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    // A doubled quote toggles twice, so it leaves the state unchanged
+                    inQuotes = !inQuotes;
+                } else if (b == '\n') {
+                    line++;
+                    if (!inQuotes) {
+                        split.records++;
+                    }
+                    long end = base + i + 1;
+                    // A stray quote in an unquoted field can leave inQuotes stuck; never let a
+                    // chunk outgrow a single mapping because of it
+                    if ((!inQuotes && end - chunkStart >= target) || end - chunkStart >= MAX_MAPPING) {
+                        split.chunks.add(new Chunk(chunkStart, end, chunkLine));
+                        chunkStart = end;
+                        chunkLine = line;
+                    }
+                }
+            }
+        }
+        if (chunkStart < size) {
+            split.chunks.add(new Chunk(chunkStart, size, chunkLine));
+            split.records++;
+        }
+        return split;
+    }
+
+    private static final class Split {
+        private final List<Chunk> chunks = new ArrayList<>();
+        private long records;
+    }
+
+    private static final class Chunk {
+        private final long start;
+        private final long end;
+        private final long firstLine;
+
+        Chunk(long start, long end, long firstLine) {
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+    }
+
+    // A row whose UniqueID was already in the store when its chunk reached it
+    private static final class DuplicateRow {
+        private final Item item;
+        private final long line;
+
+        DuplicateRow(Item item, long line) {
+            this.item = item;
+            this.line = line;
+        }
+    }
+
+    // Tokenises one chunk without allocating per field; only the title becomes a String
+    private static final class ChunkParser {
+        private static final int RECORD_OK = 0;
+        private static final int RECORD_BLANK = 1;
+        private static final int RECORD_MALFORMED = 2;
+
+        private final ByteBuffer buffer;
+        private final int limit;
+        private final boolean skipHeader;
+        private final LibraryDataStore dataStore;
+        private final long firstLine;
+        private final List<CSVLoadReport.RejectedRow> rejected = new ArrayList<>();
+        private final List<DuplicateRow> duplicates = new ArrayList<>();
+        private int loaded;
+        // Each inserted row as its UniqueID in the high half and its line, relative to
+        // firstLine, in the low half; read only when duplicates have to be settled
+        private long[] inserted = new long[1024];
+        private int insertedCount;
+        private String error;
+
+        private final int[] fieldStart = new int[FIELDS];
+        private final int[] fieldEnd = new int[FIELDS];
+        private final boolean[] fieldEscaped = new boolean[FIELDS];
+        private byte[] scratch = new byte[256];
+
+        private int pos;
+        private long line;
+
+        ChunkParser(ByteBuffer buffer, long firstLine, boolean skipHeader, LibraryDataStore dataStore) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+            this.line = firstLine;
+            this.firstLine = firstLine;
+            this.skipHeader = skipHeader;
+            this.dataStore = dataStore;
+        }
+
+        ChunkParser parse() {
+            boolean first = true;
+            while (pos < limit) {
+                long recordLine = line;
+                int state = readRecord();
+                if (first && skipHeader) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                if (state == RECORD_MALFORMED) {
+                    reject(recordLine, error);
+                } else if (state == RECORD_OK) {
+                    addItem(recordLine);
+                }
+            }
+            return this;
+        }
+
+        // Reads the next record and leaves pos at the start of the following one.
+        // On RECORD_MALFORMED the reason is left in error.
+        private int readRecord() {
+            int fields = 0;
+            while (true) {
+                int start;
+                int end;
+                boolean escaped = false;
+                if (pos < limit && buffer.get(pos) == '"') {
+                    pos++;
+                    start = pos;
+                    while (true) {
+                        if (pos >= limit) {
+                            return malformed("unterminated quoted field");
+                        }
+                        byte b = buffer.get(pos);
+                        if (b == '"') {
+                            if (pos + 1 < limit && buffer.get(pos + 1) == '"') {
+                                escaped = true;
+                                pos += 2;
+                                continue;
+                            }
+                            end = pos++;
+                            break;
+                        }
+                        if (b == '\n') {
+                            line++;
+                        }
+                        pos++;
+                    }
+                    if (pos < limit && buffer.get(pos) != ',' && buffer.get(pos) != '\n' && buffer.get(pos) != '\r') {
+                        skipToNextRecord();
+                        return malformed("unexpected character after closing quote");
+                    }
+                } else {
+                    start = pos;
+                    while (pos < limit) {
+                        byte b = buffer.get(pos);
+                        if (b == ',' || b == '\n') {
+                            break;
+                        }
+                        pos++;
+                    }
+                    end = pos;
+                    if (end > start && buffer.get(end - 1) == '\r') {
+                        end--;
+                    }
+                }
+
+                if (fields < FIELDS) {
+                    fieldStart[fields] = start;
+                    fieldEnd[fields] = end;
+                    fieldEscaped[fields] = escaped;
+                }
+                fields++;
+
+                if (pos < limit && buffer.get(pos) == ',') {
+                    pos++;
+                    continue;
+                }
+                if (pos < limit && buffer.get(pos) == '\r') {
+                    pos++;
+                }
+                if (pos < limit && buffer.get(pos) == '\n') {
+                    pos++;
+                    line++;
+                }
+                break;
+            }
+
+            if (fields == 1 && fieldStart[0] == fieldEnd[0]) {
+                return RECORD_BLANK;
+            }
+            if (fields != FIELDS) {
+                return malformed("expected " + FIELDS + " fields but found " + fields);
+            }
+            return RECORD_OK;
+        }
+
+        private int malformed(String reason) {
+            error = reason;
+            return RECORD_MALFORMED;
+        }
+
+        private void skipToNextRecord() {
+            while (pos < limit) {
+                if (buffer.get(pos++) == '\n') {
+                    line++;
+                    return;
+                }
+            }
+        }
+
+        private void addItem(long recordLine) {
+            long uniqueId = parseInt(0);
+            if (uniqueId < 0) {
+                reject(recordLine, "invalid UniqueID");
+                return;
+            }
+            long itemId = parseInt(1);
+            if (itemId < 0) {
+                reject(recordLine, "invalid ItemID");
+                return;
+            }
+            ItemType type = parseType();
+            if (type == null) {
+                reject(recordLine, "unknown item type '" + decode(2) + "'");
+                return;
+            }
+
+            Item item = type.create((int) uniqueId, (int) itemId, decode(3));
+            if (!dataStore.addItemIfAbsent(item)) {
+                duplicates.add(new DuplicateRow(item, recordLine));
+                return;
+            }
+            if (insertedCount == inserted.length) {
+                inserted = Arrays.copyOf(inserted, insertedCount * 2);
+            }
+            inserted[insertedCount++] = uniqueId << 32 | (recordLine - firstLine);
+            loaded++;
+        }
+
+        // Parses a non-negative int field, returning -1 if it is empty, not numeric or too large
+        private long parseInt(int field) {
+            int start = fieldStart[field];
+            int end = fieldEnd[field];
+            if (start == end || end - start > 10) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value > Integer.MAX_VALUE ? -1 : value;
+        }
+
+        private ItemType parseType() {
+            int start = fieldStart[2];
+            int length = fieldEnd[2] - start;
+            for (ItemType type : ItemType.values()) {
+                byte[] name = TYPE_NAMES[type.ordinal()];
+                if (name.length != length) {
+                    continue;
+                }
+                int i = 0;
+                while (i < length && buffer.get(start + i) == name[i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        private String decode(int field) {
+            int start = fieldStart[field];
+            int length = fieldEnd[field] - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            if (fieldEscaped[field]) {
+                // Collapse each doubled quote to one
+                int out = 0;
+                for (int i = 0; i < length; i++) {
+                    scratch[out++] = scratch[i];
+                    if (scratch[i] == '"') {
+                        i++;
+                    }
+                }
+                length = out;
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void reject(long recordLine, String reason) {
+            rejected.add(new CSVLoadReport.RejectedRow(recordLine, reason));
+        }
+    }
+}
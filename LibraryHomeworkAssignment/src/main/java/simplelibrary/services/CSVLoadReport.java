@@ -0,0 +1,48 @@
+package main.java.simplelibrary.services;
+
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a catalogue load: how many items were added and which rows were skipped
+public class CSVLoadReport {
+    private final int loadedCount;
+    private final List<RejectedRow> rejectedRows;
+
+    public CSVLoadReport(int loadedCount, List<RejectedRow> rejectedRows) {
+        this.loadedCount = loadedCount;
+        this.rejectedRows = Collections.unmodifiableList(rejectedRows);
+    }
+
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    // Rejected rows in file order
+    public List<RejectedRow> getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public static class RejectedRow {
+        private final long lineNumber;
+        private final String reason;
+
+        public RejectedRow(long lineNumber, String reason) {
+            this.lineNumber = lineNumber;
+            this.reason = reason;
+        }
+
+        // 1-based line of the file on which the row starts
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNumber + ": " + reason;
+        }
+    }
+}
@@ -1,45 +1,25 @@
 package main.java.simplelibrary.services;
 
 import main.java.simplelibrary.data.LibraryDataStore;
-import main.java.simplelibrary.models.Book;
-import main.java.simplelibrary.models.DVD;
-import main.java.simplelibrary.models.VHS;
-import main.java.simplelibrary.models.CD;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
 
 public class CSVUtility {
-    public static void loadItemsFromCSV(LibraryDataStore dataStore, String filePath) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            // Skip the header line
-            reader.readLine();
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                int uniqueId = Integer.parseInt(data[0]);
-                int itemId = Integer.parseInt(data[1]);
-                String type = data[2];
-                String title = data[3];
+    private static final Logger LOGGER = Logger.getLogger(CSVUtility.class.getName());
+    private static final int MAX_LOGGED_REJECTIONS = 100;
 
-                switch (type) {
-                    case "Book":
-                        dataStore.addItem(new Book(uniqueId, itemId, title));
-                        break;
-                    case "DVD":
-                        dataStore.addItem(new DVD(uniqueId, itemId, title));
-                        break;
-                    case "VHS":
-                        dataStore.addItem(new VHS(uniqueId, itemId, title));
-                        break;
-                    case "CD":
-                        dataStore.addItem(new CD(uniqueId, itemId, title));
-                        break;
-                }
+    public static void loadItemsFromCSV(LibraryDataStore dataStore, String filePath) throws IOException {
+        CSVLoadReport report = BulkCSVLoader.load(dataStore, filePath);
 
-            }
+        // Report rows that could not be loaded rather than dropping them silently
+        List<CSVLoadReport.RejectedRow> rejected = report.getRejectedRows();
+        for (int i = 0; i < Math.min(rejected.size(), MAX_LOGGED_REJECTIONS); i++) {
+            LOGGER.warning("Skipped row in " + filePath + " at " + rejected.get(i));
+        }
+        if (rejected.size() > MAX_LOGGED_REJECTIONS) {
+            LOGGER.warning((rejected.size() - MAX_LOGGED_REJECTIONS) + " more rows skipped in " + filePath);
         }
     }
 
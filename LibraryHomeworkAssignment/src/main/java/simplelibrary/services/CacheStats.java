@@ -0,0 +1,58 @@
+package main.java.simplelibrary.services;
+
+// Counts for one of CachingLibraryService's caches since it was created
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final long size;
+    private final long maximumSize;
+
+    CacheStats(long hits, long misses, long evictions, long invalidations, long size, long maximumSize) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.size = size;
+        this.maximumSize = maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return misses;
+    }
+
+    // Share of lookups answered from the cache, or 0 before the first lookup
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    // Entries dropped to make room
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    // Entries dropped because a loan changed the answer
+    public long getInvalidationCount() {
+        return invalidations;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hit rate %.1f%% (%d hits, %d misses), %d evictions, %d invalidations, %d/%d entries",
+                getHitRate() * 100, hits, misses, evictions, invalidations, size, maximumSize);
+    }
+}
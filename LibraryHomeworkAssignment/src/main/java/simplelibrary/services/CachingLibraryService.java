@@ -0,0 +1,139 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.LoanTransaction;
+import main.java.simplelibrary.models.User;
+
+import java.lang.invoke.VarHandle;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+// Read-through cache in front of a LibraryService for the questions a web front end asks
+// over and over: whether the items on a page are on the shelf, and what the logged-in
+// patron has borrowed. Both caches are bounded and evict with W-TinyLFU (see
+// TinyLfuCache), so the popular items and active patrons stay cached.
+//
+// Entries are dropped when the service's audit stream reports a borrow or return of
+// that item or by that patron, whoever made it, so once a loan call has returned no
+// cached answer predates it. Transfers to another branch are not on the audit stream;
+// make them through transferItem here so the copy's entry is dropped too.
+//
+// A lookup that misses notes the key's stamp before asking the service and checks it
+// again after caching the answer. A loan change bumps the stamp before dropping the
+// entry, so an answer computed before the change cannot outlive it in the cache.
+public class CachingLibraryService implements AutoCloseable {
+    private static final int STAMPS = 1024;
+
+    private final LibraryService service;
+    private final TinyLfuCache<Integer, Boolean> availability;
+    private final TinyLfuCache<User, List<Item>> borrowedItems;
+    private final AtomicLongArray availabilityStamps = new AtomicLongArray(STAMPS);
+    private final AtomicLongArray borrowerStamps = new AtomicLongArray(STAMPS);
+    private final AuditSink invalidator = this::invalidate;
+
+    // maximumSize bounds each cache separately
+    public CachingLibraryService(LibraryService service, int maximumSize) {
+        this.service = service;
+        this.availability = new TinyLfuCache<>(maximumSize);
+        this.borrowedItems = new TinyLfuCache<>(maximumSize);
+        service.addAuditSink(invalidator);
+    }
+
+    public LibraryService getService() {
+        return service;
+    }
+
+    // Unknown uniqueIds are answered false and not cached, since the item may be added later
+    public boolean isAvailable(int uniqueId) {
+        Boolean cached = availability.getIfPresent(uniqueId);
+        if (cached != null) {
+            return cached;
+        }
+        Boolean available = readThrough(availability, availabilityStamps, uniqueId, id -> {
+            boolean onShelf = service.isAvailable(id);
+            return onShelf || service.getItems().containsKey(id) ? onShelf : null;
+        });
+        return available != null && available;
+    }
+
+    // The returned list is shared with other callers, so it cannot be modified
+    public List<Item> getBorrowedItems(User user) {
+        List<Item> cached = borrowedItems.getIfPresent(user);
+        if (cached != null) {
+            return cached;
+        }
+        return readThrough(borrowedItems, borrowerStamps, user,
+                borrower -> Collections.unmodifiableList(service.getBorrowedItems(borrower)));
+    }
+
+    public boolean borrowItem(int uniqueId, User user) {
+        return service.borrowItem(uniqueId, user);
+    }
+
+    public boolean returnItem(int uniqueId, User user) {
+        return service.returnItem(uniqueId, user);
+    }
+
+    public boolean transferItem(int uniqueId, LibraryService destination, User borrower) {
+        boolean transferred = service.transferItem(uniqueId, destination, borrower);
+        if (transferred) {
+            invalidate(availability, availabilityStamps, uniqueId);
+        }
+        return transferred;
+    }
+
+    public CacheStats getAvailabilityStats() {
+        return availability.stats();
+    }
+
+    public CacheStats getBorrowedItemsStats() {
+        return borrowedItems.stats();
+    }
+
+    // Stops following the service's loans; the caches are not used afterwards
+    @Override
+    public void close() {
+        service.removeAuditSink(invalidator);
+    }
+
+    private void invalidate(LoanTransaction transaction) {
+        LoanTransaction.Type type = transaction.getType();
+        if (type != LoanTransaction.Type.BORROWED && type != LoanTransaction.Type.RETURNED) {
+            return;
+        }
+        invalidate(availability, availabilityStamps, transaction.getUniqueId());
+        if (transaction.getUser() != null) {
+            invalidate(borrowedItems, borrowerStamps, transaction.getUser());
+        }
+    }
+
+    private static <K> void invalidate(TinyLfuCache<K, ?> cache, AtomicLongArray stamps, K key) {
+        stamps.incrementAndGet(stampOf(key));
+        // Pairs with the fence in readThrough: either this sees the entry it cached, or
+        // readThrough sees the new stamp
+        VarHandle.fullFence();
+        cache.invalidate(key, null);
+    }
+
+    // Caches the loader's answer unless it is null
+    private static <K, V> V readThrough(TinyLfuCache<K, V> cache, AtomicLongArray stamps, K key, Function<K, V> loader) {
+        int stamp = stampOf(key);
+        long before = stamps.get(stamp);
+        V value = loader.apply(key);
+        if (value != null && stamps.get(stamp) == before) {
+            cache.put(key, value);
+            VarHandle.fullFence();
+            if (stamps.get(stamp) != before) {
+                cache.invalidate(key, value);
+            }
+        }
+        return value;
+    }
+
+    private static int stampOf(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STAMPS - 1);
+    }
+}
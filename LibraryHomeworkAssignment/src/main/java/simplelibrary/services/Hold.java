@@ -0,0 +1,116 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A patron's place in the queue for any copy of an itemId. The future completes with the
+// copy once it has been lent to them, or exceptionally with a TimeoutException if the
+// hold expires first. Cancelling the future does not give up the place; use cancel().
+public final class Hold {
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    public enum Status {
+        WAITING,
+        FULFILLED,
+        CANCELLED,
+        EXPIRED
+    }
+
+    private static final int WAITING = 0;
+    // Taken off the queue by a return that is lending it a copy
+    private static final int CLAIMED = 1;
+    private static final int FULFILLED = 2;
+    private static final int CANCELLED = 3;
+    private static final int EXPIRED = 4;
+
+    private final int itemId;
+    private final User user;
+    private final long expiresAtMillis;
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+    private final CompletableFuture<Item> result = new CompletableFuture<>();
+    // Handed to the caller, so completing or cancelling it cannot touch the hold itself
+    private final CompletableFuture<Item> future = result.copy();
+
+    Hold(int itemId, User user, long expiresAtMillis) {
+        this.itemId = itemId;
+        this.user = user;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public CompletableFuture<Item> getFuture() {
+        return future;
+    }
+
+    public Status getStatus() {
+        switch (state.get()) {
+            case FULFILLED:
+                return Status.FULFILLED;
+            case CANCELLED:
+                return Status.CANCELLED;
+            case EXPIRED:
+                return Status.EXPIRED;
+            default:
+                // A claimed hold is still waiting until its loan is in place
+                return Status.WAITING;
+        }
+    }
+
+    // Gives up the place in the queue. Returns false if a copy is already being lent to
+    // the patron, or the hold has ended.
+    public boolean cancel() {
+        if (state.compareAndSet(WAITING, CANCELLED)) {
+            future.cancel(false);
+            result.cancel(false);
+            return true;
+        }
+        return false;
+    }
+
+    boolean isWaiting() {
+        return state.get() == WAITING;
+    }
+
+    boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+
+    // Reserves the hold for a copy about to be lent; only one return can claim it
+    boolean claim() {
+        return state.compareAndSet(WAITING, CLAIMED);
+    }
+
+    boolean expire() {
+        if (state.compareAndSet(WAITING, EXPIRED)) {
+            result.completeExceptionally(new TimeoutException("Hold on itemId " + itemId + " for " + user.getUsername() + " expired"));
+            return true;
+        }
+        return false;
+    }
+
+    void fulfil(Item item) {
+        state.set(FULFILLED);
+        result.complete(item);
+    }
+
+    // The loan for a claimed hold could not be made, e.g. the journal failed
+    void fail(Throwable cause) {
+        state.set(CANCELLED);
+        result.completeExceptionally(cause);
+    }
+}
@@ -0,0 +1,80 @@
+package main.java.simplelibrary.services;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// First-come-first-served hold queues, one per itemId. Queues are lock-free; a queue is
+// only created or dropped inside ConcurrentHashMap.compute, so a hold is never added to
+// a queue that is being discarded.
+final class HoldQueues {
+    private final ConcurrentHashMap<Integer, Queue<Hold>> queues = new ConcurrentHashMap<>();
+
+    void add(Hold hold) {
+        queues.compute(hold.getItemId(), (itemId, queue) -> {
+            Queue<Hold> holds = queue == null ? new ConcurrentLinkedQueue<>() : queue;
+            holds.add(hold);
+            return holds;
+        });
+    }
+
+    boolean hasHolds(int itemId) {
+        Queue<Hold> queue = queues.get(itemId);
+        return queue != null && !queue.isEmpty();
+    }
+
+    // Takes the longest-waiting live hold off the queue and claims it, expiring any that
+    // have run out on the way. Returns null if no one is waiting.
+    Hold claimNext(int itemId, long nowMillis) {
+        Queue<Hold> queue = queues.get(itemId);
+        if (queue == null) {
+            return null;
+        }
+        Hold hold;
+        while ((hold = queue.poll()) != null) {
+            if (hold.isExpired(nowMillis)) {
+                hold.expire();
+            } else if (hold.claim()) {
+                return hold;
+            }
+        }
+        return null;
+    }
+
+    int waiting(int itemId) {
+        Queue<Hold> queue = queues.get(itemId);
+        int waiting = 0;
+        if (queue != null) {
+            for (Hold hold : queue) {
+                if (hold.isWaiting()) {
+                    waiting++;
+                }
+            }
+        }
+        return waiting;
+    }
+
+    // Expires holds that have run out, drops cancelled ones and discards empty queues.
+    // Returns the number expired.
+    int expire(long nowMillis) {
+        int expired = 0;
+        for (Integer itemId : queues.keySet()) {
+            Queue<Hold> queue = queues.get(itemId);
+            if (queue == null) {
+                continue;
+            }
+            for (Iterator<Hold> holds = queue.iterator(); holds.hasNext(); ) {
+                Hold hold = holds.next();
+                if (hold.isExpired(nowMillis) && hold.expire()) {
+                    expired++;
+                }
+                if (!hold.isWaiting()) {
+                    holds.remove();
+                }
+            }
+            queues.computeIfPresent(itemId, (id, holds) -> holds.isEmpty() ? null : holds);
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,156 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.data.LoanSnapshot;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.Loan;
+import main.java.simplelibrary.models.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Management reports over a LoanSnapshot, from LibraryService.getAnalytics(). Every
+// report is one parallel pass over the loans in the snapshot on the ForkJoinPool. For
+// totals, each task folds its run of loans into its own accumulator and the accumulators
+// are merged pairwise, so tasks share nothing while they run. Overdue means due before
+// the day the snapshot was taken.
+public final class LibraryAnalytics {
+    private static final ItemType[] TYPES = ItemType.values();
+
+    private final LoanSnapshot snapshot;
+    private final long asOfEpochDay;
+    private final ForkJoinPool pool;
+
+    public LibraryAnalytics(LoanSnapshot snapshot, long asOfEpochDay, ForkJoinPool pool) {
+        this.snapshot = snapshot;
+        this.asOfEpochDay = asOfEpochDay;
+        this.pool = pool;
+    }
+
+    // Called for every copy on loan in a task's run
+    public interface Visitor<A> {
+        void visit(A accumulator, Item item, Loan loan);
+    }
+
+    public LoanSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public LocalDate getAsOf() {
+        return LocalDate.ofEpochDay(asOfEpochDay);
+    }
+
+    public long getCopyCount() {
+        return snapshot.getCopyCount();
+    }
+
+    public int getLoanCount() {
+        return snapshot.size();
+    }
+
+    // Runs a custom report: combine folds its second accumulator into the first
+    public <A> A aggregate(Supplier<A> newAccumulator, Visitor<? super A> visitor, BiConsumer<A, A> combine) {
+        return pool.submit(() -> snapshot.indexes().collect(newAccumulator,
+                (accumulator, i) -> visitor.visit(accumulator, snapshot.getItem(i), snapshot.getLoan(i)),
+                combine)).join();
+    }
+
+    // Copies on loan per type, every type included
+    public Map<ItemType, Long> getLoansByType() {
+        long[] counts = aggregate(() -> new long[TYPES.length],
+                (tally, item, loan) -> tally[ItemType.of(item).ordinal()]++, (left, right) -> {
+            for (int t = 0; t < left.length; t++) {
+                left[t] += right[t];
+            }
+        });
+        Map<ItemType, Long> byType = new EnumMap<>(ItemType.class);
+        for (ItemType type : TYPES) {
+            byType.put(type, counts[type.ordinal()]);
+        }
+        return byType;
+    }
+
+    // Copies in the catalogue per type, on the shelf or on loan
+    public Map<ItemType, Long> getCopiesByType() {
+        Map<ItemType, Long> byType = new EnumMap<>(ItemType.class);
+        for (ItemType type : TYPES) {
+            byType.put(type, snapshot.getCopyCount(type));
+        }
+        return byType;
+    }
+
+    // Titles with the most copies on loan, most first and then by title
+    public Map<String, Long> getTitlesMostOnLoan(int limit) {
+        return top(countBy((item, loan) -> item.getTitle()), limit, Function.identity());
+    }
+
+    // Borrowers with the most overdue copies, most first and then by username
+    public Map<String, Long> getTopOverdueBorrowers(int limit) {
+        return top(countBy((item, loan) -> !loan.hasDueDate() || loan.getDueEpochDay() >= asOfEpochDay
+                ? null : loan.getBorrower()), limit, User::getUsername);
+    }
+
+    // Average days the copies on loan have been out, renewals included. Loans that do not
+    // record when they began, e.g. restored from a version 2 snapshot file, are left out;
+    // NaN if no loan does.
+    public double getAverageOpenLoanAgeDays() {
+        long[] tally = aggregate(() -> new long[2], (sum, item, loan) -> {
+            if (loan.hasBorrowedDate()) {
+                sum[0] += asOfEpochDay - loan.getBorrowedEpochDay();
+                sum[1]++;
+            }
+        }, (left, right) -> {
+            left[0] += right[0];
+            left[1] += right[1];
+        });
+        return tally[1] == 0 ? Double.NaN : (double) tally[0] / tally[1];
+    }
+
+    // Counts copies per key, leaving out those the key function maps to null. All tasks
+    // count into one map: most keys are seen only a few times, so per-task maps would
+    // cost more to merge than they save.
+    private <K> Map<K, Long> countBy(BiFunction<Item, Loan, K> keyOf) {
+        ConcurrentHashMap<K, Long> counts = new ConcurrentHashMap<>(Math.max(16, snapshot.size()));
+        pool.submit(() -> snapshot.indexes().forEach(i -> {
+            K key = keyOf.apply(snapshot.getItem(i), snapshot.getLoan(i));
+            if (key != null) {
+                counts.merge(key, 1L, Long::sum);
+            }
+        })).join();
+        return counts;
+    }
+
+    // The limit largest counts, picked with a heap rather than by sorting every key
+    private static <K> Map<String, Long> top(Map<K, Long> counts, int limit, Function<K, String> nameOf) {
+        Comparator<Map.Entry<K, Long>> order = Comparator.<Map.Entry<K, Long>>comparingLong(Map.Entry::getValue).reversed()
+                .thenComparing(entry -> nameOf.apply(entry.getKey()));
+        PriorityQueue<Map.Entry<K, Long>> largest = new PriorityQueue<>(order.reversed());
+        for (Map.Entry<K, Long> entry : counts.entrySet()) {
+            if (largest.size() < limit) {
+                largest.add(entry);
+            } else if (limit > 0 && order.compare(entry, largest.peek()) < 0) {
+                largest.poll();
+                largest.add(entry);
+            }
+        }
+        List<Map.Entry<K, Long>> entries = new ArrayList<>(largest);
+        entries.sort(order);
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (Map.Entry<K, Long> entry : entries) {
+            top.put(nameOf.apply(entry.getKey()), entry.getValue());
+        }
+        return top;
+    }
+}
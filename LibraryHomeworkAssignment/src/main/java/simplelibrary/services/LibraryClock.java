@@ -0,0 +1,59 @@
+package main.java.simplelibrary.services;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Today's date for loan rules. The date is only worked out again when the underlying
+// Clock crosses midnight in its zone; in between, reading it costs one millis() call
+// and allocates nothing. Pass a custom Clock to control time in tests.
+public class LibraryClock {
+    private final Clock clock;
+    private volatile Day today;
+
+    public LibraryClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public static LibraryClock system() {
+        return new LibraryClock(Clock.systemDefaultZone());
+    }
+
+    public long millis() {
+        return clock.millis();
+    }
+
+    public LocalDate today() {
+        return currentDay().date;
+    }
+
+    public long todayEpochDay() {
+        return currentDay().epochDay;
+    }
+
+    private Day currentDay() {
+        long now = clock.millis();
+        Day day = today;
+        // Also recomputed if the clock moved backwards
+        if (day == null || now < day.startMillis || now >= day.endMillis) {
+            LocalDate date = LocalDate.ofInstant(clock.instant(), clock.getZone());
+            day = new Day(date, clock.getZone());
+            today = day;
+        }
+        return day;
+    }
+
+    private static final class Day {
+        private final LocalDate date;
+        private final long epochDay;
+        private final long startMillis;
+        private final long endMillis;
+
+        private Day(LocalDate date, ZoneId zone) {
+            this.date = date;
+            this.epochDay = date.toEpochDay();
+            this.startMillis = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            this.endMillis = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+    }
+}
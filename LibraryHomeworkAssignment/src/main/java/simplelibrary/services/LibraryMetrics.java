@@ -0,0 +1,236 @@
+package main.java.simplelibrary.services;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms for LibraryService operations, plus the time spent
+// waiting for contended item locks. Everything is recorded with LongAdders, so threads
+// do not contend on the metrics themselves. Every call is counted, but only one call in
+// LATENCY_SAMPLE_RATE reads the clock and lands in the latency histogram, which keeps
+// the percentiles while taking the clock reads off most calls. A disabled instance
+// records nothing and skips the clock reads.
+public class LibraryMetrics {
+
+    public enum Operation {
+        BORROW,
+        BORROW_ANY_COPY,
+        RETURN,
+        RENEW,
+        BATCH_BORROW,
+        BATCH_RETURN,
+        PLACE_HOLD,
+        IS_AVAILABLE,
+        BATCH_IS_AVAILABLE,
+        GET_BORROWED_ITEMS,
+        GET_OVERDUE_ITEMS,
+        GET_CURRENT_INVENTORY,
+        GET_INVENTORY,
+        SEARCH_TITLES,
+        ANALYTICS
+    }
+
+    private static final int LATENCY_SAMPLE_RATE = 8;
+    // Start time of a call that is counted but not timed
+    private static final long UNTIMED = Long.MIN_VALUE;
+
+    private final boolean enabled;
+    private final OperationMetrics[] operations = new OperationMetrics[Operation.values().length];
+    private final LongAdder contendedLocks = new LongAdder();
+    private final LatencyHistogram lockWaits = new LatencyHistogram();
+
+    public LibraryMetrics() {
+        this(true);
+    }
+
+    private LibraryMetrics(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (int i = 0; i < operations.length; i++) {
+                operations[i] = new OperationMetrics();
+            }
+        }
+    }
+
+    public static LibraryMetrics disabled() {
+        return new LibraryMetrics(false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Start time to pass to record(), or UNTIMED when this call is not sampled
+    long start() {
+        if (!enabled || ThreadLocalRandom.current().nextInt(LATENCY_SAMPLE_RATE) != 0) {
+            return UNTIMED;
+        }
+        return System.nanoTime();
+    }
+
+    void record(Operation operation, long start, boolean succeeded) {
+        if (!enabled) {
+            return;
+        }
+        OperationMetrics metrics = operations[operation.ordinal()];
+        if (start != UNTIMED) {
+            metrics.latency.record(System.nanoTime() - start);
+        }
+        (succeeded ? metrics.successes : metrics.failures).increment();
+    }
+
+    void recordLockWait(long nanos) {
+        if (enabled) {
+            contendedLocks.increment();
+            lockWaits.record(nanos);
+        }
+    }
+
+    public long getCalls(Operation operation) {
+        OperationMetrics metrics = operations[operation.ordinal()];
+        return metrics == null ? 0 : metrics.successes.sum() + metrics.failures.sum();
+    }
+
+    public long getSuccesses(Operation operation) {
+        OperationMetrics metrics = operations[operation.ordinal()];
+        return metrics == null ? 0 : metrics.successes.sum();
+    }
+
+    // Calls that returned false, null or an empty result, e.g. borrowing a missing uniqueId
+    public long getFailures(Operation operation) {
+        OperationMetrics metrics = operations[operation.ordinal()];
+        return metrics == null ? 0 : metrics.failures.sum();
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        OperationMetrics metrics = operations[operation.ordinal()];
+        return metrics == null ? new LatencyHistogram() : metrics.latency;
+    }
+
+    // Lock acquisitions that had to wait, and how long they waited
+    public long getContendedLockCount() {
+        return contendedLocks.sum();
+    }
+
+    public LatencyHistogram getLockWaits() {
+        return lockWaits;
+    }
+
+    private static final class OperationMetrics {
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    // Point-in-time copy of the metrics and gauges, for pull-style collection
+    public static final class Snapshot {
+        private final long timestampMillis;
+        private final Map<Operation, OperationSnapshot> operations;
+        private final long contendedLocks;
+        private final long lockWaitP99Nanos;
+        private final long itemsOnShelf;
+        private final long activeLoans;
+        private final long overdueLoans;
+
+        Snapshot(LibraryMetrics metrics, long timestampMillis, long itemsOnShelf, long activeLoans, long overdueLoans) {
+            this.timestampMillis = timestampMillis;
+            Map<Operation, OperationSnapshot> copy = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values()) {
+                copy.put(operation, new OperationSnapshot(metrics, operation));
+            }
+            this.operations = Collections.unmodifiableMap(copy);
+            this.contendedLocks = metrics.getContendedLockCount();
+            this.lockWaitP99Nanos = metrics.lockWaits.getPercentileNanos(99);
+            this.itemsOnShelf = itemsOnShelf;
+            this.activeLoans = activeLoans;
+            this.overdueLoans = overdueLoans;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public OperationSnapshot get(Operation operation) {
+            return operations.get(operation);
+        }
+
+        public Map<Operation, OperationSnapshot> getOperations() {
+            return operations;
+        }
+
+        public long getContendedLocks() {
+            return contendedLocks;
+        }
+
+        public long getLockWaitP99Nanos() {
+            return lockWaitP99Nanos;
+        }
+
+        public long getItemsOnShelf() {
+            return itemsOnShelf;
+        }
+
+        public long getActiveLoans() {
+            return activeLoans;
+        }
+
+        public long getOverdueLoans() {
+            return overdueLoans;
+        }
+    }
+
+    public static final class OperationSnapshot {
+        private final long successes;
+        private final long failures;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        private OperationSnapshot(LibraryMetrics metrics, Operation operation) {
+            LatencyHistogram latency = metrics.getLatency(operation);
+            this.successes = metrics.getSuccesses(operation);
+            this.failures = metrics.getFailures(operation);
+            this.meanNanos = latency.getMeanNanos();
+            this.p50Nanos = latency.getPercentileNanos(50);
+            this.p99Nanos = latency.getPercentileNanos(99);
+            this.p999Nanos = latency.getPercentileNanos(99.9);
+            this.maxNanos = latency.getMaxNanos();
+        }
+
+        public long getCalls() {
+            return successes + failures;
+        }
+
+        public long getSuccesses() {
+            return successes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos() {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
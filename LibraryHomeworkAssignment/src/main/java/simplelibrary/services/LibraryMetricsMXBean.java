@@ -0,0 +1,22 @@
+package main.java.simplelibrary.services;
+
+import java.util.Map;
+
+// JMX view of a LibraryService's metrics; maps are keyed by LibraryMetrics.Operation name
+public interface LibraryMetricsMXBean {
+    long getItemsOnShelf();
+
+    long getActiveLoans();
+
+    long getOverdueLoans();
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    long getContendedLocks();
+
+    long getLockWaitP99Nanos();
+}
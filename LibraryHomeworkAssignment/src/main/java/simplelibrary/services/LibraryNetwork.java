@@ -0,0 +1,202 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+// Several library branches served from one process. Each branch is a LibraryService with
+// its own data store, locks and indexes, so loans at different branches never contend.
+// Single-item operations are routed to the branch holding the uniqueId; catalogue-wide
+// queries are run on every branch in parallel on a ForkJoinPool and the results merged.
+public class LibraryNetwork {
+    private final ForkJoinPool pool;
+    private final ConcurrentMap<String, LibraryService> branches = new ConcurrentHashMap<>();
+    private final List<String> branchNames = new CopyOnWriteArrayList<>();
+    // Last known branch of each uniqueId; checked on use and refreshed when stale
+    private final ConcurrentMap<Integer, LibraryService> routes = new ConcurrentHashMap<>();
+
+    public LibraryNetwork() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public LibraryNetwork(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void addBranch(String name, LibraryService service) {
+        if (branches.putIfAbsent(name, service) != null) {
+            throw new IllegalArgumentException("Branch already exists: " + name);
+        }
+        branchNames.add(name);
+    }
+
+    public LibraryService getBranch(String name) {
+        return branches.get(name);
+    }
+
+    // Branch names in the order they were added
+    public List<String> getBranchNames() {
+        return Collections.unmodifiableList(branchNames);
+    }
+
+    // Name of the branch holding an item, or null if no branch has it
+    public String branchOf(int uniqueId) {
+        LibraryService service = route(uniqueId);
+        if (service == null) {
+            return null;
+        }
+        for (Map.Entry<String, LibraryService> branch : branches.entrySet()) {
+            if (branch.getValue() == service) {
+                return branch.getKey();
+            }
+        }
+        return null;
+    }
+
+    private LibraryService route(int uniqueId) {
+        LibraryService cached = routes.get(uniqueId);
+        if (cached != null && cached.getItems().containsKey(uniqueId)) {
+            return cached;
+        }
+        for (String name : branchNames) {
+            LibraryService service = branches.get(name);
+            if (service.getItems().containsKey(uniqueId)) {
+                routes.put(uniqueId, service);
+                return service;
+            }
+        }
+        routes.remove(uniqueId);
+        return null;
+    }
+
+    public boolean borrowItem(int uniqueId, User user) {
+        LibraryService service = route(uniqueId);
+        return service != null && service.borrowItem(uniqueId, user);
+    }
+
+    public boolean returnItem(int uniqueId, User user) {
+        LibraryService service = route(uniqueId);
+        return service != null && service.returnItem(uniqueId, user);
+    }
+
+    public boolean isAvailable(int uniqueId) {
+        LibraryService service = route(uniqueId);
+        return service != null && service.isAvailable(uniqueId);
+    }
+
+    // Moves a copy that is on the shelf to another branch
+    public boolean transferItem(int uniqueId, String toBranch) {
+        return transfer(uniqueId, toBranch, null);
+    }
+
+    // Sends a copy that is on the shelf to the pickup branch, where it arrives on loan to
+    // the user, so no one at either branch can take it on the way
+    public boolean holdForPickup(int uniqueId, String pickupBranch, User user) {
+        return transfer(uniqueId, pickupBranch, user);
+    }
+
+    private boolean transfer(int uniqueId, String toBranch, User borrower) {
+        LibraryService destination = branches.get(toBranch);
+        if (destination == null) {
+            throw new IllegalArgumentException("No such branch: " + toBranch);
+        }
+        LibraryService source = route(uniqueId);
+        if (source == null || !source.transferItem(uniqueId, destination, borrower)) {
+            return false;
+        }
+        routes.put(uniqueId, destination);
+        return true;
+    }
+
+    // Distinct titles on the shelf at any branch, branches in the order they were added
+    public List<String> getInventory() {
+        Set<String> titles = gather(service -> new LinkedHashSet<>(service.getInventory()), (left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+        return new ArrayList<>(titles);
+    }
+
+    // Overdue items at every branch, earliest due date first
+    public List<Item> getOverdueItems() {
+        return gather(LibraryService::getOverdueItems, LibraryNetwork::mergeByDueDate);
+    }
+
+    // Items on loan to a user at any branch
+    public List<Item> getBorrowedItems(User user) {
+        return gather(service -> service.getBorrowedItems(user), (left, right) -> {
+            List<Item> merged = new ArrayList<>(left);
+            merged.addAll(right);
+            return merged;
+        });
+    }
+
+    // Runs the query on every branch in parallel and combines the results in branch order
+    public <T> T gather(Function<LibraryService, T> query, BinaryOperator<T> combine) {
+        List<LibraryService> services = new ArrayList<>();
+        for (String name : branchNames) {
+            services.add(branches.get(name));
+        }
+        if (services.isEmpty()) {
+            throw new IllegalStateException("No branches");
+        }
+        return pool.invoke(new ScatterGather<>(services, 0, services.size(), query, combine));
+    }
+
+    // Both lists are in due date order, as getOverdueItems returns them
+    private static List<Item> mergeByDueDate(List<Item> left, List<Item> right) {
+        List<Item> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0, j = 0;
+        while (i < left.size() && j < right.size()) {
+            merged.add(left.get(i).getDueEpochDay() <= right.get(j).getDueEpochDay() ? left.get(i++) : right.get(j++));
+        }
+        merged.addAll(left.subList(i, left.size()));
+        merged.addAll(right.subList(j, right.size()));
+        return merged;
+    }
+
+    // Splits the branches in halves until one is left, then combines the results on the
+    // way back up
+    private static final class ScatterGather<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+        private final List<LibraryService> services;
+        private final int from;
+        private final int to;
+        private final Function<LibraryService, T> query;
+        private final BinaryOperator<T> combine;
+
+        private ScatterGather(List<LibraryService> services, int from, int to,
+                              Function<LibraryService, T> query, BinaryOperator<T> combine) {
+            this.services = services;
+            this.from = from;
+            this.to = to;
+            this.query = query;
+            this.combine = combine;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                return query.apply(services.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            ScatterGather<T> right = new ScatterGather<>(services, middle, to, query, combine);
+            right.fork();
+            T left = new ScatterGather<>(services, from, middle, query, combine).compute();
+            return combine.apply(left, right.join());
+        }
+    }
+}
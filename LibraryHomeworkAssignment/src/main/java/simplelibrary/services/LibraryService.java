@@ -1,138 +1,1088 @@
 package main.java.simplelibrary.services;
 
+import main.java.simplelibrary.data.InventorySnapshot;
 import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.data.LoanJournal;
 import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.Loan;
+import main.java.simplelibrary.models.LoanTransaction;
 import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryMetrics.Operation;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class LibraryService {
+    private static final int DEFAULT_LOCK_STRIPES = 64;
+    private static final int LOAN_DAYS = 7;
+    // Placed on an item that has moved to another branch, so anyone still holding the old
+    // instance can neither borrow nor return it
+    private static final Loan WITHDRAWN = new Loan(null, Loan.NO_DUE_DATE);
+    // Orders the locks of two services taken together by a transfer
+    private static final AtomicLong SERVICE_IDS = new AtomicLong();
+
+    private final long serviceId = SERVICE_IDS.incrementAndGet();
+
     private final LibraryDataStore dataStore;
+    private final ReentrantLock[] locks;
+    private final LoanJournal journal;
+    private final LibraryClock clock;
+    private final LibraryMetrics metrics;
+    // Loans due before this epoch day have already been announced as overdue
+    private final AtomicLong overdueAnnouncedBefore = new AtomicLong(Loan.NO_DUE_DATE + 1);
+    private final List<AuditSink> auditSinks = new CopyOnWriteArrayList<>();
+    private final HoldQueues holds = new HoldQueues();
     private static final Logger LOGGER = Logger.getLogger(LibraryService.class.getName());
 
     public LibraryService(LibraryDataStore dataStore) {
+        this(dataStore, DEFAULT_LOCK_STRIPES);
+    }
+
+    // Borrow and return are serialised per item rather than per service: each uniqueId
+    // maps onto one of lockStripes locks, so operations on different items only contend
+    // when they happen to share a stripe.
+    public LibraryService(LibraryDataStore dataStore, int lockStripes) {
+        this(dataStore, lockStripes, null);
+    }
+
+    // With a journal, every loan change is appended while its item is locked and the
+    // caller then waits as long as the journal's DurabilityMode requires
+    public LibraryService(LibraryDataStore dataStore, int lockStripes, LoanJournal journal) {
+        this(dataStore, lockStripes, journal, LibraryClock.system());
+    }
+
+    // Due dates and overdue checks are based on the clock's idea of today
+    public LibraryService(LibraryDataStore dataStore, int lockStripes, LoanJournal journal, LibraryClock clock) {
+        this(dataStore, lockStripes, journal, clock, new LibraryMetrics());
+    }
+
+    // Pass LibraryMetrics.disabled() to run without recording metrics
+    public LibraryService(LibraryDataStore dataStore, int lockStripes, LoanJournal journal, LibraryClock clock,
+                          LibraryMetrics metrics) {
+        if (lockStripes <= 0) {
+            throw new IllegalArgumentException("lockStripes must be positive: " + lockStripes);
+        }
+        int stripes = 1;
+        while (stripes < lockStripes) {
+            stripes <<= 1;
+        }
         this.dataStore = dataStore;
+        this.journal = journal;
+        this.clock = clock;
+        this.metrics = metrics;
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock lockFor(int uniqueId) {
+        return locks[stripeOf(uniqueId)];
+    }
+
+    private int stripeOf(int uniqueId) {
+        int h = uniqueId ^ (uniqueId >>> 16);
+        return h & (locks.length - 1);
+    }
+
+    // Takes a stripe lock, timing the wait only when another thread holds it
+    private void lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+        if (!metrics.isEnabled()) {
+            lock.lock();
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        metrics.recordLockWait(System.nanoTime() - start);
+    }
+
+    // Registers a sink that is told about every successful borrow, return and renewal
+    public void addAuditSink(AuditSink sink) {
+        auditSinks.add(sink);
+    }
+
+    public void removeAuditSink(AuditSink sink) {
+        auditSinks.remove(sink);
+    }
+
+    public LibraryClock getClock() {
+        return clock;
+    }
+
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Current metrics together with the shelf and loan gauges. Counting overdue loans
+    // walks the due date index, so this is meant for periodic collection.
+    public LibraryMetrics.Snapshot getMetricsSnapshot() {
+        long activeLoans = dataStore.activeLoanCount();
+        long overdueLoans = dataStore.overdueItems(clock.todayEpochDay()).count();
+        long onShelf = Math.max(0, dataStore.getItems().size() - activeLoans);
+        return new LibraryMetrics.Snapshot(metrics, clock.millis(), onShelf, activeLoans, overdueLoans);
+    }
+
+    // Publishes the metrics on the platform MBeanServer as
+    // simplelibrary:type=LibraryService,name=<name>
+    public ObjectName registerMetricsMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("simplelibrary:type=LibraryService,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), objectName);
+        return objectName;
     }
 
-    public synchronized boolean borrowItem(int uniqueId, User user) {
-        LOGGER.info("Attempting to borrow item with uniqueId: " + uniqueId + " for user: " + user.getUsername());
+    // Runs a query, counting it as failed only if it throws
+    private <T> T timed(Operation operation, Supplier<T> query) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            T result = query.get();
+            succeeded = true;
+            return result;
+        } finally {
+            metrics.record(operation, start, succeeded);
+        }
+    }
+
+    private void audit(LoanTransaction.Type type, int uniqueId, User user, long dueEpochDay) {
+        // Only build the record when someone is listening
+        if (auditSinks.isEmpty()) {
+            return;
+        }
+        LoanTransaction transaction = new LoanTransaction(type, uniqueId, user, dueEpochDay, clock.millis());
+        for (AuditSink sink : auditSinks) {
+            sink.record(transaction);
+        }
+    }
+
+    // Journals a loan change that has just been made on a locked item: the new loan for a
+    // borrow or renewal, the ended one for a return. If the journal cannot take the
+    // record the item is put back as it was and the error rethrown.
+    private void journal(Item item, Loan previous, LoanTransaction.Type type, Loan loan) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(LoanTransaction.of(type, item.getUniqueId(), loan, clock.millis()));
+        } catch (RuntimeException e) {
+            item.setLoan(previous);
+            throw e;
+        }
+    }
+
+    private void awaitDurable() {
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+    }
+
+    // Waits for a loan change to become durable. If the journal fails first the change
+    // is put back, as journal() does when the append itself fails, and the error rethrown.
+    private void awaitDurable(Item item, Loan previous, Loan applied) {
+        try {
+            awaitDurable();
+        } catch (RuntimeException e) {
+            ReentrantLock lock = lockFor(item.getUniqueId());
+            lock(lock);
+            try {
+                revert(item, previous, applied);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
 
-        Item item = dataStore.getItems().get(uniqueId);
+    // Puts back the loan an item had before a change that never became durable, unless
+    // a later change has replaced it since. Called under the item's stripe lock.
+    private void revert(Item item, Loan previous, Loan applied) {
+        if (item.getLoan() != applied) {
+            return;
+        }
+        item.setLoan(previous);
+        if (applied == null) {
+            dataStore.recordLoan(item, previous);
+        } else if (previous == null) {
+            dataStore.clearLoan(item, applied);
+        } else {
+            dataStore.replaceLoan(item, applied, previous);
+        }
+    }
+
+    public boolean borrowItem(int uniqueId, User user) {
+        long start = metrics.start();
+        boolean borrowed = false;
+        try {
+            borrowed = borrow(uniqueId, user);
+            return borrowed;
+        } finally {
+            metrics.record(Operation.BORROW, start, borrowed);
+        }
+    }
+
+    private boolean borrow(int uniqueId, User user) {
+        // Messages are only built when INFO is enabled, and never while a lock is held
+        boolean logging = LOGGER.isLoggable(Level.INFO);
+        if (logging) {
+            LOGGER.info("Attempting to borrow item with uniqueId: " + uniqueId + " for user: " + user.getUsername());
+        }
+
+        Item item = dataStore.getItem(uniqueId);
         if (item == null) {
-            LOGGER.info("Item with uniqueId: " + uniqueId + " does not exist. Borrowing failed for user: " + user.getUsername());
+            if (logging) {
+                LOGGER.info("Item with uniqueId: " + uniqueId + " does not exist. Borrowing failed for user: " + user.getUsername());
+            }
             return false;
         }
 
         // Set due date for the borrowed item
-        LocalDate dueDate = LocalDate.now().plusDays(7);
-        item.setDueDate(dueDate);
-        LOGGER.info("Due date for item with uniqueId: " + uniqueId + " set to: " + dueDate);
+        long dueEpochDay = clock.todayEpochDay() + LOAN_DAYS;
+
+        // Loans always refer to the registered instance, so every index sees one User per name
+        user = dataStore.getUserRegistry().register(user);
+        Loan loan = lend(item, user, dueEpochDay);
+        if (loan == null) {
+            if (logging) {
+                LOGGER.info("Item with uniqueId: " + uniqueId + " is already on loan. Borrowing failed for user: " + user.getUsername());
+            }
+            return false;
+        }
+        awaitDurable(item, null, loan);
+
+        audit(LoanTransaction.Type.BORROWED, uniqueId, user, dueEpochDay);
+        if (logging) {
+            LOGGER.info("Item with uniqueId: " + uniqueId + " successfully borrowed by user: " + user.getUsername() + ", due on: " + LocalDate.ofEpochDay(dueEpochDay));
+        }
+        return true;
+    }
 
-        dataStore.getItems().remove(uniqueId);
-        dataStore.getUserItems().computeIfAbsent(user, k -> new HashSet<>()).add(item);
+    // Borrows whichever copy of an itemId is on the shelf. Returns the copy that was lent,
+    // or null if every copy is on loan.
+    public Item borrowAnyCopy(int itemId, User user) {
+        long start = metrics.start();
+        Item copy = null;
+        try {
+            copy = borrowAvailableCopy(itemId, user);
+            return copy;
+        } finally {
+            metrics.record(Operation.BORROW_ANY_COPY, start, copy != null);
+        }
+    }
 
-        LOGGER.info("Item with uniqueId: " + uniqueId + " successfully borrowed by user: " + user.getUsername());
+    private Item borrowAvailableCopy(int itemId, User user) {
+        long dueEpochDay = clock.todayEpochDay() + LOAN_DAYS;
+        user = dataStore.getUserRegistry().register(user);
+        for (Item copy : dataStore.availableCopies(itemId)) {
+            // Another borrower may take a copy between the index read and the compare-and-set
+            Loan loan = lend(copy, user, dueEpochDay);
+            if (loan != null) {
+                awaitDurable(copy, null, loan);
+                audit(LoanTransaction.Type.BORROWED, copy.getUniqueId(), user, dueEpochDay);
+                if (LOGGER.isLoggable(Level.INFO)) {
+                    LOGGER.info("Item with uniqueId: " + copy.getUniqueId() + " (itemId: " + itemId + ") successfully borrowed by user: " + user.getUsername() + ", due on: " + LocalDate.ofEpochDay(dueEpochDay));
+                }
+                return copy;
+            }
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("No copy of itemId: " + itemId + " is available. Borrowing failed for user: " + user.getUsername());
+        }
+        return null;
+    }
+
+    // The compare-and-set on the item decides who gets it; the stripe lock only keeps
+    // the loan indexes in step with it when the same item is borrowed and returned at once
+    private Loan lend(Item item, User user, long dueEpochDay) {
+        ReentrantLock lock = lockFor(item.getUniqueId());
+        lock(lock);
+        try {
+            return lendLocked(item, user, dueEpochDay);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lend() for a caller that already holds the item's stripe lock
+    private Loan lendLocked(Item item, User user, long dueEpochDay) {
+        Loan loan = item.tryBorrow(user, clock.todayEpochDay(), dueEpochDay);
+        if (loan != null) {
+            journal(item, null, LoanTransaction.Type.BORROWED, loan);
+            dataStore.recordLoan(item, loan);
+        }
+        return loan;
+    }
+
+    public boolean returnItem(int uniqueId, User user) {
+        long start = metrics.start();
+        boolean returned = false;
+        try {
+            returned = giveBack(uniqueId, user);
+            return returned;
+        } finally {
+            metrics.record(Operation.RETURN, start, returned);
+        }
+    }
+
+    private boolean giveBack(int uniqueId, User user) {
+        Item item = dataStore.getItem(uniqueId);
+        if (item == null) return false;
+
+        Loan loan;
+        Hold hold = null;
+        Loan handedOver = null;
+        ReentrantLock lock = lockFor(uniqueId);
+        lock(lock);
+        try {
+            loan = item.getLoan();
+            if (loan == null || !Objects.equals(loan.getBorrower(), user)) {
+                loan = null;
+            } else if (holds.hasHolds(item.getItemId())
+                    && (hold = holds.claimNext(item.getItemId(), clock.millis())) != null) {
+                handedOver = handOver(item, loan, hold);
+            } else {
+                loan = item.tryReturn(user);
+                journal(item, loan, LoanTransaction.Type.RETURNED, loan);
+                dataStore.clearLoan(item, loan);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (loan == null) {
+            return false;
+        }
+        try {
+            awaitDurable(item, loan, handedOver);
+        } catch (RuntimeException e) {
+            if (hold != null) {
+                hold.fail(e);
+            }
+            throw e;
+        }
+
+        audit(LoanTransaction.Type.RETURNED, uniqueId, user, loan.getDueEpochDay());
+        if (hold != null) {
+            audit(LoanTransaction.Type.BORROWED, uniqueId, hold.getUser(), handedOver.getDueEpochDay());
+            hold.fulfil(item);
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Item with uniqueId: " + uniqueId + " handed to user: " + hold.getUser().getUsername() + " from the hold queue.");
+            }
+        } else if (holds.hasHolds(item.getItemId())) {
+            // A hold was placed while the copy was going back on the shelf
+            serveHoldsFromShelf(item.getItemId());
+        }
         return true;
     }
 
+    // Lends a copy that is being returned to the holder of a claimed hold. The loan is
+    // replaced in one step, so the copy never appears on the shelf. Called under the
+    // copy's stripe lock.
+    private Loan handOver(Item item, Loan returned, Hold hold) {
+        long today = clock.todayEpochDay();
+        Loan next = new Loan(hold.getUser(), today, today + LOAN_DAYS);
+        item.replaceLoan(returned, next);
+        if (journal != null) {
+            long now = clock.millis();
+            try {
+                journal.appendAll(Arrays.asList(
+                        LoanTransaction.of(LoanTransaction.Type.RETURNED, item.getUniqueId(), returned, now),
+                        LoanTransaction.of(LoanTransaction.Type.BORROWED, item.getUniqueId(), next, now)));
+            } catch (RuntimeException e) {
+                item.setLoan(returned);
+                hold.fail(e);
+                throw e;
+            }
+        }
+        dataStore.replaceLoan(item, returned, next);
+        return next;
+    }
+
+    // Joins the queue for any copy of an itemId. When no one is queued and a copy is on
+    // the shelf, it is lent straight away and the hold is already fulfilled. Otherwise the
+    // next copy returned goes to the longest-waiting hold instead of back on the shelf, and
+    // the hold's future completes with it. Returns null if the itemId is not catalogued.
+    public Hold placeHold(int itemId, User user) {
+        return placeHold(itemId, user, null);
+    }
 
+    // With a timeout the hold expires if no copy comes back in time; expired holds are
+    // skipped when a copy is returned, and expireHolds() ends them for waiting patrons
+    public Hold placeHold(int itemId, User user, Duration timeout) {
+        long start = metrics.start();
+        Hold hold = null;
+        try {
+            if (!dataStore.isCatalogued(itemId)) {
+                return null;
+            }
+            user = dataStore.getUserRegistry().register(user);
+            hold = new Hold(itemId, user, timeout == null ? Hold.NO_EXPIRY : clock.millis() + timeout.toMillis());
+            if (!holds.hasHolds(itemId)) {
+                Item copy = borrowAvailableCopy(itemId, user);
+                if (copy != null) {
+                    hold.claim();
+                    hold.fulfil(copy);
+                    return hold;
+                }
+            }
+            holds.add(hold);
+            // A copy may have reached the shelf after the check above
+            serveHoldsFromShelf(itemId);
+            return hold;
+        } finally {
+            metrics.record(Operation.PLACE_HOLD, start, hold != null);
+        }
+    }
 
-    public synchronized boolean returnItem(int uniqueId, User user) {
-        HashSet<Item> borrowedItems = dataStore.getUserItems().get(user);
-        if (borrowedItems == null) return false;
+    // Holds on an itemId still waiting for a copy
+    public int getHoldCount(int itemId) {
+        return holds.waiting(itemId);
+    }
 
-        Iterator<Item> iterator = borrowedItems.iterator();
-        while (iterator.hasNext()) {
-            Item item = iterator.next();
-            if (item.getUniqueId() == uniqueId) {
-                iterator.remove();
-                dataStore.getItems().put(uniqueId, item);
-                return true;
+    // Ends holds that have expired, completing their futures with a TimeoutException, and
+    // returns how many there were. Meant to be run periodically.
+    public int expireHolds() {
+        return holds.expire(clock.millis());
+    }
+
+    // Lends copies of an itemId that are on the shelf to waiting holds, for when a copy
+    // reached the shelf while a hold was being placed
+    private void serveHoldsFromShelf(int itemId) {
+        for (Item copy : dataStore.availableCopies(itemId)) {
+            if (!holds.hasHolds(itemId)) {
+                return;
+            }
+            Hold hold = null;
+            Loan loan = null;
+            ReentrantLock lock = lockFor(copy.getUniqueId());
+            lock(lock);
+            try {
+                if (copy.isAvailable() && dataStore.getItem(copy.getUniqueId()) == copy) {
+                    hold = holds.claimNext(itemId, clock.millis());
+                    if (hold == null) {
+                        return;
+                    }
+                    loan = lendLocked(copy, hold.getUser(), clock.todayEpochDay() + LOAN_DAYS);
+                }
+            } catch (RuntimeException e) {
+                // The copy stays on the shelf; the patron finds out through the future
+                LOGGER.log(Level.WARNING, "Could not lend uniqueId: " + copy.getUniqueId() + " to a waiting hold", e);
+                if (hold != null) {
+                    hold.fail(e);
+                }
+                continue;
+            } finally {
+                lock.unlock();
+            }
+            if (loan != null) {
+                try {
+                    awaitDurable(copy, null, loan);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Loan of uniqueId: " + copy.getUniqueId() + " to a waiting hold was not made durable", e);
+                    hold.fail(e);
+                    continue;
+                }
+                audit(LoanTransaction.Type.BORROWED, copy.getUniqueId(), hold.getUser(), loan.getDueEpochDay());
+                hold.fulfil(copy);
             }
         }
-        return false;
     }
 
-    public synchronized boolean isOverdue(LocalDate borrowedDate) {
+    // Moves the due date of an item that is on loan, e.g. for a renewal
+    public boolean updateDueDate(int uniqueId, LocalDate dueDate) {
+        long start = metrics.start();
+        boolean renewed = false;
+        try {
+            renewed = renew(uniqueId, dueDate);
+            return renewed;
+        } finally {
+            metrics.record(Operation.RENEW, start, renewed);
+        }
+    }
+
+    private boolean renew(int uniqueId, LocalDate dueDate) {
+        Item item = dataStore.getItem(uniqueId);
+        if (item == null || dueDate == null) return false;
+        long dueEpochDay = dueDate.toEpochDay();
+
+        Loan loan;
+        Loan update = null;
+        ReentrantLock lock = lockFor(uniqueId);
+        lock(lock);
+        try {
+            loan = item.getLoan();
+            Loan replacement = loan == null ? null : new Loan(loan.getBorrower(), loan.getBorrowedEpochDay(), dueEpochDay);
+            if (item.replaceLoan(loan, replacement)) {
+                journal(item, loan, LoanTransaction.Type.RENEWED, replacement);
+                update = replacement;
+                dataStore.replaceLoan(item, loan, update);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (update == null) {
+            return false;
+        }
+        awaitDurable(item, loan, update);
+
+        audit(LoanTransaction.Type.RENEWED, uniqueId, update.getBorrower(), dueEpochDay);
+        return true;
+    }
+
+    // Borrows several items for one user, e.g. from a self-service kiosk. Each stripe lock
+    // is taken once for the whole batch, the journal records are appended together and
+    // the caller waits for durability once.
+    public BatchResult borrowItems(int[] uniqueIds, User user, BatchMode mode) {
+        return applyBatch(LoanTransaction.Type.BORROWED, uniqueIds, user, mode);
+    }
 
-        long days = ChronoUnit.DAYS.between(borrowedDate, LocalDate.now());
+    // Returns several items held by one user, e.g. from the returns sorter
+    public BatchResult returnItems(int[] uniqueIds, User user, BatchMode mode) {
+        return applyBatch(LoanTransaction.Type.RETURNED, uniqueIds, user, mode);
+    }
+
+    private BatchResult applyBatch(LoanTransaction.Type type, int[] uniqueIds, User user, BatchMode mode) {
+        long start = metrics.start();
+        BatchResult result = null;
+        try {
+            result = lockAndApplyBatch(type, uniqueIds, user, mode);
+            return result;
+        } finally {
+            metrics.record(type == LoanTransaction.Type.BORROWED ? Operation.BATCH_BORROW : Operation.BATCH_RETURN,
+                    start, result != null && result.isAllSucceeded());
+        }
+    }
+
+    private BatchResult lockAndApplyBatch(LoanTransaction.Type type, int[] uniqueIds, User user, BatchMode mode) {
+        boolean borrowing = type == LoanTransaction.Type.BORROWED;
+        BatchResult.Status[] statuses = new BatchResult.Status[uniqueIds.length];
+        Item[] items = new Item[uniqueIds.length];
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < uniqueIds.length; i++) {
+            Item item = dataStore.getItem(uniqueIds[i]);
+            if (item == null) {
+                statuses[i] = BatchResult.Status.NOT_FOUND;
+            } else if (!seen.add(uniqueIds[i])) {
+                statuses[i] = BatchResult.Status.DUPLICATE;
+            } else {
+                items[i] = item;
+            }
+        }
+
+        long dueEpochDay = borrowing ? clock.todayEpochDay() + LOAN_DAYS : Loan.NO_DUE_DATE;
+        if (borrowing) {
+            user = dataStore.getUserRegistry().register(user);
+        }
+        // For a borrow the new loan, for a return the loan that ended
+        Loan[] loans = new Loan[uniqueIds.length];
+        int changed = 0;
+        // Stripes are always locked in ascending order, so concurrent batches cannot deadlock
+        int[] stripes = stripesOf(items);
+        for (int stripe : stripes) {
+            lock(locks[stripe]);
+        }
+        try {
+            // Loan changes only happen under the stripe locks, so these checks stay true
+            // until the locks are released
+            boolean failed = false;
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] != null) {
+                    boolean eligible = borrowing ? items[i].isAvailable() : Objects.equals(items[i].getBorrowedBy(), user);
+                    statuses[i] = eligible ? BatchResult.Status.SUCCEEDED : BatchResult.Status.REJECTED;
+                }
+                failed |= statuses[i] != BatchResult.Status.SUCCEEDED;
+            }
+            if (failed && mode == BatchMode.ALL_OR_NOTHING) {
+                for (int i = 0; i < statuses.length; i++) {
+                    if (statuses[i] == BatchResult.Status.SUCCEEDED) {
+                        statuses[i] = BatchResult.Status.ROLLED_BACK;
+                    }
+                }
+            } else {
+                List<LoanTransaction> records = journal == null ? null : new ArrayList<>();
+                long now = clock.millis();
+                for (int i = 0; i < items.length; i++) {
+                    if (statuses[i] == BatchResult.Status.SUCCEEDED) {
+                        loans[i] = borrowing ? items[i].tryBorrow(user, dueEpochDay - LOAN_DAYS, dueEpochDay) : items[i].tryReturn(user);
+                        changed++;
+                        if (records != null) {
+                            records.add(LoanTransaction.of(type, uniqueIds[i], loans[i], now));
+                        }
+                    }
+                }
+                journalBatch(records, items, loans, borrowing);
+                for (int i = 0; i < items.length; i++) {
+                    if (loans[i] != null) {
+                        if (borrowing) {
+                            dataStore.recordLoan(items[i], loans[i]);
+                        } else {
+                            dataStore.clearLoan(items[i], loans[i]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+        if (changed > 0) {
+            awaitBatchDurable(stripes, items, loans, borrowing);
+        }
+
+        for (int i = 0; i < loans.length; i++) {
+            if (loans[i] != null) {
+                audit(type, uniqueIds[i], user, loans[i].getDueEpochDay());
+            }
+        }
+        if (!borrowing) {
+            // Returned copies go to waiting holds from the shelf rather than one by one
+            // under the batch's locks
+            for (int i = 0; i < loans.length; i++) {
+                if (loans[i] != null && holds.hasHolds(items[i].getItemId())) {
+                    serveHoldsFromShelf(items[i].getItemId());
+                }
+            }
+        }
+        BatchResult result = new BatchResult(uniqueIds, statuses);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Batch " + (borrowing ? "borrow" : "return") + " (" + mode + ") for user: " + user.getUsername()
+                    + " changed " + result.getSucceededCount() + " of " + uniqueIds.length + " items.");
+        }
+        return result;
+    }
+
+    // awaitDurable() for a batch, putting back every change in it if the journal fails
+    private void awaitBatchDurable(int[] stripes, Item[] items, Loan[] loans, boolean borrowing) {
+        try {
+            awaitDurable();
+        } catch (RuntimeException e) {
+            for (int stripe : stripes) {
+                lock(locks[stripe]);
+            }
+            try {
+                for (int i = 0; i < items.length; i++) {
+                    if (loans[i] != null) {
+                        revert(items[i], borrowing ? null : loans[i], borrowing ? loans[i] : null);
+                    }
+                }
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    locks[stripes[i]].unlock();
+                }
+            }
+            throw e;
+        }
+    }
+
+    // Distinct stripes of the non-null items, in ascending order
+    private int[] stripesOf(Item[] items) {
+        boolean[] used = new boolean[locks.length];
+        int count = 0;
+        for (Item item : items) {
+            if (item != null && !used[stripeOf(item.getUniqueId())]) {
+                used[stripeOf(item.getUniqueId())] = true;
+                count++;
+            }
+        }
+        int[] stripes = new int[count];
+        for (int stripe = 0, next = 0; next < count; stripe++) {
+            if (used[stripe]) {
+                stripes[next++] = stripe;
+            }
+        }
+        return stripes;
+    }
+
+    // Journals a batch of changes made under the stripe locks, undoing all of them if
+    // the journal cannot take the records
+    private void journalBatch(List<LoanTransaction> records, Item[] items, Loan[] loans, boolean borrowing) {
+        if (records == null) {
+            return;
+        }
+        try {
+            journal.appendAll(records);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < items.length; i++) {
+                if (loans[i] != null) {
+                    items[i].setLoan(borrowing ? null : loans[i]);
+                }
+            }
+            throw e;
+        }
+    }
+
+    // Moves a copy that is on the shelf to another branch's service. With a borrower the
+    // copy arrives on loan to them there, e.g. for a hold collected at that branch; the loan
+    // is audited by the destination. Returns false if the copy is unknown, on loan, or its
+    // uniqueId is already used at the destination.
+    //
+    // Both branches' stripe locks for the uniqueId are held throughout, so the copy is never
+    // lent at either branch mid-move; it is added to the destination before it is removed
+    // here, so it is never missing from both. Each branch journals its side of the move,
+    // the arrival first, so a crash in between leaves the copy at both rather than neither.
+    public boolean transferItem(int uniqueId, LibraryService destination, User borrower) {
+        Item item = dataStore.getItem(uniqueId);
+        if (item == null || destination == this) {
+            return false;
+        }
+        long dueEpochDay = destination.clock.todayEpochDay() + LOAN_DAYS;
+        if (borrower != null) {
+            borrower = destination.dataStore.getUserRegistry().register(borrower);
+        }
+        // A fresh instance, so the old one can be retired for anyone still holding it
+        Item copy = ItemType.of(item).create(uniqueId, item.getItemId(), item.getTitle());
+        Loan loan = borrower == null ? null : copy.tryBorrow(borrower, dueEpochDay - LOAN_DAYS, dueEpochDay);
+
+        // Locks of different services are always taken in serviceId order
+        ReentrantLock first = serviceId < destination.serviceId ? lockFor(uniqueId) : destination.lockFor(uniqueId);
+        ReentrantLock second = serviceId < destination.serviceId ? destination.lockFor(uniqueId) : lockFor(uniqueId);
+        lock(first);
+        lock(second);
+        try {
+            if (dataStore.getItem(uniqueId) != item || !item.isAvailable()
+                    || !destination.dataStore.addItemIfAbsent(copy)) {
+                return false;
+            }
+            try {
+                destination.journalTransfer(LoanTransaction.Type.TRANSFERRED_IN, copy, loan);
+                journalTransfer(LoanTransaction.Type.TRANSFERRED_OUT, item, null);
+            } catch (RuntimeException e) {
+                destination.dataStore.removeItem(copy);
+                throw e;
+            }
+            dataStore.removeItem(item);
+            item.setLoan(WITHDRAWN);
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+        try {
+            destination.awaitDurable();
+            awaitDurable();
+        } catch (RuntimeException e) {
+            lock(first);
+            lock(second);
+            try {
+                untransfer(item, destination, copy, loan);
+            } finally {
+                second.unlock();
+                first.unlock();
+            }
+            throw e;
+        }
+        if (loan != null) {
+            destination.audit(LoanTransaction.Type.BORROWED, uniqueId, borrower, dueEpochDay);
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Item with uniqueId: " + uniqueId + " transferred to another branch"
+                    + (borrower == null ? "." : " on loan to user: " + borrower.getUsername()));
+        }
+        if (loan == null) {
+            // The copy is on the destination's shelf, where a hold may be waiting for it
+            destination.serveHoldsFromShelf(copy.getItemId());
+        }
+        return true;
+    }
+
+    private void journalTransfer(LoanTransaction.Type type, Item item, Loan loan) {
+        if (journal != null) {
+            journal.append(LoanTransaction.transfer(type, item, loan, clock.millis()));
+        }
+    }
+
+    // Puts a copy whose transfer never became durable back on the shelf here, unless it has
+    // been lent or returned at the destination since. Called under both branches' locks.
+    private void untransfer(Item item, LibraryService destination, Item copy, Loan loan) {
+        if (copy.getLoan() != loan || !destination.dataStore.removeItem(copy)) {
+            return;
+        }
+        copy.setLoan(WITHDRAWN);
+        item.setLoan(null);
+        dataStore.addItemIfAbsent(item);
+    }
+
+    // Returns the user currently holding an item, or null if it is on the shelf or unknown
+    public User getBorrower(int uniqueId) {
+        return dataStore.getBorrower(uniqueId);
+    }
+
+    public boolean isOverdue(LocalDate borrowedDate) {
+
+        long days = clock.todayEpochDay() - borrowedDate.toEpochDay();
 
         // Logging the borrowedDate and the calculated days difference
-        LOGGER.info("Received borrowedDate: " + borrowedDate);
-        LOGGER.info("Days between borrowedDate and current date: " + days);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Received borrowedDate: " + borrowedDate + ", days between borrowedDate and current date: " + days);
+        }
 
-        return days > 7;
+        return days > LOAN_DAYS;
     }
 
-    // Returns the current items in the inventory
+    // isOverdue for a date given as an epoch day, for callers that check many; takes no
+    // lock, logs nothing and allocates nothing
+    public boolean isOverdue(long borrowedEpochDay) {
+        return clock.todayEpochDay() - borrowedEpochDay > LOAN_DAYS;
+    }
+
+    // isOverdue for every epoch day in the array at once, e.g. from a shelving scan: bit i
+    // is set when borrowedEpochDays[i] is overdue. Today's date is read once for the lot.
+    public BitSet checkOverdue(int[] borrowedEpochDays) {
+        // Overdue when today - day > LOAN_DAYS, that is when day < cutoff
+        long cutoff = clock.todayEpochDay() - LOAN_DAYS;
+        long[] words = new long[(borrowedEpochDays.length + 63) >>> 6];
+        for (int w = 0; w < words.length; w++) {
+            int base = w << 6;
+            int end = Math.min(base + 64, borrowedEpochDays.length);
+            long word = 0;
+            // Branch-free: the sign bit of day - cutoff is the answer
+            for (int i = base; i < end; i++) {
+                word |= ((borrowedEpochDays[i] - cutoff) >>> 63) << (i - base);
+            }
+            words[w] = word;
+        }
+        return BitSet.valueOf(words);
+    }
+
+    // Returns every item in the catalogue, whether on the shelf or on loan
     public Map<Integer, Item> getItems() {
         return dataStore.getItems();
     }
 
     // Returns a list of currently available items for loan
-    public synchronized List<Item> getCurrentInventory() {
-        return dataStore.getItems().values().stream()
-                .filter(item -> item.getDueDate() == null)
-                .collect(Collectors.toList());
+    public List<Item> getCurrentInventory() {
+        return timed(Operation.GET_CURRENT_INVENTORY, () -> dataStore.inventorySnapshot().getItems());
     }
+
+    // Returns the distinct titles that have a copy on the shelf, in catalogue order
     public List<String> getInventory() {
-        return dataStore.getItems().values().stream()
-                .map(Item::getTitle)
-                .distinct() // To remove duplicates
-                .collect(Collectors.toList());
+        return timed(Operation.GET_INVENTORY, () -> dataStore.inventorySnapshot().getTitles());
+    }
+
+    // Copies and titles on the shelf at one moment, for callers that need both to agree
+    // or want to read the same listing several times. Unmodifiable, and unaffected by
+    // later loans.
+    public InventorySnapshot getInventorySnapshot() {
+        return timed(Operation.GET_CURRENT_INVENTORY, dataStore::inventorySnapshot);
+    }
+
+    // Loans and catalogue as of now, for reports such as loans per type or the borrowers
+    // with most overdue items. Taking it reads every copy in parallel on the common pool
+    // without blocking loans; the reports then run on the same pool.
+    public LibraryAnalytics getAnalytics() {
+        return getAnalytics(ForkJoinPool.commonPool());
+    }
+
+    public LibraryAnalytics getAnalytics(ForkJoinPool pool) {
+        return timed(Operation.ANALYTICS, () -> new LibraryAnalytics(dataStore.loanSnapshot(pool), clock.todayEpochDay(), pool));
+    }
+
+    // Title search for catalogue front ends, e.g. as the patron types: "java conc" finds
+    // "Java Concurrency In Practice". Best matches first; with availableOnly only titles
+    // with a copy on the shelf are returned.
+    public List<String> searchTitles(String query, int limit, boolean availableOnly) {
+        return timed(Operation.SEARCH_TITLES, () -> dataStore.searchTitles(query, limit, availableOnly));
+    }
+
+    // Number of copies of a title that are on the shelf
+    public int getAvailableCopyCount(String title) {
+        return dataStore.availableCopies(title).size();
+    }
+
+    // Number of copies of an itemId that are on the shelf
+    public int getAvailableCopyCount(int itemId) {
+        return dataStore.availableCopies(itemId).size();
     }
 
     // Returns a list of borrowed items by a particular user
-    public synchronized List<Item> getBorrowedItems(User user) {
-        LOGGER.info("Fetching borrowed items for user: " + user.getUsername());
+    public List<Item> getBorrowedItems(User user) {
+        return timed(Operation.GET_BORROWED_ITEMS, () -> borrowedItemsOf(user));
+    }
 
-        HashSet<Item> borrowedItems = dataStore.getUserItems().get(user);
+    private List<Item> borrowedItemsOf(User user) {
+        Set<Item> borrowedItems = dataStore.borrowedItems(user);
         if (borrowedItems == null) {
-            LOGGER.info("No items borrowed by user: " + user.getUsername());
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("No items borrowed by user: " + user.getUsername());
+            }
             return Collections.emptyList();
         }
 
-        LOGGER.info("User " + user.getUsername() + " has borrowed " + borrowedItems.size() + " items.");
-        return new ArrayList<>(borrowedItems);
+        List<Item> result = new ArrayList<>(borrowedItems);
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("User " + user.getUsername() + " has borrowed " + result.size() + " items.");
+        }
+        return result;
+    }
+    public List<Item> getOverdueItems() {
+        return getOverdueItems(clock.today());
     }
-    public synchronized List<Item> getOverdueItems() {
-        LOGGER.info("Fetching all overdue items.");
 
-        List<Item> overdueItems = new ArrayList<>();
+    // Returns the items that were due before the given date, earliest due date first
+    public List<Item> getOverdueItems(LocalDate asOf) {
+        List<Item> overdueItems = timed(Operation.GET_OVERDUE_ITEMS, () -> streamOverdueItems(asOf).collect(Collectors.toList()));
 
-        // Today's date
-        LocalDate today = LocalDate.now();
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Found " + overdueItems.size() + " overdue items as of " + asOf + ".");
+        }
+        return overdueItems;
+    }
 
-        for (Map.Entry<User, HashSet<Item>> entry : dataStore.getUserItems().entrySet()) {
-            for (Item item : entry.getValue()) {
-                if (item.getDueDate().isBefore(today)) {
-                    overdueItems.add(item);
-                    LOGGER.info("Item with title '" + item.getTitle() + "' borrowed by " + entry.getKey().getUsername() + " is overdue.");
+    // Tells the audit sinks about every loan that has become overdue since the previous
+    // call, as an OVERDUE transaction, and returns how many there were. Meant to be run
+    // periodically, e.g. once a day; the first call announces all loans already overdue.
+    // While no sink is listening nothing is announced, and those loans are left for the
+    // first call that has someone to tell.
+    public int announceOverdueLoans() {
+        long today = clock.todayEpochDay();
+        long from = overdueAnnouncedBefore.get();
+        if (from >= today || !isAnyoneListening()) {
+            return 0;
+        }
+        // Claims the days, so concurrent calls do not announce the same loans twice
+        if (!overdueAnnouncedBefore.compareAndSet(from, today)) {
+            return 0;
+        }
+        int[] announced = {0};
+        try {
+            dataStore.itemsDueBetween(from, today).forEach(item -> {
+                Loan loan = item.getLoan();
+                if (loan != null && loan.getDueEpochDay() < today) {
+                    audit(LoanTransaction.Type.OVERDUE, item.getUniqueId(), loan.getBorrower(), loan.getDueEpochDay());
+                    announced[0]++;
                 }
+            });
+        } catch (RuntimeException e) {
+            // Hands the days back so the next call announces them again
+            overdueAnnouncedBefore.compareAndSet(today, from);
+            throw e;
+        }
+        return announced[0];
+    }
+
+    private boolean isAnyoneListening() {
+        for (AuditSink sink : auditSinks) {
+            if (sink.isListening()) {
+                return true;
             }
         }
+        return false;
+    }
 
-        LOGGER.info("Found " + overdueItems.size() + " overdue items.");
-        return overdueItems;
+    // Lazily walks the overdue loans in due date order, for result sets too large to
+    // collect at once. Use skip/limit on the stream to page through them.
+    public Stream<Item> streamOverdueItems(LocalDate asOf) {
+        return dataStore.overdueItems(asOf);
     }
 
     // Checks if an item is available
-    public synchronized boolean isAvailable(int uniqueId) {
-        LOGGER.info("Checking availability for item with uniqueId: " + uniqueId);
-
-        Item item = dataStore.getItems().get(uniqueId);
+    public boolean isAvailable(int uniqueId) {
+        long start = metrics.start();
+        Item item = dataStore.getItem(uniqueId);
         if (item == null) {
-            LOGGER.info("Item with uniqueId: " + uniqueId + " does not exist.");
+            metrics.record(Operation.IS_AVAILABLE, start, false);
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Item with uniqueId: " + uniqueId + " does not exist.");
+            }
             return false;
         }
 
-        boolean availability = item.getDueDate() == null;
-        LOGGER.info("Item with uniqueId: " + uniqueId + " is available: " + availability);
+        boolean availability = item.isAvailable();
+        metrics.record(Operation.IS_AVAILABLE, start, true);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Item with uniqueId: " + uniqueId + " is available: " + availability);
+        }
         return availability;
     }
 
+    // isAvailable for every uniqueId in the array at once, e.g. from a shelving scan: bit i
+    // is set when uniqueIds[i] is catalogued and on the shelf. Takes no lock and logs
+    // nothing; the call is timed once as a whole.
+    public BitSet checkAvailable(int[] uniqueIds) {
+        long start = metrics.start();
+        long[] words = new long[(uniqueIds.length + 63) >>> 6];
+        for (int w = 0; w < words.length; w++) {
+            int base = w << 6;
+            int end = Math.min(base + 64, uniqueIds.length);
+            long word = 0;
+            for (int i = base; i < end; i++) {
+                Item item = dataStore.getItem(uniqueIds[i]);
+                if (item != null && item.isAvailable()) {
+                    word |= 1L << (i - base);
+                }
+            }
+            words[w] = word;
+        }
+        metrics.record(Operation.BATCH_IS_AVAILABLE, start, true);
+        return BitSet.valueOf(words);
+    }
+
+    private final class MetricsBean implements LibraryMetricsMXBean {
+        @Override
+        public long getItemsOnShelf() {
+            return Math.max(0, dataStore.getItems().size() - dataStore.activeLoanCount());
+        }
+
+        @Override
+        public long getActiveLoans() {
+            return dataStore.activeLoanCount();
+        }
+
+        @Override
+        public long getOverdueLoans() {
+            return dataStore.overdueItems(clock.todayEpochDay()).count();
+        }
+
+        @Override
+        public Map<String, Long> getCalls() {
+            Map<String, Long> calls = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                calls.put(operation.name(), metrics.getCalls(operation));
+            }
+            return calls;
+        }
+
+        @Override
+        public Map<String, Long> getFailures() {
+            Map<String, Long> failures = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                failures.put(operation.name(), metrics.getFailures(operation));
+            }
+            return failures;
+        }
+
+        @Override
+        public Map<String, Long> getP99LatencyNanos() {
+            Map<String, Long> latencies = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation.name(), metrics.getLatency(operation).getPercentileNanos(99));
+            }
+            return latencies;
+        }
+
+        @Override
+        public long getContendedLocks() {
+            return metrics.getContendedLockCount();
+        }
+
+        @Override
+        public long getLockWaitP99Nanos() {
+            return metrics.getLockWaits().getPercentileNanos(99);
+        }
+    }
+
 }
@@ -0,0 +1,321 @@
+package main.java.simplelibrary.services;
+
+import main.java.simplelibrary.models.LoanTransaction;
+import main.java.simplelibrary.models.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// In-process stream of loan transactions. Register it with LibraryService.addAuditSink
+// and every borrow, return, renewal and overdue notice is handed to each subscriber.
+//
+// Each subscriber has its own bounded ring buffer and consumer thread, so a slow
+// subscriber only ever affects itself. Publishing claims a ring slot with a
+// compare-and-set and takes no lock; the subscriber's BackpressurePolicy decides what
+// happens when its ring is full. Consumers take whatever has been published, up to
+// MAX_BATCH events, and pass it to the handler in one call.
+public class LoanEventBus implements AuditSink, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(LoanEventBus.class.getName());
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final long FULL_PARK_NANOS = 50_000;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Spilling subscribers need spillDirectory; the other policies ignore it. The batch
+    // list is reused after the handler returns, so handlers must copy what they keep.
+    public Subscription subscribe(String name, Consumer<List<LoanTransaction>> handler, int capacity,
+                                  BackpressurePolicy policy, Path spillDirectory) throws IOException {
+        Subscription subscription = new Subscription(name, handler, capacity, policy, spillDirectory);
+        subscriptions.add(subscription);
+        subscription.consumer.start();
+        return subscription;
+    }
+
+    public Subscription subscribe(String name, Consumer<List<LoanTransaction>> handler, int capacity,
+                                  BackpressurePolicy policy) throws IOException {
+        if (policy == BackpressurePolicy.SPILL) {
+            throw new IllegalArgumentException("A spilling subscriber needs a spill directory");
+        }
+        return subscribe(name, handler, capacity, policy, null);
+    }
+
+    @Override
+    public void record(LoanTransaction transaction) {
+        for (Subscription subscription : subscriptions) {
+            subscription.publish(transaction);
+        }
+    }
+
+    @Override
+    public boolean isListening() {
+        return !subscriptions.isEmpty();
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    // Stops every subscriber after it has delivered what was already published
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        private final Consumer<List<LoanTransaction>> handler;
+        private final BackpressurePolicy policy;
+        private final AtomicReferenceArray<LoanTransaction> ring;
+        private final int mask;
+        private final Thread consumer;
+
+        // Next sequence a publisher will claim
+        private final AtomicLong claimed = new AtomicLong();
+        // Next sequence the consumer will read; only the consumer writes it
+        private volatile long consumed;
+        private volatile long delivered;
+        private volatile boolean sleeping;
+        private volatile boolean running = true;
+        private final AtomicLong dropped = new AtomicLong();
+
+        // Spill file state, all guarded by spillLock
+        private final Path spillDirectory;
+        private final ReentrantLock spillLock = new ReentrantLock();
+        private Path spillFile;
+        private DataOutputStream spillOut;
+        private final AtomicLong spillPending = new AtomicLong();
+        private final AtomicLong spilled = new AtomicLong();
+        private final AtomicLong spillLost = new AtomicLong();
+
+        private Subscription(String name, Consumer<List<LoanTransaction>> handler, int capacity,
+                             BackpressurePolicy policy, Path spillDirectory) throws IOException {
+            int size = 1;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            this.name = name;
+            this.handler = handler;
+            this.policy = policy;
+            this.ring = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+            this.spillDirectory = spillDirectory;
+            if (policy == BackpressurePolicy.SPILL) {
+                Files.createDirectories(spillDirectory);
+            }
+            this.consumer = new Thread(this::consumeLoop, "library-events-" + name);
+            this.consumer.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BackpressurePolicy getPolicy() {
+            return policy;
+        }
+
+        // Events accepted for this subscriber whose handler call has not finished yet
+        public long getLag() {
+            return claimed.get() + spilled.get() - spillLost.get() - delivered;
+        }
+
+        public long getDeliveredCount() {
+            return delivered;
+        }
+
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        // Events that went through the spill file because the ring was full
+        public long getSpilledCount() {
+            return spilled.get();
+        }
+
+        private void publish(LoanTransaction transaction) {
+            if (!running) {
+                dropped.incrementAndGet();
+                return;
+            }
+            // Once something is spilled, later events follow it through the file so one
+            // publisher's events are still delivered in order
+            if (policy == BackpressurePolicy.SPILL && spillPending.get() > 0) {
+                spill(transaction);
+                return;
+            }
+            long sequence;
+            while (true) {
+                sequence = claimed.get();
+                if (sequence - consumed > mask) {
+                    if (policy == BackpressurePolicy.DROP) {
+                        dropped.incrementAndGet();
+                        return;
+                    } else if (policy == BackpressurePolicy.SPILL) {
+                        spill(transaction);
+                        return;
+                    }
+                    wake();
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                    if (!running) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+            }
+            ring.set((int) sequence & mask, transaction);
+            if (sleeping) {
+                wake();
+            }
+        }
+
+        private void wake() {
+            LockSupport.unpark(consumer);
+        }
+
+        private void consumeLoop() {
+            List<LoanTransaction> batch = new ArrayList<>(MAX_BATCH);
+            while (true) {
+                long next = consumed;
+                // Take published events in sequence order; a claimed slot that is still
+                // empty is being written, so the batch stops there
+                while (batch.size() < MAX_BATCH) {
+                    int slot = (int) next & mask;
+                    LoanTransaction transaction = ring.get(slot);
+                    if (transaction == null) {
+                        break;
+                    }
+                    ring.lazySet(slot, null);
+                    batch.add(transaction);
+                    next++;
+                }
+                if (!batch.isEmpty()) {
+                    consumed = next;
+                    deliver(batch);
+                    continue;
+                }
+                if (next == claimed.get() && spillPending.get() > 0) {
+                    deliver(readSpill());
+                    continue;
+                }
+                if (!running && next == claimed.get() && spillPending.get() == 0) {
+                    return;
+                }
+                sleeping = true;
+                if (ring.get((int) next & mask) == null) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+
+        private void deliver(List<LoanTransaction> batch) {
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Subscriber " + name + " failed on a batch of " + batch.size() + " events", e);
+            }
+            delivered += batch.size();
+            batch.clear();
+        }
+
+        private void spill(LoanTransaction transaction) {
+            spillLock.lock();
+            try {
+                if (spillOut == null) {
+                    spillFile = Files.createTempFile(spillDirectory, "events-" + name + "-", ".spill");
+                    spillOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile, StandardOpenOption.APPEND)));
+                }
+                spillOut.writeByte(transaction.getType().ordinal());
+                spillOut.writeInt(transaction.getUniqueId());
+                spillOut.writeBoolean(transaction.getUser() != null);
+                if (transaction.getUser() != null) {
+                    spillOut.writeUTF(transaction.getUser().getUsername());
+                }
+                spillOut.writeLong(transaction.getDueEpochDay());
+                spillOut.writeLong(transaction.getTimestampMillis());
+                spillPending.incrementAndGet();
+                spilled.incrementAndGet();
+            } catch (IOException e) {
+                // Nowhere left to put it
+                dropped.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Subscriber " + name + " could not spill an event", e);
+            } finally {
+                spillLock.unlock();
+            }
+            if (sleeping) {
+                wake();
+            }
+        }
+
+        // Takes everything spilled so far, in order, and starts a fresh spill file
+        private List<LoanTransaction> readSpill() {
+            List<LoanTransaction> events = new ArrayList<>();
+            spillLock.lock();
+            try {
+                spillOut.close();
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile)))) {
+                    while (true) {
+                        LoanTransaction.Type type;
+                        try {
+                            type = LoanTransaction.Type.values()[in.readByte()];
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        int uniqueId = in.readInt();
+                        User user = in.readBoolean() ? new User(in.readUTF()) : null;
+                        events.add(new LoanTransaction(type, uniqueId, user, in.readLong(), in.readLong()));
+                    }
+                }
+                Files.delete(spillFile);
+                spillOut = null;
+                spillPending.addAndGet(-events.size());
+            } catch (IOException e) {
+                // Whatever could not be read back is lost; start again with an empty file
+                LOGGER.log(Level.SEVERE, "Subscriber " + name + " could not read its spill file " + spillFile, e);
+                long lost = spillPending.getAndSet(0) - events.size();
+                dropped.addAndGet(lost);
+                spillLost.addAndGet(lost);
+                spillOut = null;
+            } finally {
+                spillLock.unlock();
+            }
+            return events;
+        }
+
+        // Stops accepting events and waits until the ones already accepted are delivered.
+        // If the caller is interrupted it stops waiting; the consumer still delivers them.
+        @Override
+        public void close() {
+            running = false;
+            wake();
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            subscriptions.remove(this);
+        }
+    }
+}
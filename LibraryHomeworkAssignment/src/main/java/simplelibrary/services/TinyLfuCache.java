@@ -0,0 +1,383 @@
+package main.java.simplelibrary.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Size-bounded map with W-TinyLFU eviction, used by CachingLibraryService.
+//
+// New entries go into a small LRU window. Entries pushed out of the window become
+// candidates for the main area, an SLRU split into probation and protected segments, and
+// compete with probation's least recently used entry: whichever a frequency sketch says
+// has been asked for more often stays. A burst of one-off keys therefore cannot flush
+// out the entries that are asked for again and again.
+//
+// Lookups go straight to a ConcurrentHashMap and take no lock. They note the access in
+// a small ring buffer, one per stripe of threads, that is replayed against the eviction
+// order by whoever next holds the eviction lock. When a buffer is full the note is
+// dropped, which only makes the order a little less exact. Inserts and removals take
+// the lock.
+final class TinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = -1;
+    private static final int READ_BUFFERS = 16;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFERS];
+    private final long maximumSize;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    // Eviction order and sizes, all guarded by evictionLock
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+    private final FrequencySketch sketch;
+    private long size;
+    private long windowSize;
+    private long protectedSize;
+    // Entries moved from the window to probation that have not yet faced a victim
+    private long candidates;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    TinyLfuCache(long maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (maximumSize - windowMaximum) * 4 / 5;
+        this.sketch = new FrequencySketch(maximumSize);
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (READ_BUFFERS - 1)];
+        if (buffer.offer(node)) {
+            tryMaintenance();
+        }
+        return node.value;
+    }
+
+    void put(K key, V value) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                onAccess(node);
+                return;
+            }
+            node = new Node<>(key, value);
+            data.put(key, node);
+            sketch.increment(key);
+            node.segment = WINDOW;
+            window.addLast(node);
+            windowSize++;
+            size++;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Removes the key, or only while it still maps to value if value is not null
+    boolean invalidate(K key, V value) {
+        Node<K, V> node = data.get(key);
+        if (node == null || (value != null && node.value != value)) {
+            return false;
+        }
+        evictionLock.lock();
+        try {
+            node = data.get(key);
+            if (node == null || (value != null && node.value != value)) {
+                return false;
+            }
+            data.remove(key);
+            unlink(node);
+            invalidations.increment();
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    long size() {
+        return data.size();
+    }
+
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), data.size(), maximumSize);
+    }
+
+    private void tryMaintenance() {
+        if (evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.segment == REMOVED) {
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.segment == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.segment == PROBATION) {
+            probation.remove(node);
+            node.segment = PROTECTED;
+            protectedSegment.addLast(node);
+            protectedSize++;
+            // An entry squeezed out of protected gets another chance in probation
+            while (protectedSize > protectedMaximum) {
+                Node<K, V> demoted = protectedSegment.first();
+                protectedSegment.remove(demoted);
+                protectedSize--;
+                demoted.segment = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            protectedSegment.moveToLast(node);
+        }
+    }
+
+    private void evict() {
+        while (windowSize > windowMaximum) {
+            Node<K, V> node = window.first();
+            window.remove(node);
+            windowSize--;
+            node.segment = PROBATION;
+            probation.addLast(node);
+            candidates++;
+        }
+        while (size > maximumSize) {
+            Node<K, V> victim = probation.first();
+            if (victim == null) {
+                victim = protectedSegment.first() != null ? protectedSegment.first() : window.first();
+            }
+            Node<K, V> candidate = candidates > 0 ? probation.last() : null;
+            if (candidate != null && candidate != victim && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                evict(candidate);
+            } else {
+                evict(victim);
+            }
+        }
+        candidates = 0;
+    }
+
+    private void evict(Node<K, V> node) {
+        data.remove(node.key, node);
+        unlink(node);
+        evictions.increment();
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.segment == WINDOW) {
+            window.remove(node);
+            windowSize--;
+        } else if (node.segment == PROBATION) {
+            if (node == probation.last() && candidates > 0) {
+                candidates--;
+            }
+            probation.remove(node);
+        } else if (node.segment == PROTECTED) {
+            protectedSegment.remove(node);
+            protectedSize--;
+        } else {
+            return;
+        }
+        node.segment = REMOVED;
+        size--;
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        // The rest is guarded by evictionLock
+        private int segment;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    // Doubly linked list from least to most recently used
+    private static final class AccessOrder<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        private Node<K, V> first() {
+            return head;
+        }
+
+        private Node<K, V> last() {
+            return tail;
+        }
+
+        private void addLast(Node<K, V> node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    // Accesses waiting to be replayed. Writers claim a slot by compare-and-set and give
+    // up rather than retry; only the lock holder reads.
+    private static final class ReadBuffer {
+        private static final int SIZE = 64;
+
+        private final AtomicReferenceArray<Node<?, ?>> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong written = new AtomicLong();
+        private volatile long read;
+
+        // Returns true when the buffer is filling up and should be drained
+        private boolean offer(Node<?, ?> node) {
+            long tail = written.get();
+            long pending = tail - read;
+            if (pending >= SIZE) {
+                return true;
+            }
+            if (written.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) tail & (SIZE - 1), node);
+            }
+            return pending >= SIZE / 2;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K, V> void drainTo(TinyLfuCache<K, V> cache) {
+            long head = read;
+            long tail = written.get();
+            for (; head < tail; head++) {
+                int slot = (int) head & (SIZE - 1);
+                Node<?, ?> node = slots.get(slot);
+                // Claimed but not written yet; it is picked up next time
+                if (node == null) {
+                    break;
+                }
+                slots.lazySet(slot, null);
+                cache.onAccess((Node<K, V>) node);
+            }
+            read = head;
+        }
+    }
+
+    // Count-min sketch of 4-bit counters, four per key, all halved every sampleSize
+    // increments so that old popularity fades
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        private final long[] table;
+        private final int mask;
+        private final long sampleSize;
+        private long additions;
+
+        private FrequencySketch(long maximumSize) {
+            int length = 16;
+            while (length < maximumSize && length < (1 << 30)) {
+                length <<= 1;
+            }
+            this.table = new long[length];
+            this.mask = length - 1;
+            this.sampleSize = 10 * maximumSize;
+        }
+
+        private static int spread(Object key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private static long rowHash(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return h ^ (h >>> 32);
+        }
+
+        private int frequency(Object key) {
+            int hash = spread(key);
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                long h = rowHash(hash, row);
+                int shift = (int) (h >>> 60) << 2;
+                frequency = Math.min(frequency, (int) (table[(int) h & mask] >>> shift) & 0xF);
+            }
+            return frequency;
+        }
+
+        private void increment(Object key) {
+            int hash = spread(key);
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                long h = rowHash(hash, row);
+                int index = (int) h & mask;
+                int shift = (int) (h >>> 60) << 2;
+                if (((table[index] >>> shift) & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions /= 2;
+            }
+        }
+    }
+}
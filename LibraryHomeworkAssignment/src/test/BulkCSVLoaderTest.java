@@ -0,0 +1,192 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.DVD;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.services.BulkCSVLoader;
+import main.java.simplelibrary.services.CSVLoadReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BulkCSVLoaderTest {
+    private Path csv;
+    private LibraryDataStore dataStore;
+
+    @Before
+    public void setup() throws IOException {
+        csv = Files.createTempFile("inventory", ".csv");
+        dataStore = new LibraryDataStore();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+    }
+
+    @Test
+    public void testQuotedTitlesAndLineEndings() throws IOException {
+        write("UniqueID,ItemID,Type,Title\r\n"
+                + "1,5,DVD,Pi\r\n"
+                + "2,9,Book,\"Structure and Interpretation of Computer Programs, 2nd Edition\"\n"
+                + "3,10,Book,\"The \"\"Dragon\"\" Book\"\n"
+                + "4,11,CD,\"Line one\nline two\"\n"
+                + "\n"
+                + "5,12,VHS,Caf\u00e9");
+
+        CSVLoadReport report = BulkCSVLoader.load(dataStore, csv, 2);
+
+        assertEquals(5, report.getLoadedCount());
+        assertTrue(report.getRejectedRows().isEmpty());
+        assertTrue(dataStore.getItems().get(1) instanceof DVD);
+        assertEquals("Structure and Interpretation of Computer Programs, 2nd Edition", dataStore.getItems().get(2).getTitle());
+        assertEquals("The \"Dragon\" Book", dataStore.getItems().get(3).getTitle());
+        assertEquals("Line one\nline two", dataStore.getItems().get(4).getTitle());
+        assertEquals("Caf\u00e9", dataStore.getItems().get(5).getTitle());
+        assertEquals(12, dataStore.getItems().get(5).getItemId());
+    }
+
+    @Test
+    public void testRejectedRowsAreReportedWithLineNumbers() throws IOException {
+        write("UniqueID,ItemID,Type,Title\n"
+                + "1,5,DVD,Pi\n"
+                + "2,6,LaserDisc,Tron\n"
+                + "3,7,Book,Unquoted, with a comma\n"
+                + "x,8,Book,Bad Id\n"
+                + "1,9,CD,Duplicate\n"
+                + "6,10,Book,\"Multi\nline\"\n"
+                + "7,11,Book,\"Oops\"trailing\n"
+                + "8,12,Book,Fine\n");
+
+        CSVLoadReport report = BulkCSVLoader.load(dataStore, csv, 1);
+
+        assertEquals(3, report.getLoadedCount());
+        List<CSVLoadReport.RejectedRow> rejected = report.getRejectedRows();
+        assertEquals(5, rejected.size());
+        // The later row for UniqueID 1 replaces the earlier one
+        assertEquals(2, rejected.get(0).getLineNumber());
+        assertTrue(rejected.get(0).getReason().contains("line 6"));
+        assertEquals(3, rejected.get(1).getLineNumber());
+        assertTrue(rejected.get(1).getReason().contains("LaserDisc"));
+        assertEquals(4, rejected.get(2).getLineNumber());
+        assertEquals(5, rejected.get(3).getLineNumber());
+        assertEquals(9, rejected.get(4).getLineNumber());
+        assertEquals("Duplicate", dataStore.getItems().get(1).getTitle());
+        assertEquals("Fine", dataStore.getItems().get(8).getTitle());
+    }
+
+    @Test
+    public void testParallelLoadOfManyChunksMatchesRowCount() throws IOException {
+        int rows = 200_000;
+        StringBuilder content = new StringBuilder("UniqueID,ItemID,Type,Title\n");
+        for (int uniqueId = 1; uniqueId <= rows; uniqueId++) {
+            if (uniqueId % 1000 == 0) {
+                content.append(uniqueId).append(',').append(uniqueId / 3).append(",Book,\"Volume, part\n").append(uniqueId).append("\"\n");
+            } else {
+                content.append(uniqueId).append(',').append(uniqueId / 3).append(",DVD,Title ").append(uniqueId % 5000).append('\n');
+            }
+        }
+        write(content.toString());
+
+        List<CSVLoadReport.RejectedRow> rejected = new ArrayList<>();
+        LibraryDataStore loaded = BulkCSVLoader.loadNewStore(csv, 4, rejected);
+
+        assertTrue(rejected.isEmpty());
+        assertEquals(rows, loaded.getItems().size());
+        Item quoted = loaded.getItems().get(150_000);
+        assertEquals("Volume, part\n150000", quoted.getTitle());
+        assertEquals("Title 4999", loaded.getItems().get(199_999).getTitle());
+    }
+
+    @Test
+    public void testLastRowWinsForDuplicatesInDifferentChunks() throws IOException {
+        int rows = 100_000;
+        StringBuilder content = new StringBuilder("UniqueID,ItemID,Type,Title\n");
+        for (int uniqueId = 1; uniqueId <= rows; uniqueId++) {
+            content.append(uniqueId).append(',').append(uniqueId).append(",Book,Title ").append(uniqueId).append('\n');
+        }
+        // Near the end, so in a later chunk than the rows they repeat
+        content.append("7,7,DVD,Replacement\n");
+        content.append("99999,99999,CD,Also replaced\n");
+        content.append("7,7,VHS,Last\n");
+        content.append(rows + 1).append(",1,Book,From the file\n");
+        write(content.toString());
+
+        for (int parallelism : new int[]{1, 4}) {
+            dataStore = new LibraryDataStore();
+            dataStore.addItem(new DVD(rows + 1, 1, "Already in the store"));
+            CSVLoadReport report = BulkCSVLoader.load(dataStore, csv, parallelism);
+
+            assertEquals(rows + 1, report.getLoadedCount());
+            assertEquals(rows + 1, dataStore.getItems().size());
+            assertEquals("Last", dataStore.getItem(7).getTitle());
+            assertEquals("Also replaced", dataStore.getItem(99_999).getTitle());
+            assertEquals("From the file", dataStore.getItem(rows + 1).getTitle());
+            List<CSVLoadReport.RejectedRow> rejected = report.getRejectedRows();
+            assertEquals(3, rejected.size());
+            assertEquals(8, rejected.get(0).getLineNumber());
+            assertEquals(100_000, rejected.get(1).getLineNumber());
+            assertEquals(rows + 2, rejected.get(2).getLineNumber());
+            assertTrue(rejected.get(2).getReason().contains("line " + (rows + 4)));
+        }
+    }
+
+    @Test
+    public void testRejectionsNameTheInsertedRowWhenItIsTheLast() throws IOException {
+        StringBuilder content = new StringBuilder("UniqueID,ItemID,Type,Title\n");
+        content.append("7,7,DVD,Early\n");
+        for (int uniqueId = 1; uniqueId <= 100_000; uniqueId++) {
+            content.append(uniqueId).append(',').append(uniqueId).append(",Book,Title ").append(uniqueId).append('\n');
+        }
+        content.append("7,7,VHS,Last\n");
+        write(content.toString());
+
+        // The first chunk waits at UniqueID 7 until the last chunk has inserted it, so the
+        // earlier rows become the duplicates
+        CountDownLatch lastInserted = new CountDownLatch(1);
+        dataStore = new LibraryDataStore() {
+            @Override
+            public boolean addItemIfAbsent(Item item) {
+                if (item.getUniqueId() != 7) {
+                    return super.addItemIfAbsent(item);
+                }
+                if (item.getTitle().equals("Last")) {
+                    boolean added = super.addItemIfAbsent(item);
+                    lastInserted.countDown();
+                    return added;
+                }
+                try {
+                    assertTrue(lastInserted.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return super.addItemIfAbsent(item);
+            }
+        };
+        CSVLoadReport report = BulkCSVLoader.load(dataStore, csv, 4);
+
+        assertEquals("Last", dataStore.getItem(7).getTitle());
+        List<CSVLoadReport.RejectedRow> rejected = report.getRejectedRows();
+        assertEquals(2, rejected.size());
+        assertEquals(2, rejected.get(0).getLineNumber());
+        assertEquals(9, rejected.get(1).getLineNumber());
+        for (CSVLoadReport.RejectedRow row : rejected) {
+            assertTrue(row.getReason(), row.getReason().endsWith("line 100003 is kept"));
+        }
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(csv, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,157 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.CacheStats;
+import main.java.simplelibrary.services.CachingLibraryService;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class CachingLibraryServiceTest {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+
+    private LibraryDataStore dataStore;
+    private LibraryService libraryService;
+    private CachingLibraryService cache;
+    private Level previousLevel;
+
+    @Before
+    public void setup() throws IOException {
+        previousLevel = SERVICE_LOGGER.getLevel();
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        libraryService = new LibraryService(dataStore);
+        cache = new CachingLibraryService(libraryService, 100);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+        SERVICE_LOGGER.setLevel(previousLevel);
+    }
+
+    @Test
+    public void testLoansInvalidateCachedAnswers() {
+        User user = new User("CacheUser");
+        assertTrue(cache.isAvailable(1));
+        assertTrue(cache.isAvailable(1));
+        assertTrue(cache.getBorrowedItems(user).isEmpty());
+        assertEquals(1, cache.getAvailabilityStats().getHitCount());
+
+        // Made on the service directly, so only the audit stream tells the cache
+        assertTrue(libraryService.borrowItem(1, user));
+        assertFalse(cache.isAvailable(1));
+        assertEquals(1, cache.getBorrowedItems(user).size());
+        assertEquals(1, cache.getBorrowedItems(user).size());
+
+        assertTrue(cache.returnItem(1, user));
+        assertTrue(cache.isAvailable(1));
+        assertTrue(cache.getBorrowedItems(user).isEmpty());
+        assertEquals(2, cache.getAvailabilityStats().getInvalidationCount());
+        assertEquals(2, cache.getBorrowedItemsStats().getInvalidationCount());
+    }
+
+    @Test
+    public void testUnknownItemsAreNotCached() {
+        assertFalse(cache.isAvailable(1000));
+        dataStore.addItem(new Book(1000, 1000, "Catalogued Later"));
+        assertTrue(cache.isAvailable(1000));
+        assertEquals(1, cache.getAvailabilityStats().getSize());
+    }
+
+    @Test
+    public void testFrequentlyReadItemsSurviveAScan() {
+        LibraryDataStore large = new LibraryDataStore();
+        for (int uniqueId = 1; uniqueId <= 10_000; uniqueId++) {
+            large.addItem(new Book(uniqueId, uniqueId, "Title " + uniqueId));
+        }
+        CachingLibraryService bounded = new CachingLibraryService(new LibraryService(large), 100);
+        for (int round = 0; round < 20; round++) {
+            for (int uniqueId = 1; uniqueId <= 50; uniqueId++) {
+                bounded.isAvailable(uniqueId);
+            }
+        }
+        // Each of these is read once, which should not push out the popular items
+        for (int uniqueId = 1_000; uniqueId < 10_000; uniqueId++) {
+            bounded.isAvailable(uniqueId);
+        }
+        long hitsBefore = bounded.getAvailabilityStats().getHitCount();
+        for (int uniqueId = 1; uniqueId <= 50; uniqueId++) {
+            bounded.isAvailable(uniqueId);
+        }
+        CacheStats stats = bounded.getAvailabilityStats();
+        assertTrue(stats.getSize() <= 100);
+        assertTrue(stats.getEvictionCount() > 0);
+        assertTrue("Popular items were evicted: " + stats, stats.getHitCount() - hitsBefore >= 45);
+    }
+
+    @Test
+    public void testConcurrentReadersNeverKeepStaleAnswers() throws InterruptedException {
+        int writers = 2;
+        int readers = 2;
+        List<User> users = new ArrayList<>();
+        for (int u = 0; u < writers; u++) {
+            users.add(new User("Writer" + u));
+        }
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < writers + readers; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    Random random = new Random(thread);
+                    if (thread < writers) {
+                        for (int i = 0; i < 20_000; i++) {
+                            int uniqueId = 1 + random.nextInt(20);
+                            if (!libraryService.borrowItem(uniqueId, users.get(thread))) {
+                                libraryService.returnItem(uniqueId, users.get(thread));
+                            }
+                        }
+                        writersDone.countDown();
+                    } else {
+                        while (writersDone.getCount() > 0) {
+                            cache.isAvailable(1 + random.nextInt(20));
+                            cache.getBorrowedItems(users.get(random.nextInt(writers)));
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Threads failed: " + errors, errors.isEmpty());
+
+        for (int uniqueId = 1; uniqueId <= 20; uniqueId++) {
+            assertEquals("Item " + uniqueId, libraryService.isAvailable(uniqueId), cache.isAvailable(uniqueId));
+        }
+        for (User user : users) {
+            List<Item> expected = libraryService.getBorrowedItems(user);
+            List<Item> cached = cache.getBorrowedItems(user);
+            assertEquals(expected.size(), cached.size());
+            assertTrue(cached.containsAll(expected));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BatchMode;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.Hold;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class HoldQueueTest {
+    // "Pi" has three copies: uniqueIds 1, 7 and 12
+    private static final int PI = 5;
+
+    private LibraryDataStore dataStore;
+    private LibraryService libraryService;
+    private User alice;
+
+    @Before
+    public void setup() throws IOException {
+        dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        libraryService = new LibraryService(dataStore);
+        alice = new User("Alice");
+    }
+
+    private void borrowAllCopies() {
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(libraryService.borrowAnyCopy(PI, alice));
+        }
+    }
+
+    @Test
+    public void testReturnedCopyGoesStraightToTheHold() throws Exception {
+        User bob = new User("Bob");
+        Hold immediate = libraryService.placeHold(PI, bob);
+        assertEquals(Hold.Status.FULFILLED, immediate.getStatus());
+        assertTrue(libraryService.returnItem(immediate.getFuture().get().getUniqueId(), bob));
+
+        borrowAllCopies();
+        Hold hold = libraryService.placeHold(PI, bob);
+        assertFalse(hold.getFuture().isDone());
+        assertEquals(1, libraryService.getHoldCount(PI));
+
+        assertTrue(libraryService.returnItem(7, alice));
+        Item copy = hold.getFuture().get(1, TimeUnit.SECONDS);
+        assertEquals(7, copy.getUniqueId());
+        assertEquals(Hold.Status.FULFILLED, hold.getStatus());
+        assertEquals(bob, libraryService.getBorrower(7));
+        assertEquals(0, libraryService.getAvailableCopyCount(PI));
+        assertTrue(libraryService.getBorrowedItems(bob).contains(copy));
+        assertFalse(libraryService.getBorrowedItems(alice).contains(copy));
+        assertEquals(0, libraryService.getHoldCount(PI));
+
+        assertNull(libraryService.placeHold(999, bob));
+    }
+
+    @Test
+    public void testHoldsAreServedInOrderAndCanBeCancelled() throws Exception {
+        borrowAllCopies();
+        Hold first = libraryService.placeHold(PI, new User("First"));
+        Hold cancelled = libraryService.placeHold(PI, new User("Second"));
+        Hold third = libraryService.placeHold(PI, new User("Third"));
+        assertTrue(cancelled.cancel());
+        assertTrue(cancelled.getFuture().isCancelled());
+        // Cancelling the future handed out does not affect the queue
+        third.getFuture().cancel(false);
+        assertEquals(Hold.Status.WAITING, third.getStatus());
+
+        assertTrue(libraryService.returnItem(1, alice));
+        assertTrue(libraryService.returnItems(new int[]{12}, alice, BatchMode.BEST_EFFORT).isAllSucceeded());
+        assertEquals(1, first.getFuture().get(1, TimeUnit.SECONDS).getUniqueId());
+        assertEquals(Hold.Status.FULFILLED, third.getStatus());
+        assertEquals("Third", libraryService.getBorrower(12).getUsername());
+        assertFalse(cancelled.cancel());
+    }
+
+    @Test
+    public void testExpiredHoldsAreSkipped() throws Exception {
+        borrowAllCopies();
+        Hold expired = libraryService.placeHold(PI, new User("Late"), Duration.ZERO);
+        Hold swept = libraryService.placeHold(PI, new User("Later"), Duration.ZERO);
+        assertEquals(2, libraryService.expireHolds());
+        assertEquals(Hold.Status.EXPIRED, expired.getStatus());
+        try {
+            swept.getFuture().get();
+            fail("Expected the hold to have expired");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        libraryService.placeHold(PI, new User("Lapsed"), Duration.ZERO);
+        assertTrue(libraryService.returnItem(1, alice));
+        assertTrue(libraryService.isAvailable(1));
+    }
+
+    @Test
+    public void testEveryHolderGetsACopyOnce() throws Exception {
+        borrowAllCopies();
+        int holders = 60;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch served = new CountDownLatch(holders);
+        List<Future<Hold>> holds = new ArrayList<>();
+        for (int i = 0; i < holders; i++) {
+            User user = new User("Holder" + i);
+            holds.add(executor.submit(() -> {
+                Hold hold = libraryService.placeHold(PI, user);
+                // Each holder gives the copy straight back, passing it down the queue
+                hold.getFuture().thenAccept(item -> {
+                    served.countDown();
+                    assertTrue(libraryService.returnItem(item.getUniqueId(), user));
+                });
+                return hold;
+            }));
+        }
+        for (Future<Hold> hold : holds) {
+            hold.get();
+        }
+        for (int uniqueId : new int[]{1, 7, 12}) {
+            assertTrue(libraryService.returnItem(uniqueId, alice));
+        }
+        assertTrue(served.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (Future<Hold> hold : holds) {
+            assertEquals(Hold.Status.FULFILLED, hold.get().getStatus());
+        }
+        assertEquals(3, libraryService.getAvailableCopyCount(PI));
+        assertEquals(0, dataStore.activeLoanCount());
+    }
+}
@@ -0,0 +1,110 @@
+package test;
+
+import main.java.simplelibrary.data.IntItemMap;
+import main.java.simplelibrary.data.ItemStoreBackend;
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.DVD;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class IntItemMapTest {
+
+    @Test
+    public void testBehavesLikeConcurrentHashMap() {
+        IntItemMap map = new IntItemMap();
+        Map<Integer, Item> expected = new ConcurrentHashMap<>();
+        // Includes 0 and negative keys, and enough entries to force several rehashes
+        for (int key = -500; key < 20_000; key += 3) {
+            Item item = new Book(key, key / 4, "Title " + key);
+            assertEquals(expected.put(key, item), map.put(key, item));
+        }
+        for (int key = -500; key < 20_000; key += 9) {
+            assertEquals(expected.remove(key), map.remove(key));
+        }
+        Item replacement = new DVD(3, 0, "Replacement");
+        assertEquals(expected.putIfAbsent(4, replacement), map.putIfAbsent(4, replacement));
+        assertEquals(expected.putIfAbsent(7, replacement), map.putIfAbsent(7, replacement));
+        assertEquals(expected.put(-500, replacement), map.put(-500, replacement));
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, new HashMap<>(map));
+        for (int key = -501; key < 20_001; key++) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.get(key), map.get(Integer.valueOf(key)));
+        }
+        assertNull(map.get("1"));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        IntItemMap map = new IntItemMap(100);
+        for (int key = 0; key < 100; key++) {
+            map.put(key, new Book(key, key, "Title"));
+        }
+        for (Iterator<Item> values = map.values().iterator(); values.hasNext(); ) {
+            if (values.next().getUniqueId() % 2 == 0) {
+                values.remove();
+            }
+        }
+        assertEquals(50, map.size());
+        assertNull(map.get(10));
+        assertNotNull(map.get(11));
+    }
+
+    @Test
+    public void testParallelStreamVisitsEveryItemOnce() {
+        IntItemMap map = new IntItemMap();
+        for (int key = 0; key < 50_000; key++) {
+            map.put(key, new Book(key, key, "Title"));
+        }
+        for (int key = 0; key < 50_000; key += 7) {
+            map.remove(key);
+        }
+        int[] expected = map.values().stream().mapToInt(Item::getUniqueId).sorted().toArray();
+        assertEquals(map.size(), expected.length);
+        assertArrayEquals(expected, map.values().parallelStream().mapToInt(Item::getUniqueId).sorted().toArray());
+    }
+
+    @Test
+    public void testRemoveItemOnlyRemovesThatInstance() {
+        for (ItemStoreBackend backend : ItemStoreBackend.values()) {
+            LibraryDataStore dataStore = new LibraryDataStore(16, backend);
+            Item stored = new Book(5, 1, "Stored");
+            dataStore.addItem(stored);
+
+            assertFalse(dataStore.removeItem(new Book(5, 1, "Same uniqueId")));
+            assertSame(stored, dataStore.getItem(5));
+            assertTrue(dataStore.removeItem(stored));
+            assertNull(dataStore.getItem(5));
+            assertFalse(dataStore.removeItem(stored));
+        }
+    }
+
+    @Test
+    public void testLibraryServiceOnIntMapBackend() throws IOException {
+        LibraryDataStore dataStore = new LibraryDataStore(16, ItemStoreBackend.INT_MAP);
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        assertTrue(dataStore.getItems() instanceof IntItemMap);
+        LibraryService libraryService = new LibraryService(dataStore);
+
+        User user = new User("TestUser");
+        assertTrue(libraryService.borrowItem(4, user));
+        assertFalse(libraryService.isAvailable(4));
+        assertEquals(1, libraryService.getBorrowedItems(user).size());
+        assertTrue(libraryService.returnItem(4, user));
+        assertEquals(dataStore.getItems().size(), libraryService.getCurrentInventory().size());
+        assertEquals(dataStore.getItems().size(), libraryService.getAnalytics().getCopyCount());
+    }
+}
@@ -0,0 +1,83 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.http.LibraryHttpServer;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.Assert.*;
+
+public class LibraryHttpServerTest {
+    private LibraryService libraryService;
+    private LibraryHttpServer server;
+    private HttpClient client;
+
+    @Before
+    public void setup() throws IOException {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        libraryService = new LibraryService(dataStore);
+        server = new LibraryHttpServer(libraryService, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testBorrowAndReturnOverHttp() throws Exception {
+        assertEquals("{\"uniqueId\":1,\"available\":true}", send("GET", "/items/1/available", null).body());
+
+        assertEquals(200, send("POST", "/items/1/borrow?user=Alice", null).statusCode());
+        assertEquals(409, send("POST", "/items/1/borrow?user=Bob", null).statusCode());
+        assertEquals("Alice", libraryService.getBorrower(1).getUsername());
+        assertEquals(409, send("POST", "/items/1/return?user=Bob", null).statusCode());
+        assertEquals(200, send("POST", "/items/1/return?user=Alice", null).statusCode());
+        assertTrue(libraryService.isAvailable(1));
+    }
+
+    @Test
+    public void testBatchRequests() throws Exception {
+        HttpResponse<String> response = send("POST", "/batch/borrow?user=Alice", "1,2 999");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith("{\"succeeded\":2,"));
+        assertTrue(response.body().contains("{\"uniqueId\":999,\"status\":\"NOT_FOUND\"}"));
+
+        response = send("POST", "/batch/return?user=Alice&mode=ALL_OR_NOTHING", "1,2");
+        assertTrue(response.body().startsWith("{\"succeeded\":2,"));
+        assertTrue(libraryService.isAvailable(2));
+    }
+
+    @Test
+    public void testBadRequests() throws Exception {
+        assertEquals(404, send("GET", "/items/999/available", null).statusCode());
+        assertEquals(400, send("GET", "/items/abc/available", null).statusCode());
+        assertEquals(400, send("POST", "/items/1/borrow", null).statusCode());
+        assertEquals(405, send("GET", "/items/1/borrow?user=Alice", null).statusCode());
+        assertEquals(404, send("GET", "/nothing", null).statusCode());
+        assertEquals(200, send("GET", "/inventory", null).statusCode());
+        assertEquals("[\"Java Concurrency In Practice\"]", send("GET", "/search?q=java+conc", null).body());
+        assertEquals(400, send("GET", "/search?q=pi&limit=many", null).statusCode());
+        assertEquals("[]", send("GET", "/overdue", null).body());
+    }
+}
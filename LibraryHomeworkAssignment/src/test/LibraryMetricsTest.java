@@ -0,0 +1,138 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BatchMode;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LatencyHistogram;
+import main.java.simplelibrary.services.LibraryClock;
+import main.java.simplelibrary.services.LibraryMetrics;
+import main.java.simplelibrary.services.LibraryMetrics.Operation;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class LibraryMetricsTest {
+    private LibraryDataStore dataStore;
+    private LibraryClock clock;
+    private LibraryService libraryService;
+
+    @Before
+    public void setup() throws IOException {
+        dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        clock = new LibraryClock(Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), ZoneOffset.UTC));
+        libraryService = new LibraryService(dataStore, 16, null, clock);
+    }
+
+    @Test
+    public void testOperationsAndGaugesAreRecorded() {
+        User user = new User("Measured");
+        int items = dataStore.getItems().size();
+        assertTrue(libraryService.borrowItem(1, user));
+        assertFalse(libraryService.borrowItem(1, user));
+        assertFalse(libraryService.borrowItem(999, user));
+        assertTrue(libraryService.borrowItem(2, user));
+        assertTrue(libraryService.updateDueDate(2, clock.today().minusDays(3)));
+        assertTrue(libraryService.returnItem(1, user));
+        assertFalse(libraryService.isAvailable(2));
+        assertFalse(libraryService.isAvailable(999));
+        libraryService.returnItems(new int[]{2, 3}, user, BatchMode.BEST_EFFORT);
+        libraryService.borrowItems(new int[]{3}, user, BatchMode.ALL_OR_NOTHING);
+        libraryService.getOverdueItems();
+
+        LibraryMetrics.Snapshot snapshot = libraryService.getMetricsSnapshot();
+        assertEquals(4, snapshot.get(Operation.BORROW).getCalls());
+        assertEquals(2, snapshot.get(Operation.BORROW).getFailures());
+        assertEquals(1, snapshot.get(Operation.RETURN).getSuccesses());
+        assertEquals(1, snapshot.get(Operation.RENEW).getSuccesses());
+        assertEquals(1, snapshot.get(Operation.IS_AVAILABLE).getFailures());
+        assertEquals(1, snapshot.get(Operation.BATCH_RETURN).getFailures());
+        assertEquals(1, snapshot.get(Operation.BATCH_BORROW).getSuccesses());
+        assertEquals(1, snapshot.get(Operation.GET_OVERDUE_ITEMS).getSuccesses());
+        assertTrue(snapshot.get(Operation.BORROW).getMaxNanos() >= snapshot.get(Operation.BORROW).getP50Nanos());
+
+        assertEquals(1, snapshot.getActiveLoans());
+        assertEquals(items - 1, snapshot.getItemsOnShelf());
+        assertEquals(0, snapshot.getOverdueLoans());
+
+        assertTrue(libraryService.updateDueDate(3, clock.today().minusDays(1)));
+        assertEquals(1, libraryService.getMetricsSnapshot().getOverdueLoans());
+    }
+
+    @Test
+    public void testMetricsArePublishedOverJmx() throws Exception {
+        User user = new User("Jmx");
+        assertTrue(libraryService.borrowItem(1, user));
+        ObjectName name = libraryService.registerMetricsMBean("metrics-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(1L, server.getAttribute(name, "ActiveLoans"));
+            assertEquals((long) dataStore.getItems().size() - 1, server.getAttribute(name, "ItemsOnShelf"));
+            // Maps come through JMX as open-type tabular data
+            assertNotNull(server.getAttribute(name, "Calls"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testEveryCallIsCountedButOnlySomeAreTimed() {
+        for (int i = 0; i < 10_000; i++) {
+            libraryService.isAvailable(1);
+        }
+        LibraryMetrics metrics = libraryService.getMetrics();
+        long timed = metrics.getLatency(Operation.IS_AVAILABLE).getCount();
+        assertEquals(10_000, metrics.getCalls(Operation.IS_AVAILABLE));
+        assertTrue(timed > 0 && timed < 10_000);
+    }
+
+    @Test
+    public void testDisabledMetricsRecordNothing() {
+        LibraryService unmeasured = new LibraryService(dataStore, 16, null, clock, LibraryMetrics.disabled());
+        assertTrue(unmeasured.borrowItem(1, new User("Quiet")));
+        assertEquals(0, unmeasured.getMetrics().getCalls(Operation.BORROW));
+        assertEquals(1, unmeasured.getMetricsSnapshot().getActiveLoans());
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        // Buckets are within 12.5% of the value they hold
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125);
+        long p99 = histogram.getPercentileNanos(99);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000);
+    }
+
+    @Test
+    public void testHistogramsMerge() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        for (int i = 1; i <= 500; i++) {
+            first.record(i * 1000L);
+            second.record((i + 500) * 1000L);
+        }
+        first.add(second);
+        assertEquals(1000, first.getCount());
+        assertEquals(1_000_000, first.getMaxNanos());
+        assertEquals(500_500, first.getMeanNanos());
+        long p50 = first.getPercentileNanos(50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125);
+    }
+}
@@ -0,0 +1,140 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.DVD;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.Hold;
+import main.java.simplelibrary.services.LibraryNetwork;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LibraryNetworkTest {
+    private LibraryNetwork network;
+    private LibraryDataStore central;
+    private LibraryDataStore north;
+
+    @Before
+    public void setup() throws IOException {
+        central = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(central, "src/main/resources/inventory.csv");
+        north = new LibraryDataStore();
+        north.addItem(new Book(101, 20, "Structure and Interpretation of Computer Programs"));
+        north.addItem(new DVD(102, 5, "Pi"));
+
+        network = new LibraryNetwork();
+        network.addBranch("central", new LibraryService(central));
+        network.addBranch("north", new LibraryService(north));
+    }
+
+    @Test
+    public void testOperationsAreRoutedToTheOwningBranch() {
+        User user = new User("Reader");
+        assertEquals("central", network.branchOf(1));
+        assertEquals("north", network.branchOf(101));
+        assertNull(network.branchOf(999));
+
+        assertTrue(network.borrowItem(101, user));
+        assertFalse(network.isAvailable(101));
+        assertEquals(user, north.getBorrower(101));
+        assertTrue(network.borrowItem(1, user));
+        assertEquals(2, network.getBorrowedItems(user).size());
+        assertTrue(network.returnItem(101, user));
+        assertFalse(network.borrowItem(999, user));
+    }
+
+    @Test
+    public void testTransferMovesTheCopyBetweenBranches() {
+        Item before = central.getItem(4);
+        assertTrue(network.transferItem(4, "north"));
+        assertNull(central.getItem(4));
+        assertEquals("north", network.branchOf(4));
+        assertTrue(north.availableCopies("The Pragmatic Programmer").stream().anyMatch(item -> item.getUniqueId() == 4));
+        assertFalse(central.availableCopies("The Pragmatic Programmer").stream().anyMatch(item -> item.getUniqueId() == 4));
+
+        // The old instance is retired for anyone still holding it
+        assertNull(before.tryBorrow(new User("Stale"), 0L));
+
+        User user = new User("Reader");
+        assertTrue(network.borrowItem(4, user));
+        // Copies on loan stay where they are
+        assertFalse(network.transferItem(4, "central"));
+        assertFalse(network.transferItem(101, "north"));
+    }
+
+    @Test
+    public void testHoldForPickupArrivesOnLoan() {
+        User user = new User("Collector");
+        assertTrue(network.holdForPickup(5, "north", user));
+        assertEquals(user, north.getBorrower(5));
+        assertEquals(1, north.activeLoanCount());
+        assertEquals(0, central.activeLoanCount());
+        assertFalse(network.borrowItem(5, new User("Other")));
+        assertTrue(network.returnItem(5, user));
+        assertTrue(network.isAvailable(5));
+    }
+
+    @Test
+    public void testTransferredCopyServesAWaitingHold() {
+        LibraryService northService = network.getBranch("north");
+        assertTrue(network.borrowItem(102, new User("Reader")));
+        User waiting = new User("Waiting");
+        Hold hold = northService.placeHold(5, waiting);
+        assertEquals(Hold.Status.WAITING, hold.getStatus());
+
+        assertTrue(network.transferItem(1, "north"));
+        assertEquals(Hold.Status.FULFILLED, hold.getStatus());
+        assertEquals(1, hold.getFuture().join().getUniqueId());
+        assertEquals(waiting, north.getBorrower(1));
+        assertEquals(0, northService.getHoldCount(5));
+    }
+
+    @Test
+    public void testItemIdLeavesTheCatalogueWithItsLastCopy() {
+        LibraryService centralService = network.getBranch("central");
+        assertTrue(network.transferItem(4, "north"));
+        assertFalse(central.isCatalogued(2));
+        assertNull(centralService.placeHold(2, new User("Reader")));
+        assertTrue(north.isCatalogued(2));
+
+        // A copy on loan keeps its itemId catalogued after the others leave
+        assertTrue(network.borrowItem(8, new User("Reader")));
+        assertTrue(network.transferItem(6, "north"));
+        assertTrue(network.transferItem(11, "north"));
+        assertTrue(central.isCatalogued(4));
+        assertNotNull(centralService.placeHold(4, new User("Waiting")));
+    }
+
+    @Test
+    public void testGlobalQueriesCombineEveryBranch() {
+        List<String> inventory = network.getInventory();
+        assertTrue(inventory.contains("Structure and Interpretation of Computer Programs"));
+        assertTrue(inventory.contains("Java Concurrency In Practice"));
+        assertEquals(inventory.size(), new HashSet<>(inventory).size());
+
+        User user = new User("Late");
+        assertTrue(network.borrowItem(1, user));
+        assertTrue(network.borrowItem(102, user));
+        assertTrue(network.borrowItem(3, user));
+        network.getBranch("central").updateDueDate(1, LocalDate.now().minusDays(3));
+        network.getBranch("north").updateDueDate(102, LocalDate.now().minusDays(5));
+        network.getBranch("central").updateDueDate(3, LocalDate.now().minusDays(1));
+
+        List<Integer> overdue = new ArrayList<>();
+        for (Item item : network.getOverdueItems()) {
+            overdue.add(item.getUniqueId());
+        }
+        assertEquals(List.of(102, 1, 3), overdue);
+    }
+}
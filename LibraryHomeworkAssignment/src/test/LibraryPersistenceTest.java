@@ -0,0 +1,391 @@
+package test;
+
+import main.java.simplelibrary.data.DurabilityMode;
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.data.LibraryPersistence;
+import main.java.simplelibrary.data.LibrarySnapshot;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.CD;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.LoanTransaction;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BatchMode;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.Hold;
+import main.java.simplelibrary.services.LibraryClock;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LibraryPersistenceTest {
+    private static final String CSV = "src/main/resources/inventory.csv";
+
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("library-state");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLoansSurviveRestartInEveryDurabilityMode() throws IOException {
+        for (DurabilityMode mode : DurabilityMode.values()) {
+            Path modeDirectory = directory.resolve(mode.name());
+
+            try (LibraryPersistence persistence = LibraryPersistence.open(modeDirectory, mode)) {
+                LibraryDataStore dataStore = loadCatalogue(persistence);
+                LibraryService libraryService = new LibraryService(dataStore, 16, persistence.getJournal());
+
+                User alice = new User("Alice");
+                assertTrue(libraryService.borrowItem(1, alice));
+                assertTrue(libraryService.borrowItem(4, alice));
+                assertTrue(libraryService.returnItem(1, alice));
+                assertTrue(libraryService.updateDueDate(4, LocalDate.of(2020, 1, 1)));
+            }
+
+            try (LibraryPersistence persistence = LibraryPersistence.open(modeDirectory, mode)) {
+                LibraryDataStore dataStore = loadCatalogue(persistence);
+                LibraryService libraryService = new LibraryService(dataStore);
+
+                assertTrue(mode.name(), libraryService.isAvailable(1));
+                assertFalse(mode.name(), libraryService.isAvailable(4));
+                assertEquals("Alice", libraryService.getBorrower(4).getUsername());
+                assertEquals(LocalDate.of(2020, 1, 1), dataStore.getItems().get(4).getDueDate());
+                assertEquals(1, libraryService.getOverdueItems().size());
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointThenReplayOnlyNewerSegments() throws IOException {
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.GROUP_COMMIT)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            LibraryService libraryService = new LibraryService(dataStore, 16, persistence.getJournal());
+
+            User bob = new User("Bob");
+            assertTrue(libraryService.borrowItem(2, bob));
+            persistence.checkpoint(dataStore);
+            assertTrue(libraryService.borrowItem(3, bob));
+            assertTrue(libraryService.returnItem(2, bob));
+        }
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.GROUP_COMMIT)) {
+            assertTrue(persistence.hasSnapshot());
+            LibraryDataStore dataStore = new LibraryDataStore();
+            assertEquals(2, persistence.recover(dataStore));
+
+            LibraryService libraryService = new LibraryService(dataStore);
+            assertEquals(13, dataStore.getItems().size());
+            assertTrue(libraryService.isAvailable(2));
+            assertEquals("Bob", libraryService.getBorrower(3).getUsername());
+            assertEquals(1, libraryService.getBorrowedItems(dataStore.getUsers().get("Bob")).size());
+        }
+    }
+
+    @Test
+    public void testReplayKeepsTheLoanStartInTheClocksZone() throws IOException {
+        // Already 2 May in Kiritimati (UTC+14) while it is still 1 May in most other zones
+        ZoneId zone = ZoneId.of("Pacific/Kiritimati");
+        Assume.assumeFalse(ZoneId.systemDefault().getRules().getOffset(Instant.parse("2024-05-01T12:00:00Z"))
+                .equals(zone.getRules().getOffset(Instant.parse("2024-05-01T12:00:00Z"))));
+        LibraryClock clock = new LibraryClock(Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), zone));
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            LibraryService libraryService = new LibraryService(dataStore, 16, persistence.getJournal(), clock);
+            assertTrue(libraryService.borrowItem(5, new User("Erin")));
+            assertTrue(libraryService.borrowItems(new int[]{6}, new User("Erin"), BatchMode.ALL_OR_NOTHING).isAllSucceeded());
+        }
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            assertEquals(LocalDate.of(2024, 5, 2).toEpochDay(), dataStore.getItem(5).getLoan().getBorrowedEpochDay());
+            assertEquals(LocalDate.of(2024, 5, 2).toEpochDay(), dataStore.getItem(6).getLoan().getBorrowedEpochDay());
+        }
+    }
+
+    @Test
+    public void testLoanStartSurvivesCheckpoint() throws IOException {
+        LibraryClock clock = new LibraryClock(Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), ZoneOffset.UTC));
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            LibraryService libraryService = new LibraryService(dataStore, 16, persistence.getJournal(), clock);
+            assertTrue(libraryService.borrowItem(5, new User("Erin")));
+            persistence.checkpoint(dataStore);
+        }
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = new LibraryDataStore();
+            persistence.recover(dataStore);
+            assertEquals(clock.todayEpochDay(), dataStore.getItem(5).getLoan().getBorrowedEpochDay());
+            LibraryClock later = new LibraryClock(Clock.fixed(Instant.parse("2024-05-04T12:00:00Z"), ZoneOffset.UTC));
+            assertEquals(3.0, new LibraryService(dataStore, 16, null, later).getAnalytics().getAverageOpenLoanAgeDays(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testTransfersSurviveRestart() throws IOException {
+        Path centralDirectory = directory.resolve("central");
+        Path northDirectory = directory.resolve("north");
+        try (LibraryPersistence central = LibraryPersistence.open(centralDirectory, DurabilityMode.GROUP_COMMIT);
+             LibraryPersistence north = LibraryPersistence.open(northDirectory, DurabilityMode.SYNC)) {
+            LibraryDataStore northStore = new LibraryDataStore();
+            northStore.addItem(new CD(102, 30, "Kind of Blue"));
+            north.checkpoint(northStore);
+            LibraryService centralService = new LibraryService(loadCatalogue(central), 16, central.getJournal());
+            LibraryService northService = new LibraryService(northStore, 16, north.getJournal());
+
+            assertTrue(centralService.transferItem(4, northService, null));
+            assertTrue(centralService.transferItem(5, northService, new User("Collector")));
+            assertTrue(northService.transferItem(102, centralService, null));
+        }
+
+        try (LibraryPersistence central = LibraryPersistence.open(centralDirectory, DurabilityMode.GROUP_COMMIT);
+             LibraryPersistence north = LibraryPersistence.open(northDirectory, DurabilityMode.SYNC)) {
+            LibraryDataStore centralStore = loadCatalogue(central);
+            LibraryDataStore northStore = new LibraryDataStore();
+            north.recover(northStore);
+
+            assertNull(centralStore.getItem(4));
+            assertNull(centralStore.getItem(5));
+            assertNull(northStore.getItem(102));
+            Item arrived = northStore.getItem(4);
+            assertTrue(arrived instanceof Book);
+            assertEquals(2, arrived.getItemId());
+            assertEquals("The Pragmatic Programmer", arrived.getTitle());
+            assertTrue(arrived.isAvailable());
+            assertEquals("Collector", northStore.getBorrower(5).getUsername());
+            assertEquals(1, northStore.activeLoanCount());
+            assertEquals(0, centralStore.activeLoanCount());
+            assertTrue(centralStore.getItem(102) instanceof CD);
+            assertEquals(Set.of(centralStore.getItem(102)), centralStore.availableCopies("Kind of Blue"));
+        }
+    }
+
+    @Test
+    public void testTornJournalTailIsIgnored() throws IOException {
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryService libraryService = new LibraryService(loadCatalogue(persistence), 16, persistence.getJournal());
+            assertTrue(libraryService.borrowItem(5, new User("Carol")));
+        }
+        try (Stream<Path> segments = Files.list(directory)) {
+            Path segment = segments.filter(path -> path.toString().endsWith(".log")).findFirst().get();
+            Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        }
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            assertEquals("Carol", dataStore.getBorrower(5).getUsername());
+            // Goes to a new segment, after the one with the torn tail
+            assertTrue(new LibraryService(dataStore, 16, persistence.getJournal()).borrowItem(6, new User("Carol")));
+        }
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            assertEquals("Carol", dataStore.getBorrower(5).getUsername());
+            assertEquals("Carol", dataStore.getBorrower(6).getUsername());
+        }
+    }
+
+    @Test
+    public void testCorruptRecordWithRecordsAfterItFailsRecovery() throws IOException {
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryService libraryService = new LibraryService(loadCatalogue(persistence), 16, persistence.getJournal());
+            assertTrue(libraryService.borrowItem(5, new User("Carol")));
+            assertTrue(libraryService.returnItem(5, new User("Carol")));
+        }
+        Path segment;
+        try (Stream<Path> segments = Files.list(directory)) {
+            segment = segments.filter(path -> path.toString().endsWith(".log")).findFirst().get();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        // Inside the first record's body, so its checksum no longer matches
+        bytes[6] ^= 1;
+        Files.write(segment, bytes);
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            loadCatalogue(persistence);
+            fail("Replay went past a corrupt record");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("corrupt"));
+        }
+    }
+
+    @Test
+    public void testFailedSyncWriteRollsBackTheChange() throws IOException {
+        // Writes to /dev/full fail with "No space left on device"
+        Path full = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.isWritable(full));
+
+        try (LibraryPersistence persistence = LibraryPersistence.open(directory, DurabilityMode.SYNC)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            LibraryService libraryService = new LibraryService(dataStore, 16, persistence.getJournal());
+            User alice = dataStore.getUserRegistry().register(new User("Alice"));
+            User bob = dataStore.getUserRegistry().register(new User("Bob"));
+            assertTrue(libraryService.borrowItem(4, alice));
+            Hold hold = libraryService.placeHold(2, bob);
+            assertEquals(Hold.Status.WAITING, hold.getStatus());
+
+            Files.createSymbolicLink(directory.resolve("journal-000000000002.log"), full);
+            assertEquals(2, persistence.getJournal().rotate());
+
+            try {
+                libraryService.borrowItem(5, alice);
+                fail("A borrow that could not be journaled succeeded");
+            } catch (UncheckedIOException expected) {
+            }
+            assertTrue(libraryService.isAvailable(5));
+            assertEquals(1, libraryService.getBorrowedItems(alice).size());
+            assertEquals(Arrays.asList(5), dataStore.availableCopies(3).stream().map(Item::getUniqueId).collect(Collectors.toList()));
+
+            // Handing the returned copy to the hold fails the same way
+            try {
+                libraryService.returnItem(4, alice);
+                fail("A return that could not be journaled succeeded");
+            } catch (UncheckedIOException expected) {
+            }
+            assertSame(alice, libraryService.getBorrower(4));
+            assertTrue(libraryService.getBorrowedItems(bob).isEmpty());
+            assertTrue(hold.getFuture().isCompletedExceptionally());
+        } catch (IOException expected) {
+            // Closing reports the journal failure too
+            assertTrue(expected.getMessage().contains("No space left"));
+        }
+    }
+
+    @Test
+    public void testFailedGroupCommitRollsBackTheChange() throws IOException {
+        Path full = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.isWritable(full));
+
+        // Each change is the first to reach the failing segment, so it is the flusher's
+        // write that fails and the caller finds out while waiting for durability
+        assertGroupCommitFailureRollsBack("borrow", (service, alice) -> service.borrowItem(5, alice), (service, alice) -> {
+            assertTrue(service.isAvailable(5));
+            assertEquals(1, service.getBorrowedItems(alice).size());
+        });
+        assertGroupCommitFailureRollsBack("return", (service, alice) -> service.returnItem(4, alice), (service, alice) -> {
+            assertSame(alice, service.getBorrower(4));
+            assertFalse(service.isAvailable(4));
+        });
+        assertGroupCommitFailureRollsBack("renew", (service, alice) -> service.updateDueDate(4, LocalDate.of(2030, 1, 1)), (service, alice) ->
+                assertEquals(LocalDate.now().plusDays(7), service.getItems().get(4).getDueDate()));
+        assertGroupCommitFailureRollsBack("batch", (service, alice) -> service.borrowItems(new int[]{5, 6}, alice, BatchMode.BEST_EFFORT), (service, alice) -> {
+            assertTrue(service.isAvailable(5));
+            assertTrue(service.isAvailable(6));
+            assertEquals(1, service.getBorrowedItems(alice).size());
+        });
+    }
+
+    private void assertGroupCommitFailureRollsBack(String name, BiConsumer<LibraryService, User> change,
+                                                   BiConsumer<LibraryService, User> unchanged) throws IOException {
+        Path modeDirectory = directory.resolve(name);
+        try (LibraryPersistence persistence = LibraryPersistence.open(modeDirectory, DurabilityMode.GROUP_COMMIT)) {
+            LibraryDataStore dataStore = loadCatalogue(persistence);
+            LibraryService libraryService = new LibraryService(dataStore, 16, persistence.getJournal());
+            User alice = dataStore.getUserRegistry().register(new User("Alice"));
+            assertTrue(libraryService.borrowItem(4, alice));
+            List<LoanTransaction> audited = new ArrayList<>();
+            libraryService.addAuditSink(audited::add);
+
+            Files.createSymbolicLink(modeDirectory.resolve("journal-000000000002.log"), Paths.get("/dev/full"));
+            assertEquals(2, persistence.getJournal().rotate());
+            try {
+                change.accept(libraryService, alice);
+                fail(name + " succeeded although it was never made durable");
+            } catch (UncheckedIOException expected) {
+            }
+            unchanged.accept(libraryService, alice);
+            assertTrue(name, audited.isEmpty());
+            assertEquals(name, 1, dataStore.activeLoanCount());
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("No space left"));
+        }
+    }
+
+    @Test
+    public void testBinaryCatalogueRoundTrip() throws IOException {
+        LibraryDataStore original = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(original, CSV);
+        LibraryService libraryService = new LibraryService(original);
+        User dave = new User("Dave");
+        assertTrue(libraryService.borrowItem(7, dave));
+        assertTrue(libraryService.borrowItem(11, dave));
+        assertTrue(libraryService.updateDueDate(11, LocalDate.of(2021, 6, 30)));
+
+        Path catalogue = directory.resolve("catalogue.bin");
+        LibrarySnapshot.write(catalogue, original, 42);
+        LibraryDataStore copy = LibrarySnapshot.loadNewStore(catalogue);
+
+        assertEquals(original.getItems().size(), copy.getItems().size());
+        for (Item item : original.getItems().values()) {
+            Item loaded = copy.getItems().get(item.getUniqueId());
+            assertEquals(item.getClass(), loaded.getClass());
+            assertEquals(item.getItemId(), loaded.getItemId());
+            assertEquals(item.getTitle(), loaded.getTitle());
+            assertEquals(item.getDueDate(), loaded.getDueDate());
+            assertEquals(item.getBorrowedBy() == null ? null : item.getBorrowedBy().getUsername(),
+                    loaded.getBorrowedBy() == null ? null : loaded.getBorrowedBy().getUsername());
+            assertEquals(item.getLoan() == null ? null : item.getLoan().getBorrowedEpochDay(),
+                    loaded.getLoan() == null ? null : loaded.getLoan().getBorrowedEpochDay());
+        }
+        assertTrue(copy.getItems().get(7).getLoan().hasBorrowedDate());
+        // Titles are indexed from the snapshot's title dictionary
+        assertEquals(Arrays.asList("Introduction to Algorithms"), copy.searchTitles("intro", 10, false));
+        assertEquals(original.searchTitles("pi", 10, true), copy.searchTitles("pi", 10, true));
+        assertEquals(2, copy.borrowedItems(copy.getUsers().get("Dave")).size());
+        assertEquals(1, new LibraryService(copy).getOverdueItems().size());
+        assertEquals(42, LibrarySnapshot.read(catalogue, new LibraryDataStore()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedCatalogueIsRejected() throws IOException {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, CSV);
+        Path catalogue = directory.resolve("catalogue.bin");
+        LibrarySnapshot.write(catalogue, dataStore, 1);
+
+        byte[] bytes = Files.readAllBytes(catalogue);
+        Files.write(catalogue, Arrays.copyOf(bytes, bytes.length - 10));
+        LibrarySnapshot.read(catalogue, new LibraryDataStore());
+    }
+
+    private static LibraryDataStore loadCatalogue(LibraryPersistence persistence) throws IOException {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        if (!persistence.hasSnapshot()) {
+            CSVUtility.loadItemsFromCSV(dataStore, CSV);
+        }
+        persistence.recover(dataStore);
+        return dataStore;
+    }
+}
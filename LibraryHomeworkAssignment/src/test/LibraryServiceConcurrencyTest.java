@@ -0,0 +1,228 @@
+package test;
+
+import main.java.simplelibrary.data.InventorySnapshot;
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryAnalytics;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class LibraryServiceConcurrencyTest {
+    private static final Logger LOGGER = Logger.getLogger(LibraryServiceConcurrencyTest.class.getName());
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final int ITEM_COUNT = 1024;
+
+    private LibraryDataStore dataStore;
+    private LibraryService libraryService;
+    private Level previousLevel;
+
+    @Before
+    public void setup() {
+        // The service logs every call; keep it quiet so the test measures locking, not the console
+        previousLevel = SERVICE_LOGGER.getLevel();
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+
+        dataStore = new LibraryDataStore();
+        for (int uniqueId = 1; uniqueId <= ITEM_COUNT; uniqueId++) {
+            dataStore.addItem(new Book(uniqueId, uniqueId, "Title " + uniqueId));
+        }
+        libraryService = new LibraryService(dataStore);
+    }
+
+    @After
+    public void tearDown() {
+        SERVICE_LOGGER.setLevel(previousLevel);
+    }
+
+    @Test
+    public void testEveryItemIsAvailableOrWithExactlyOneUserUnderContention() throws InterruptedException {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        int operationsPerThread = 20_000;
+
+        runConcurrently(threads, thread -> {
+            User user = new User("User" + thread);
+            Random random = new Random(thread);
+            for (int i = 0; i < operationsPerThread; i++) {
+                // A small hot range makes threads fight over the same items
+                int uniqueId = 1 + random.nextInt(64);
+                if (random.nextBoolean()) {
+                    libraryService.borrowItem(uniqueId, user);
+                } else {
+                    libraryService.returnItem(uniqueId, user);
+                }
+            }
+        });
+
+        int[] seen = new int[ITEM_COUNT + 1];
+        for (User borrower : dataStore.getUsers().values()) {
+            Set<Item> borrowed = dataStore.borrowedItems(borrower);
+            for (Item item : borrowed == null ? Set.<Item>of() : borrowed) {
+                seen[item.getUniqueId()]++;
+                assertSame(borrower, item.getBorrowedBy());
+            }
+        }
+        for (Item item : dataStore.getItems().values()) {
+            int expected = item.isAvailable() ? 0 : 1;
+            assertEquals("Item " + item.getUniqueId() + " must be with its borrower only", expected, seen[item.getUniqueId()]);
+        }
+    }
+
+    @Test
+    public void testThroughputWithDisjointItemsPerThread() throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int roundsPerThread = 50_000;
+
+        for (int threads = 1; threads <= cores; threads <<= 1) {
+            int itemsPerThread = ITEM_COUNT / threads;
+            AtomicLong failures = new AtomicLong();
+
+            long start = System.nanoTime();
+            runConcurrently(threads, thread -> {
+                User user = new User("User" + thread);
+                int firstId = 1 + thread * itemsPerThread;
+                for (int i = 0; i < roundsPerThread; i++) {
+                    int uniqueId = firstId + (i % itemsPerThread);
+                    if (!libraryService.borrowItem(uniqueId, user) || !libraryService.returnItem(uniqueId, user)) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals("Borrow/return of uncontended items must always succeed", 0, failures.get());
+            long operations = 2L * roundsPerThread * threads;
+            LOGGER.info(threads + " thread(s): " + (operations * 1_000_000_000L / Math.max(1, elapsed)) + " ops/s");
+        }
+        assertTrue(dataStore.getItems().values().stream().allMatch(Item::isAvailable));
+    }
+
+    @Test
+    public void testInventorySnapshotsStayConsistentWhileItemsAreLent() throws InterruptedException {
+        int writers = 4;
+        int readers = 2;
+        int roundsPerWriter = 20_000;
+        AtomicLong snapshotsChecked = new AtomicLong();
+        CountDownLatch writersDone = new CountDownLatch(writers);
+
+        runConcurrently(writers + readers, thread -> {
+            if (thread < writers) {
+                User user = new User("User" + thread);
+                Random random = new Random(thread);
+                for (int i = 0; i < roundsPerWriter; i++) {
+                    int uniqueId = 1 + random.nextInt(ITEM_COUNT);
+                    if (libraryService.borrowItem(uniqueId, user)) {
+                        libraryService.returnItem(uniqueId, user);
+                    }
+                }
+                writersDone.countDown();
+                return;
+            }
+            long lastVersion = -1;
+            while (writersDone.getCount() > 0) {
+                InventorySnapshot snapshot = libraryService.getInventorySnapshot();
+                assertTrue(snapshot.getVersion() >= lastVersion);
+                lastVersion = snapshot.getVersion();
+                // Every item has its own title, so a consistent snapshot lists one title per copy
+                Set<Integer> ids = new HashSet<>();
+                for (Item item : snapshot.getItems()) {
+                    assertTrue("Copy listed twice: " + item.getUniqueId(), ids.add(item.getUniqueId()));
+                }
+                assertEquals(ids.size(), snapshot.getTitles().size());
+                assertTrue(ids.size() >= ITEM_COUNT - writers);
+                snapshotsChecked.incrementAndGet();
+            }
+        });
+
+        assertTrue(snapshotsChecked.get() > 0);
+        InventorySnapshot last = libraryService.getInventorySnapshot();
+        assertEquals(ITEM_COUNT, last.getItems().size());
+        assertEquals(ITEM_COUNT, last.getTitles().size());
+        assertSame(last, libraryService.getInventorySnapshot());
+    }
+
+    @Test
+    public void testAnalyticsRunWhileItemsAreLent() throws InterruptedException {
+        int writers = 4;
+        int readers = 2;
+        int roundsPerWriter = 20_000;
+        AtomicLong reportsChecked = new AtomicLong();
+        CountDownLatch writersDone = new CountDownLatch(writers);
+
+        runConcurrently(writers + readers, thread -> {
+            if (thread < writers) {
+                User user = new User("User" + thread);
+                Random random = new Random(thread);
+                for (int i = 0; i < roundsPerWriter; i++) {
+                    int uniqueId = 1 + random.nextInt(ITEM_COUNT);
+                    if (libraryService.borrowItem(uniqueId, user)) {
+                        libraryService.returnItem(uniqueId, user);
+                    }
+                }
+                writersDone.countDown();
+                return;
+            }
+            while (writersDone.getCount() > 0) {
+                LibraryAnalytics analytics = libraryService.getAnalytics();
+                assertEquals(ITEM_COUNT, analytics.getCopyCount());
+                // Each writer holds at most one item at a time
+                assertTrue(analytics.getLoanCount() <= writers);
+                long loans = 0;
+                for (long count : analytics.getLoansByType().values()) {
+                    loans += count;
+                }
+                assertEquals(analytics.getLoanCount(), loans);
+                assertTrue(analytics.getTopOverdueBorrowers(10).isEmpty());
+                reportsChecked.incrementAndGet();
+            }
+        });
+
+        assertTrue(reportsChecked.get() > 0);
+        assertEquals(0, libraryService.getAnalytics().getLoanCount());
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+
+    private static void runConcurrently(int threads, Worker worker) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            workers.add(th);
+            th.start();
+        }
+        start.countDown();
+        for (Thread th : workers) {
+            th.join();
+        }
+        assertTrue("Worker threads failed: " + errors, errors.isEmpty());
+    }
+}
@@ -1,10 +1,18 @@
 package test;
 
+import main.java.simplelibrary.data.InventorySnapshot;
 import main.java.simplelibrary.data.LibraryDataStore;
 import main.java.simplelibrary.models.Book;
 import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.LoanTransaction;
 import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.AsyncAuditSink;
+import main.java.simplelibrary.services.BatchMode;
+import main.java.simplelibrary.services.BatchResult;
 import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryAnalytics;
+import main.java.simplelibrary.services.LibraryClock;
 import main.java.simplelibrary.services.LibraryService;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,10 +20,18 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -45,13 +61,15 @@ public class LibraryServiceTest {
         LOGGER.info("Attempted to borrow item with ID 1. Success: " + borrowResult);
         assertTrue(borrowResult);
 
-        boolean itemExists = libraryService.getItems().containsKey(1);
-        LOGGER.info("Checking if item with ID 1 still exists in inventory: " + itemExists);
-        assertFalse(itemExists);
+        boolean itemAvailable = libraryService.isAvailable(1);
+        LOGGER.info("Checking if item with ID 1 is still available: " + itemAvailable);
+        assertFalse(itemAvailable);
 
         boolean returnResult = libraryService.returnItem(1, user);
         LOGGER.info("Attempted to return item with ID 1. Success: " + returnResult);
         assertTrue(returnResult);
+        assertTrue(libraryService.isAvailable(1));
+        assertNull(libraryService.getItems().get(1).getDueDate());
 
         LOGGER.info("Finished testBorrowAndReturnItem.");
     }
@@ -68,7 +86,7 @@ public class LibraryServiceTest {
         assertTrue(libraryService.borrowItem(1, testUser));
 
         // Get the borrowed item and check its due date
-        Item borrowedItem = dataStore.getUserItems().get(testUser).iterator().next();
+        Item borrowedItem = dataStore.borrowedItems(testUser).iterator().next();
 
         LocalDate expectedDueDate = LocalDate.now().plusDays(7);
         assertEquals(expectedDueDate, borrowedItem.getDueDate());
@@ -98,28 +116,28 @@ public class LibraryServiceTest {
 
         // Let's simulate that some items are borrowed with past due dates
         User user1 = new User("user1");
-        Item item1 = dataStore.getItems().get(1); // Fetching by unique ID for demonstration
-        item1.setBorrowedBy(user1);
-        item1.setDueDate(LocalDate.now().minusDays(5)); // Setting due date 5 days ago
+        assertTrue(libraryService.borrowItem(1, user1));
+        assertTrue(libraryService.borrowItem(2, user1));
+        assertTrue(libraryService.borrowItem(3, user1)); // Not overdue
 
-        Item item2 = dataStore.getItems().get(2);
-        item2.setBorrowedBy(user1);
-        item2.setDueDate(LocalDate.now().minusDays(3)); // Setting due date 3 days ago
+        assertTrue(libraryService.updateDueDate(1, LocalDate.now().minusDays(5))); // Setting due date 5 days ago
+        assertTrue(libraryService.updateDueDate(2, LocalDate.now().minusDays(3))); // Setting due date 3 days ago
 
-        // Add these items to the user's borrowed items
-        HashSet<Item> borrowedItems = new HashSet<>();
-        borrowedItems.add(item1);
-        borrowedItems.add(item2);
-        dataStore.getUserItems().put(user1, borrowedItems);
+        Item item1 = dataStore.getItems().get(1);
+        Item item2 = dataStore.getItems().get(2);
 
         List<Item> overdueItems = libraryService.getOverdueItems();
 
         // Asserting the number of overdue items
         assertEquals(2, overdueItems.size());
 
-        // Asserting that the items are the correct overdue items
-        assertTrue(overdueItems.contains(item1));
-        assertTrue(overdueItems.contains(item2));
+        // Asserting that the items are the correct overdue items, earliest due date first
+        assertEquals(Arrays.asList(item1, item2), overdueItems);
+
+        // Returned items drop out of the overdue index
+        assertTrue(libraryService.returnItem(1, user1));
+        assertEquals(Arrays.asList(item2), libraryService.getOverdueItems());
+        assertEquals(2, libraryService.streamOverdueItems(LocalDate.now().plusDays(8)).count());
     }
 
     @Test
@@ -203,6 +221,82 @@ public class LibraryServiceTest {
         assertFalse(libraryService.isAvailable(uniqueId));
     }
 
+    @Test
+    public void testBorrowedItemCannotBeBorrowedOrReturnedByAnotherUser() {
+        User owner = new User("Owner");
+        User other = new User("Other");
+
+        assertTrue(libraryService.borrowItem(3, owner));
+        assertFalse(libraryService.borrowItem(3, other));
+        assertFalse(libraryService.returnItem(3, other));
+        assertEquals(owner, libraryService.getItems().get(3).getBorrowedBy());
+
+        assertTrue(libraryService.returnItem(3, owner));
+        assertFalse(libraryService.returnItem(3, owner));
+        assertTrue(libraryService.getBorrowedItems(owner).isEmpty());
+    }
+
+    @Test
+    public void testReturnItemAmongManyLoansAndGetBorrower() {
+        User user = new User("PowerUser");
+        for (int uniqueId = 100; uniqueId < 400; uniqueId++) {
+            dataStore.addItem(new Book(uniqueId, 100, "Bulk Copy"));
+            assertTrue(libraryService.borrowItem(uniqueId, user));
+        }
+
+        assertEquals(user, libraryService.getBorrower(250));
+        assertTrue(libraryService.returnItem(250, user));
+        assertNull(libraryService.getBorrower(250));
+        assertEquals(299, libraryService.getBorrowedItems(user).size());
+        assertFalse(dataStore.borrowedItems(user).contains(new Book(250, 100, "Bulk Copy")));
+    }
+
+    @Test
+    public void testAuditSinksReceiveCompletedTransactions() throws InterruptedException {
+        User user = new User("AuditedUser");
+        List<LoanTransaction> recorded = new ArrayList<>();
+        libraryService.addAuditSink(recorded::add);
+
+        List<LoanTransaction> written = Collections.synchronizedList(new ArrayList<>());
+        AsyncAuditSink asyncSink = new AsyncAuditSink(written::addAll, 16);
+        libraryService.addAuditSink(asyncSink);
+
+        assertTrue(libraryService.borrowItem(5, user));
+        assertFalse(libraryService.borrowItem(5, new User("Someone")));
+        assertTrue(libraryService.returnItem(5, user));
+        asyncSink.close();
+
+        assertEquals(2, recorded.size());
+        assertEquals(LoanTransaction.Type.BORROWED, recorded.get(0).getType());
+        assertEquals(LoanTransaction.Type.RETURNED, recorded.get(1).getType());
+        assertEquals(5, recorded.get(1).getUniqueId());
+        assertSame(user, recorded.get(1).getUser());
+        assertEquals(recorded, written);
+        assertEquals(0, asyncSink.getDroppedCount());
+    }
+
+    @Test
+    public void testAvailableCopyCountsAndBorrowAnyCopy() {
+        // itemId 4 is three copies of "Introduction to Algorithms": uniqueIds 6, 8 and 11
+        assertEquals(3, libraryService.getAvailableCopyCount("Introduction to Algorithms"));
+        assertEquals(3, libraryService.getAvailableCopyCount(4));
+
+        User user = new User("TestUser");
+        Item first = libraryService.borrowAnyCopy(4, user);
+        Item second = libraryService.borrowAnyCopy(4, user);
+        Item third = libraryService.borrowAnyCopy(4, user);
+        assertEquals(new HashSet<>(Arrays.asList(6, 8, 11)),
+                new HashSet<>(Arrays.asList(first.getUniqueId(), second.getUniqueId(), third.getUniqueId())));
+        assertEquals(0, libraryService.getAvailableCopyCount(4));
+        assertNull(libraryService.borrowAnyCopy(4, user));
+        assertFalse(libraryService.getInventory().contains("Introduction to Algorithms"));
+
+        assertTrue(libraryService.returnItem(first.getUniqueId(), user));
+        assertEquals(1, libraryService.getAvailableCopyCount("Introduction to Algorithms"));
+        assertTrue(libraryService.getInventory().contains("Introduction to Algorithms"));
+        assertEquals(0, libraryService.getAvailableCopyCount("No Such Title"));
+    }
+
     @Test
     public void testGetCurrentInventory() {
         List<Item> inventory = libraryService.getCurrentInventory();
@@ -228,7 +322,7 @@ public class LibraryServiceTest {
         Item borrowedItem = libraryService.getBorrowedItems(user).get(0);
         LOGGER.info("Fetched borrowed item: " + borrowedItem.getUniqueId() + " by user: " + user.getUsername());
 
-        borrowedItem.setDueDate(LocalDate.now().minusDays(10));
+        libraryService.updateDueDate(uniqueId, LocalDate.now().minusDays(10));
         LOGGER.info("Set due date of borrowed item to: " + borrowedItem.getDueDate());
 
         boolean isItemOverdue = libraryService.isOverdue(borrowedItem.getDueDate());
@@ -238,6 +332,7 @@ public class LibraryServiceTest {
             LOGGER.warning("The item is NOT overdue!");
         }
         assertTrue(isItemOverdue);
+        assertTrue(libraryService.getOverdueItems().contains(borrowedItem));
     }
 
 
@@ -282,4 +377,227 @@ public class LibraryServiceTest {
     }
 
 
+
+    @Test
+    public void testBorrowItemsAllOrNothingChangesNothingOnFailure() {
+        User holder = new User("Holder");
+        User kiosk = new User("KioskUser");
+        assertTrue(libraryService.borrowItem(3, holder));
+
+        BatchResult result = libraryService.borrowItems(new int[]{1, 2, 3, 999}, kiosk, BatchMode.ALL_OR_NOTHING);
+        assertEquals(0, result.getSucceededCount());
+        assertEquals(BatchResult.Status.ROLLED_BACK, result.getStatus(0));
+        assertEquals(BatchResult.Status.ROLLED_BACK, result.getStatus(1));
+        assertEquals(BatchResult.Status.REJECTED, result.getStatus(2));
+        assertEquals(BatchResult.Status.NOT_FOUND, result.getStatus(3));
+        assertTrue(libraryService.isAvailable(1));
+        assertTrue(libraryService.isAvailable(2));
+        assertEquals(holder, libraryService.getBorrower(3));
+
+        result = libraryService.borrowItems(new int[]{1, 2, 4}, kiosk, BatchMode.ALL_OR_NOTHING);
+        assertTrue(result.isAllSucceeded());
+        assertEquals(3, libraryService.getBorrowedItems(kiosk).size());
+    }
+
+    @Test
+    public void testBatchBestEffortReportsEachItem() {
+        User sorter = new User("SorterUser");
+        BatchResult borrowed = libraryService.borrowItems(new int[]{5, 6, 6, 7}, sorter, BatchMode.BEST_EFFORT);
+        assertEquals(3, borrowed.getSucceededCount());
+        assertEquals(BatchResult.Status.DUPLICATE, borrowed.getStatus(2));
+        assertFalse(libraryService.isAvailable(7));
+
+        assertTrue(libraryService.returnItem(6, sorter));
+        BatchResult returned = libraryService.returnItems(new int[]{5, 6, 7, 8}, sorter, BatchMode.BEST_EFFORT);
+        assertTrue(returned.isSucceeded(0));
+        assertEquals(BatchResult.Status.REJECTED, returned.getStatus(1));
+        assertTrue(returned.isSucceeded(2));
+        assertEquals(BatchResult.Status.REJECTED, returned.getStatus(3));
+        assertTrue(libraryService.getBorrowedItems(sorter).isEmpty());
+        assertEquals(dataStore.getItems().size(), libraryService.getCurrentInventory().size());
+    }
+
+    @Test
+    public void testInventorySnapshotIsAPointInTimeView() {
+        InventorySnapshot before = libraryService.getInventorySnapshot();
+        assertSame(before, libraryService.getInventorySnapshot());
+        assertTrue(before.getTitles().contains("Introduction to Algorithms"));
+
+        User user = new User("SnapshotUser");
+        libraryService.borrowAnyCopy(4, user);
+        libraryService.borrowAnyCopy(4, user);
+        libraryService.borrowAnyCopy(4, user);
+        InventorySnapshot after = libraryService.getInventorySnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(before.getItems().size() - 3, after.getItems().size());
+        assertFalse(after.getTitles().contains("Introduction to Algorithms"));
+        // The earlier snapshot still shows the shelf as it was
+        assertTrue(before.getTitles().contains("Introduction to Algorithms"));
+        assertEquals(after.getItems().size() + 3, before.getItems().size());
+    }
+
+    @Test
+    public void testSearchTitles() {
+        assertEquals(Collections.singletonList("Java Concurrency In Practice"), libraryService.searchTitles("java conc", 10, false));
+        assertEquals(Collections.singletonList("Java Concurrency In Practice"), libraryService.searchTitles("CONCURRENCY", 10, false));
+        // "Pi" is a whole word, so it ranks ahead of "Practice" and "Pragmatic"
+        List<String> results = libraryService.searchTitles("p", 10, false);
+        assertEquals("Pi", results.get(0));
+        assertTrue(results.containsAll(Arrays.asList("The Pragmatic Programmer", "Java Concurrency In Practice")));
+        assertEquals(1, libraryService.searchTitles("p", 1, false).size());
+        // A complete word must match exactly, while the last word may be a prefix
+        assertTrue(libraryService.searchTitles("programming volume ", 10, false).isEmpty());
+        assertEquals(1, libraryService.searchTitles("programming volume", 10, false).size());
+        assertTrue(libraryService.searchTitles("", 10, false).isEmpty());
+
+        User user = new User("Searcher");
+        assertTrue(libraryService.borrowItem(4, user));
+        assertTrue(libraryService.searchTitles("pragmatic", 10, true).isEmpty());
+        assertEquals(1, libraryService.searchTitles("pragmatic", 10, false).size());
+        assertTrue(libraryService.returnItem(4, user));
+        assertEquals(1, libraryService.searchTitles("pragmatic", 10, true).size());
+    }
+
+    @Test
+    public void testUsersAreIdentifiedByUsername() {
+        assertTrue(libraryService.borrowItem(2, new User("Alice")));
+        assertTrue(libraryService.borrowItem(3, new User("Alice")));
+        assertEquals(2, libraryService.getBorrowedItems(new User("Alice")).size());
+        assertTrue(libraryService.returnItem(2, new User("Alice")));
+        assertFalse(libraryService.returnItem(3, new User("Bob")));
+
+        User registered = dataStore.getUserRegistry().get("Alice");
+        assertSame(registered, dataStore.getUserRegistry().register(new User("Alice")));
+        assertSame(registered, libraryService.getBorrower(3));
+        assertSame(registered, dataStore.getUserRegistry().get(registered.getId()));
+        assertEquals(1, dataStore.getUserRegistry().size());
+        assertNull(dataStore.borrowedItems(new User("Bob")));
+    }
+
+    @Test
+    public void testDueDatesFollowTheInjectedClock() {
+        MutableClock time = new MutableClock(Instant.parse("2024-03-01T23:59:00Z"));
+        LibraryClock clock = new LibraryClock(time);
+        LibraryService service = new LibraryService(dataStore, 16, null, clock);
+        User user = new User("ClockUser");
+
+        assertTrue(service.borrowItem(2, user));
+        assertEquals(LocalDate.of(2024, 3, 8), dataStore.getItems().get(2).getDueDate());
+
+        // The cached date moves on as soon as the clock passes midnight
+        time.advanceMillis(60_000);
+        assertEquals(LocalDate.of(2024, 3, 2), clock.today());
+        assertTrue(service.borrowItem(3, user));
+        assertEquals(LocalDate.of(2024, 3, 9), dataStore.getItems().get(3).getDueDate());
+
+        assertTrue(service.getOverdueItems().isEmpty());
+        time.advanceMillis(7L * 24 * 60 * 60 * 1000);
+        assertEquals(Collections.singletonList(dataStore.getItems().get(2)), service.getOverdueItems());
+        assertTrue(service.isOverdue(LocalDate.of(2024, 3, 1)));
+        assertFalse(service.isOverdue(LocalDate.of(2024, 3, 2)));
+    }
+
+    @Test
+    public void testBulkAvailabilityAndOverdueChecks() {
+        MutableClock time = new MutableClock(Instant.parse("2024-03-10T10:00:00Z"));
+        LibraryService service = new LibraryService(dataStore, 16, null, new LibraryClock(time));
+        assertTrue(service.borrowItem(4, new User("Scanner")));
+
+        int[] uniqueIds = new int[130];
+        Arrays.fill(uniqueIds, 1);
+        uniqueIds[1] = 4;
+        uniqueIds[2] = 99;
+        uniqueIds[129] = 4;
+        BitSet available = service.checkAvailable(uniqueIds);
+        assertEquals(127, available.cardinality());
+        assertFalse(available.get(1));
+        assertFalse(available.get(2));
+        assertFalse(available.get(129));
+        for (int i = 0; i < uniqueIds.length; i++) {
+            assertEquals(service.isAvailable(uniqueIds[i]), available.get(i));
+        }
+
+        long today = LocalDate.of(2024, 3, 10).toEpochDay();
+        int[] borrowedEpochDays = {(int) today, (int) today - 7, (int) today - 8, (int) today - 400, (int) today + 3};
+        BitSet overdue = service.checkOverdue(borrowedEpochDays);
+        assertEquals(BitSet.valueOf(new long[]{0b01100}), overdue);
+        for (int i = 0; i < borrowedEpochDays.length; i++) {
+            assertEquals(service.isOverdue(LocalDate.ofEpochDay(borrowedEpochDays[i])), overdue.get(i));
+            assertEquals(overdue.get(i), service.isOverdue((long) borrowedEpochDays[i]));
+        }
+        assertTrue(service.checkOverdue(new int[0]).isEmpty());
+    }
+
+    @Test
+    public void testAnalyticsReportOnASnapshotOfLoans() {
+        MutableClock time = new MutableClock(Instant.parse("2024-03-01T10:00:00Z"));
+        LibraryService service = new LibraryService(dataStore, 16, null, new LibraryClock(time));
+        User alice = new User("Alice");
+        User bob = new User("Bob");
+        assertTrue(service.borrowItem(6, alice));
+        assertTrue(service.borrowItem(8, alice));
+        assertTrue(service.borrowItem(1, alice));
+        assertTrue(service.borrowItem(9, bob));
+        time.advanceMillis(3L * 24 * 60 * 60 * 1000);
+        assertTrue(service.borrowItem(12, bob));
+        // A renewal moves the due date but not the day the loan began
+        assertTrue(service.updateDueDate(12, LocalDate.of(2024, 3, 20)));
+        time.advanceMillis(6L * 24 * 60 * 60 * 1000);
+
+        LibraryAnalytics analytics = service.getAnalytics();
+        assertEquals(LocalDate.of(2024, 3, 10), analytics.getAsOf());
+        assertEquals(dataStore.getItems().size(), analytics.getCopyCount());
+        assertEquals(5, analytics.getLoanCount());
+
+        Map<ItemType, Long> loans = analytics.getLoansByType();
+        assertEquals(Long.valueOf(2), loans.get(ItemType.BOOK));
+        assertEquals(Long.valueOf(2), loans.get(ItemType.DVD));
+        assertEquals(Long.valueOf(1), loans.get(ItemType.VHS));
+        assertEquals(Long.valueOf(0), loans.get(ItemType.CD));
+        Map<ItemType, Long> copies = analytics.getCopiesByType();
+        assertEquals(Long.valueOf(6), copies.get(ItemType.BOOK));
+        assertEquals(Long.valueOf(4), copies.get(ItemType.DVD));
+        assertEquals(Long.valueOf(3), copies.get(ItemType.VHS));
+
+        assertEquals(Arrays.asList("Introduction to Algorithms", "Pi"),
+                new ArrayList<>(analytics.getTitlesMostOnLoan(2).keySet()));
+        assertEquals(Long.valueOf(1), analytics.getTitlesMostOnLoan(10).get("WarGames"));
+        Map<String, Long> overdue = analytics.getTopOverdueBorrowers(10);
+        assertEquals(Arrays.asList("Alice", "Bob"), new ArrayList<>(overdue.keySet()));
+        assertEquals(Arrays.asList(3L, 1L), new ArrayList<>(overdue.values()));
+        assertEquals(42.0 / 5, analytics.getAverageOpenLoanAgeDays(), 1e-9);
+
+        // Later loans do not change reports already taken
+        assertTrue(service.returnItem(6, alice));
+        assertEquals(5, analytics.getLoanCount());
+        assertEquals(Long.valueOf(2), analytics.getLoansByType().get(ItemType.BOOK));
+        assertEquals(4, service.getAnalytics().getLoanCount());
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advanceMillis(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
 }
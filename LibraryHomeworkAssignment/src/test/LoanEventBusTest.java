@@ -0,0 +1,163 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.LoanTransaction;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BackpressurePolicy;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryClock;
+import main.java.simplelibrary.services.LibraryService;
+import main.java.simplelibrary.services.LoanEventBus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LoanEventBusTest {
+    private LoanEventBus bus;
+    private Path spillDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        bus = new LoanEventBus();
+        spillDirectory = Files.createTempDirectory("library-events");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bus.close();
+        try (Stream<Path> files = Files.walk(spillDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSubscribersSeeServiceTransactions() throws Exception {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        LibraryClock clock = new LibraryClock(Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), ZoneOffset.UTC));
+        LibraryService libraryService = new LibraryService(dataStore, 16, null, clock);
+        libraryService.addAuditSink(bus);
+
+        List<LoanTransaction> received = Collections.synchronizedList(new ArrayList<>());
+        LoanEventBus.Subscription subscription = bus.subscribe("notifications", received::addAll, 64, BackpressurePolicy.BLOCK);
+
+        User user = new User("Subscriber");
+        assertTrue(libraryService.borrowItem(1, user));
+        assertTrue(libraryService.borrowItem(2, user));
+        assertTrue(libraryService.returnItem(1, user));
+        assertTrue(libraryService.updateDueDate(2, clock.today().minusDays(1)));
+        assertEquals(1, libraryService.announceOverdueLoans());
+        // Already announced
+        assertEquals(0, libraryService.announceOverdueLoans());
+
+        subscription.close();
+        List<LoanTransaction.Type> types = new ArrayList<>();
+        for (LoanTransaction transaction : received) {
+            types.add(transaction.getType());
+        }
+        assertEquals(List.of(LoanTransaction.Type.BORROWED, LoanTransaction.Type.BORROWED, LoanTransaction.Type.RETURNED,
+                LoanTransaction.Type.RENEWED, LoanTransaction.Type.OVERDUE), types);
+        assertEquals(2, received.get(4).getUniqueId());
+        assertEquals(5, subscription.getDeliveredCount());
+        assertEquals(0, subscription.getLag());
+    }
+
+    @Test
+    public void testOverdueLoansWaitForSomeoneToTell() throws Exception {
+        LibraryDataStore dataStore = new LibraryDataStore();
+        CSVUtility.loadItemsFromCSV(dataStore, "src/main/resources/inventory.csv");
+        LibraryClock clock = new LibraryClock(Clock.fixed(Instant.parse("2024-05-01T12:00:00Z"), ZoneOffset.UTC));
+        LibraryService libraryService = new LibraryService(dataStore, 16, null, clock);
+        User user = new User("Late");
+        assertTrue(libraryService.borrowItem(1, user));
+        assertTrue(libraryService.updateDueDate(1, clock.today().minusDays(1)));
+
+        // No sink, then a bus with no subscribers: the loan is held back both times
+        assertEquals(0, libraryService.announceOverdueLoans());
+        libraryService.addAuditSink(bus);
+        assertEquals(0, libraryService.announceOverdueLoans());
+
+        List<LoanTransaction> received = Collections.synchronizedList(new ArrayList<>());
+        LoanEventBus.Subscription subscription = bus.subscribe("overdue", received::addAll, 64, BackpressurePolicy.BLOCK);
+        assertEquals(1, libraryService.announceOverdueLoans());
+        assertEquals(0, libraryService.announceOverdueLoans());
+        subscription.close();
+        assertEquals(1, received.size());
+        assertEquals(LoanTransaction.Type.OVERDUE, received.get(0).getType());
+    }
+
+    @Test
+    public void testSlowSubscriberDropsWithoutAffectingOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        LoanEventBus.Subscription slow = bus.subscribe("slow", batch -> await(release), 8, BackpressurePolicy.DROP);
+        List<LoanTransaction> fastReceived = Collections.synchronizedList(new ArrayList<>());
+        LoanEventBus.Subscription fast = bus.subscribe("fast", fastReceived::addAll, 1024, BackpressurePolicy.DROP);
+
+        for (int i = 0; i < 500; i++) {
+            bus.record(transaction(i));
+        }
+        assertTrue(slow.getDroppedCount() > 0);
+        assertTrue(slow.getLag() > 0);
+        release.countDown();
+        slow.close();
+        fast.close();
+
+        assertEquals(500, slow.getDeliveredCount() + slow.getDroppedCount());
+        assertEquals(500, fastReceived.size());
+        assertEquals(0, fast.getDroppedCount());
+    }
+
+    @Test
+    public void testSpilledEventsAreDeliveredInOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        LoanEventBus.Subscription subscription = bus.subscribe("replication", batch -> {
+            await(release);
+            for (LoanTransaction transaction : batch) {
+                received.add(transaction.getUniqueId());
+            }
+        }, 8, BackpressurePolicy.SPILL, spillDirectory);
+
+        for (int i = 0; i < 1000; i++) {
+            bus.record(transaction(i));
+        }
+        assertTrue(subscription.getSpilledCount() > 0);
+        assertEquals(1000, subscription.getLag() + subscription.getDeliveredCount());
+        release.countDown();
+        subscription.close();
+
+        assertEquals(1000, received.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+        assertEquals(0, subscription.getDroppedCount());
+    }
+
+    private static LoanTransaction transaction(int uniqueId) {
+        return new LoanTransaction(LoanTransaction.Type.BORROWED, uniqueId, new User("Simon"), 19_000L + uniqueId, uniqueId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
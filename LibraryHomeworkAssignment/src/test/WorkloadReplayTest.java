@@ -0,0 +1,98 @@
+package test;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.services.BulkCSVLoader;
+import main.java.simplelibrary.services.LibraryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import test.benchmark.ReplayDriver;
+import test.benchmark.WorkloadGenerator;
+import test.benchmark.WorkloadGenerator.Op;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class WorkloadReplayTest {
+    private Path catalogue;
+    private Path trace;
+
+    @Before
+    public void setup() throws IOException {
+        catalogue = Files.createTempFile("workload", ".csv");
+        trace = Files.createTempFile("workload", ".trace");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(catalogue);
+        Files.deleteIfExists(trace);
+    }
+
+    @Test
+    public void testSameSeedGivesSameWorkload() throws IOException {
+        WorkloadGenerator generator = new WorkloadGenerator(7, 500, 50, 0.9);
+        generator.writeCatalogue(catalogue);
+        generator.writeTrace(trace, 5_000);
+        byte[] firstCatalogue = Files.readAllBytes(catalogue);
+        byte[] firstTrace = Files.readAllBytes(trace);
+
+        WorkloadGenerator again = new WorkloadGenerator(7, 500, 50, 0.9);
+        again.writeCatalogue(catalogue);
+        again.writeTrace(trace, 5_000);
+
+        assertArrayEquals(firstCatalogue, Files.readAllBytes(catalogue));
+        assertArrayEquals(firstTrace, Files.readAllBytes(trace));
+    }
+
+    @Test
+    public void testCatalogueLoadsWithTheGeneratedCopyCounts() throws IOException {
+        WorkloadGenerator generator = new WorkloadGenerator(3, 1_000, 10, 0.9);
+        int copies = generator.writeCatalogue(catalogue);
+
+        LibraryDataStore dataStore = BulkCSVLoader.loadNewStore(catalogue, 2, new ArrayList<>());
+
+        assertEquals(copies, dataStore.getItems().size());
+        for (int itemId = 1; itemId <= 1_000; itemId++) {
+            assertEquals(generator.getCopies(itemId), dataStore.availableCopies(itemId).size());
+        }
+    }
+
+    @Test
+    public void testSingleThreadedReplayMatchesTheTrace() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator(11, 200, 40, 1.1);
+        generator.writeCatalogue(catalogue);
+        generator.writeTrace(trace, 20_000);
+        LibraryDataStore dataStore = BulkCSVLoader.loadNewStore(catalogue, 2, new ArrayList<>());
+
+        ReplayDriver.Report report = ReplayDriver.replay(new LibraryService(dataStore), dataStore,
+                ReplayDriver.Trace.read(trace), 1);
+
+        assertEquals(Collections.emptyList(), report.getViolations());
+        // Replayed in trace order, no borrow finds the shelf empty
+        assertEquals(0, report.getRejected(Op.BORROW));
+        assertEquals(0, report.getRejected(Op.RETURN));
+        assertTrue(report.getCompleted(Op.BORROW) > 0);
+    }
+
+    @Test
+    public void testConcurrentReplayLeavesTheLibraryConsistent() throws Exception {
+        WorkloadGenerator generator = new WorkloadGenerator(5, 100, 64, 1.1);
+        generator.writeCatalogue(catalogue);
+        generator.writeTrace(trace, 40_000);
+        LibraryDataStore dataStore = BulkCSVLoader.loadNewStore(catalogue, 2, new ArrayList<>());
+
+        ReplayDriver.Report report = ReplayDriver.replay(new LibraryService(dataStore), dataStore,
+                ReplayDriver.Trace.read(trace), 4);
+
+        assertEquals(Collections.emptyList(), report.getViolations());
+        assertEquals(40_000, report.getCompleted(Op.AVAILABLE) + report.getCompleted(Op.BORROWED)
+                + report.getCompleted(Op.SEARCH) + report.getCompleted(Op.BORROW) + report.getRejected(Op.BORROW)
+                + report.getCompleted(Op.RETURN) + report.getRejected(Op.RETURN));
+    }
+}
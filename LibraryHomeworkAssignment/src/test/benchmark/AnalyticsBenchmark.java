@@ -0,0 +1,136 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryAnalytics;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Management reports computed with LibraryAnalytics, against the same figures gathered
+// the old way with one getBorrowedItems call per patron, and how analytics running in
+// the background affects borrowing.
+//   "per-patron calls"          loans per type from getBorrowedItems for every patron,
+//                               plus getOverdueItems
+//   "analytics parallelism=N"   a snapshot and all LibraryAnalytics reports on a
+//                               ForkJoinPool of N threads, N doubling up to the core count
+//   "borrowItem+returnItem"     alone, then while another thread takes reports non-stop
+// Usage: AnalyticsBenchmark [-items 1000000] [-patrons 50000] [-threads 4]
+//                           [-warmup s] [-time s] [-out results.csv]
+public class AnalyticsBenchmark {
+    // Share of copies on loan, and of those, the share with a due date in the past
+    private static final int LOAN_PERCENT = 30;
+    private static final int OVERDUE_PERCENT = 10;
+    private static final int REPORT_LIMIT = 20;
+    // Held so the quieter level is not lost when the logger is garbage collected
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        Harness harness = Harness.fromArgs(args);
+        int items = 1_000_000;
+        int patrons = 50_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-items")) {
+                items = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-patrons")) {
+                patrons = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        LibraryDataStore dataStore = new LibraryDataStore(items);
+        ItemType[] types = ItemType.values();
+        for (int uniqueId = 1; uniqueId <= items; uniqueId++) {
+            int itemId = 1 + uniqueId / 3;
+            dataStore.addItem(types[uniqueId % types.length].create(uniqueId, itemId, "Title " + itemId));
+        }
+        LibraryService libraryService = new LibraryService(dataStore);
+        User[] users = new User[patrons];
+        for (int p = 0; p < patrons; p++) {
+            users[p] = new User("Patron" + p);
+        }
+        LocalDate lastWeek = LocalDate.now().minusDays(7);
+        int lent = 0;
+        for (int uniqueId = 1; uniqueId <= items; uniqueId++) {
+            if (uniqueId % 100 < LOAN_PERCENT) {
+                libraryService.borrowItem(uniqueId, users[lent++ % patrons]);
+                if (lent % 100 < OVERDUE_PERCENT) {
+                    libraryService.updateDueDate(uniqueId, lastWeek);
+                }
+            }
+        }
+        String label = items + " items";
+
+        Harness.printHeader();
+        harness.run("per-patron calls " + label, 1, (thread, iteration) -> {
+            Map<ItemType, Long> byType = new EnumMap<>(ItemType.class);
+            for (User user : users) {
+                for (Item item : libraryService.getBorrowedItems(user)) {
+                    byType.merge(ItemType.of(item), 1L, Long::sum);
+                }
+            }
+            libraryService.getOverdueItems();
+        });
+        double single = 0;
+        for (int parallelism = 1; parallelism <= threads; parallelism *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                double opsPerSecond = harness.run("analytics parallelism=" + parallelism + " " + label, 1,
+                        (thread, iteration) -> report(libraryService.getAnalytics(pool))).getOpsPerSecond();
+                if (parallelism == 1) {
+                    single = opsPerSecond;
+                } else {
+                    System.out.printf("  speedup over parallelism=1: %.2fx%n", opsPerSecond / single);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        int perThread = items / threads;
+        User[] borrowers = new User[threads];
+        for (int t = 0; t < threads; t++) {
+            borrowers[t] = new User("Bench" + t);
+        }
+        Harness.Operation borrowAndReturn = (thread, iteration) -> {
+            int uniqueId = 1 + thread * perThread + (int) (iteration % perThread);
+            if (libraryService.borrowItem(uniqueId, borrowers[thread])) {
+                libraryService.returnItem(uniqueId, borrowers[thread]);
+            }
+        };
+        harness.run("borrowItem+returnItem " + label, threads, borrowAndReturn);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Thread reporter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                report(libraryService.getAnalytics(pool));
+            }
+        }, "analytics-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        try {
+            harness.run("borrowItem+returnItem, with analytics " + label, threads, borrowAndReturn);
+        } finally {
+            reporter.interrupt();
+            reporter.join();
+            pool.shutdown();
+        }
+    }
+
+    private static void report(LibraryAnalytics analytics) {
+        analytics.getLoansByType();
+        analytics.getCopiesByType();
+        analytics.getTitlesMostOnLoan(REPORT_LIMIT);
+        analytics.getTopOverdueBorrowers(REPORT_LIMIT);
+        analytics.getAverageOpenLoanAgeDays();
+    }
+}
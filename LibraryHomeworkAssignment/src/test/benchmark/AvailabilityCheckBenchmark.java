@@ -0,0 +1,103 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.ItemStoreBackend;
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Shelving-scan checks: one scan is BATCH barcodes, checked one call at a time and with
+// the bulk checkAvailable/checkOverdue. Every run does one scan per operation, so ops/s
+// compare directly; ns per check is printed after each run.
+//   isAvailable x BATCH            isAvailable per uniqueId
+//   checkAvailable BATCH           one bulk call
+//   isOverdue(LocalDate) x BATCH   isOverdue per date, as scanners call it today
+//   isOverdue(long) x BATCH        the epoch day overload
+//   checkOverdue BATCH             one bulk call
+// Availability is run on both item store backends.
+// Usage: AvailabilityCheckBenchmark [-items 1000000] [-threads 4] [-warmup s] [-time s] [-out results.csv]
+public class AvailabilityCheckBenchmark {
+    private static final int BATCH = 1024;
+    // Held so the quieter level is not lost when the logger is garbage collected
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        Harness harness = Harness.fromArgs(args);
+        int items = 1_000_000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-items")) {
+                items = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                maxThreads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        // A few scans per thread, so the runs do not measure one scan's cache footprint
+        Random random = new Random(1);
+        int[][] scans = new int[16][BATCH];
+        LocalDate[][] dateScans = new LocalDate[scans.length][BATCH];
+        int[][] dayScans = new int[scans.length][BATCH];
+        long today = LocalDate.now().toEpochDay();
+        for (int s = 0; s < scans.length; s++) {
+            for (int i = 0; i < BATCH; i++) {
+                // One in fifty barcodes is not in the catalogue
+                scans[s][i] = 1 + random.nextInt(items + items / 50);
+                dayScans[s][i] = (int) (today - random.nextInt(30));
+                dateScans[s][i] = LocalDate.ofEpochDay(dayScans[s][i]);
+            }
+        }
+
+        Harness.printHeader();
+        for (ItemStoreBackend backend : ItemStoreBackend.values()) {
+            LibraryDataStore dataStore = new LibraryDataStore(items, backend);
+            for (int uniqueId = 1; uniqueId <= items; uniqueId++) {
+                dataStore.addItem(new Book(uniqueId, uniqueId, "Title " + uniqueId));
+            }
+            LibraryService libraryService = new LibraryService(dataStore);
+            User user = new User("Lender");
+            for (int uniqueId = 1; uniqueId <= items; uniqueId += 3) {
+                libraryService.borrowItem(uniqueId, user);
+            }
+            String label = items + " items " + backend;
+
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                perCheck(harness.run("isAvailable x" + BATCH + " " + label, threads, (thread, iteration) -> {
+                    int[] scan = scans[(int) (iteration & (scans.length - 1))];
+                    for (int uniqueId : scan) {
+                        libraryService.isAvailable(uniqueId);
+                    }
+                }));
+                perCheck(harness.run("checkAvailable " + BATCH + " " + label, threads, (thread, iteration) ->
+                        libraryService.checkAvailable(scans[(int) (iteration & (scans.length - 1))])));
+            }
+        }
+
+        LibraryService libraryService = new LibraryService(new LibraryDataStore());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            perCheck(harness.run("isOverdue(LocalDate) x" + BATCH, threads, (thread, iteration) -> {
+                for (LocalDate date : dateScans[(int) (iteration & (scans.length - 1))]) {
+                    libraryService.isOverdue(date);
+                }
+            }));
+            perCheck(harness.run("isOverdue(long) x" + BATCH, threads, (thread, iteration) -> {
+                for (int day : dayScans[(int) (iteration & (scans.length - 1))]) {
+                    libraryService.isOverdue((long) day);
+                }
+            }));
+            perCheck(harness.run("checkOverdue " + BATCH, threads, (thread, iteration) ->
+                    libraryService.checkOverdue(dayScans[(int) (iteration & (scans.length - 1))])));
+        }
+    }
+
+    private static void perCheck(Harness.Result result) {
+        System.out.printf("  %.1f ns per check, %d bytes allocated per check%n",
+                1e9 / (result.getOpsPerSecond() * BATCH), result.getAllocatedBytesPerOp() / BATCH);
+    }
+}
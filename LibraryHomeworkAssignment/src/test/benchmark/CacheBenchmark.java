@@ -0,0 +1,107 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.CachingLibraryService;
+import main.java.simplelibrary.services.LibraryClock;
+import main.java.simplelibrary.services.LibraryMetrics;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// A web front end's query mix with and without CachingLibraryService in front of the
+// service. Items and patrons are both picked from Zipfian distributions, so a few popular
+// items and busy patrons account for most requests, as they do in practice. Per 100
+// requests: 60 isAvailable, 30 getBorrowedItems and 10 borrows or returns.
+// Usage: CacheBenchmark [-size 1000000] [-users 100000] [-cacheSize 10000] [-skew 0.99]
+//                       [-threads 8] [-warmup s] [-time s] [-out results.csv]
+public class CacheBenchmark {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final Logger CSV_LOGGER = Logger.getLogger(CSVUtility.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        CSV_LOGGER.setLevel(Level.WARNING);
+        Harness harness = Harness.fromArgs(args);
+        int size = 1_000_000;
+        int userCount = 100_000;
+        int cacheSize = 10_000;
+        double skew = 0.99;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-size")) {
+                size = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-users")) {
+                userCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-cacheSize")) {
+                cacheSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-skew")) {
+                skew = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                maxThreads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        Zipf items = new Zipf(size, skew);
+        Zipf patrons = new Zipf(userCount, skew);
+        User[] users = new User[userCount];
+        for (int u = 0; u < userCount; u++) {
+            users[u] = new User("Patron" + u);
+        }
+
+        Path csv = Files.createTempFile("catalogue", ".csv");
+        try {
+            SyntheticCatalogue.write(csv, size);
+            Harness.printHeader();
+            for (boolean cached : new boolean[]{false, true}) {
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    LibraryDataStore dataStore = new LibraryDataStore(size);
+                    CSVUtility.loadItemsFromCSV(dataStore, csv.toString());
+                    LibraryService libraryService = new LibraryService(dataStore, 64, null, LibraryClock.system(), new LibraryMetrics());
+                    CachingLibraryService cache = cached ? new CachingLibraryService(libraryService, cacheSize) : null;
+
+                    harness.run((cached ? "zipf mix cached" : "zipf mix uncached"), threads, (thread, iteration) -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        int request = random.nextInt(100);
+                        if (request < 60) {
+                            int uniqueId = 1 + items.next(random);
+                            if (cache != null) {
+                                cache.isAvailable(uniqueId);
+                            } else {
+                                libraryService.isAvailable(uniqueId);
+                            }
+                        } else if (request < 90) {
+                            User user = users[patrons.next(random)];
+                            if (cache != null) {
+                                cache.getBorrowedItems(user);
+                            } else {
+                                libraryService.getBorrowedItems(user);
+                            }
+                        } else {
+                            int uniqueId = 1 + items.next(random);
+                            User user = users[patrons.next(random)];
+                            if (!libraryService.borrowItem(uniqueId, user)) {
+                                libraryService.returnItem(uniqueId, user);
+                            }
+                        }
+                    });
+                    LibraryMetrics metrics = libraryService.getMetrics();
+                    System.out.printf("    contended stripe locks %,d, lock wait p99 %,d ns%n",
+                            metrics.getContendedLockCount(), metrics.getLockWaits().getPercentileNanos(99));
+                    if (cache != null) {
+                        System.out.println("    isAvailable cache: " + cache.getAvailabilityStats());
+                        System.out.println("    getBorrowedItems cache: " + cache.getBorrowedItemsStats());
+                        cache.close();
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+}
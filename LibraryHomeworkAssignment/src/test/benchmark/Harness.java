@@ -0,0 +1,219 @@
+package test.benchmark;
+
+import main.java.simplelibrary.services.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Small benchmark runner used by the benchmarks in this package. Runs an operation on a
+// number of threads for a warm-up period and then a measurement period, and reports
+// throughput, latency percentiles, allocated bytes per operation and GC activity.
+//
+// Every operation is timed individually, so results for operations that take only a few
+// nanoseconds include the cost of System.nanoTime. Allocation is only counted on the
+// worker threads, not on pools the operation hands work to.
+public class Harness {
+
+    public interface Operation {
+        // Called repeatedly by each worker thread; iteration counts up from 0 per thread
+        void run(int thread, long iteration) throws Exception;
+    }
+
+    private final long warmupMillis;
+    private final long measureMillis;
+    private final Path resultsFile;
+
+    // Results are appended to resultsFile as CSV when it is not null, so runs can be compared
+    public Harness(long warmupMillis, long measureMillis, Path resultsFile) {
+        this.warmupMillis = warmupMillis;
+        this.measureMillis = measureMillis;
+        this.resultsFile = resultsFile;
+    }
+
+    // Reads "-warmup <s>", "-time <s>" and "-out <file>" from the command line
+    public static Harness fromArgs(String[] args) {
+        long warmup = 1, time = 3;
+        Path out = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-warmup")) {
+                warmup = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-time")) {
+                time = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-out")) {
+                out = Paths.get(args[++i]);
+            }
+        }
+        return new Harness(warmup * 1000, time * 1000, out);
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-40s %7s %14s %10s %10s %10s %10s %12s %6s %8s%n",
+                "benchmark", "threads", "ops/s", "p50 ns", "p99 ns", "p99.9 ns", "max ns", "alloc B/op", "gcs", "gc ms");
+    }
+
+    public Result run(String name, int threads, Operation operation) throws Exception {
+        Worker[] workers = new Worker[threads];
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] gcBefore = new long[2];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(t, operation, start, failure);
+            workers[t].start();
+        }
+
+        start.await();
+        Thread.sleep(warmupMillis);
+        gcTotals(gcBefore);
+        for (Worker worker : workers) {
+            worker.measuring = true;
+        }
+        Thread.sleep(measureMillis);
+        for (Worker worker : workers) {
+            worker.running = false;
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        long begin = Long.MAX_VALUE, end = 0;
+        for (Worker worker : workers) {
+            begin = Math.min(begin, worker.measureStart);
+            end = Math.max(end, worker.measureEnd);
+        }
+        long elapsed = end - begin;
+        long[] gcAfter = new long[2];
+        gcTotals(gcAfter);
+        if (failure.get() != null) {
+            throw new IllegalStateException(name + " failed", failure.get());
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        long operations = 0, allocated = 0;
+        for (Worker worker : workers) {
+            latencies.add(worker.latencies);
+            operations += worker.measured;
+            allocated += worker.allocated;
+        }
+        Result result = new Result(name, threads, operations * 1e9 / Math.max(1, elapsed),
+                latencies, operations == 0 ? 0 : allocated / operations,
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        report(result);
+        return result;
+    }
+
+    private void report(Result result) throws IOException {
+        System.out.printf("%-40s %7d %,14.1f %,10d %,10d %,10d %,10d %,12d %6d %,8d%n",
+                result.name, result.threads, result.opsPerSecond,
+                result.latencies.getPercentileNanos(50), result.latencies.getPercentileNanos(99), result.latencies.getPercentileNanos(99.9),
+                result.latencies.getMaxNanos(), result.allocatedBytesPerOp, result.gcCount, result.gcMillis);
+        if (resultsFile != null) {
+            boolean header = !Files.exists(resultsFile);
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(resultsFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                if (header) {
+                    out.println("benchmark,threads,opsPerSecond,p50Nanos,p99Nanos,p999Nanos,maxNanos,allocatedBytesPerOp,gcCount,gcMillis");
+                }
+                out.printf("%s,%d,%.1f,%d,%d,%d,%d,%d,%d,%d%n",
+                        result.name, result.threads, result.opsPerSecond,
+                        result.latencies.getPercentileNanos(50), result.latencies.getPercentileNanos(99), result.latencies.getPercentileNanos(99.9),
+                        result.latencies.getMaxNanos(), result.allocatedBytesPerOp, result.gcCount, result.gcMillis);
+            }
+        }
+    }
+
+    private static void gcTotals(long[] totals) {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, collector.getCollectionCount());
+            totals[1] += Math.max(0, collector.getCollectionTime());
+        }
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static final class Worker extends Thread {
+        private final int index;
+        private final Operation operation;
+        private final CyclicBarrier start;
+        private final AtomicReference<Throwable> failure;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private volatile boolean measuring;
+        private volatile boolean running = true;
+        private long measured;
+        private long measureStart;
+        private long measureEnd;
+        private long allocated;
+
+        private Worker(int index, Operation operation, CyclicBarrier start, AtomicReference<Throwable> failure) {
+            super("benchmark-worker-" + index);
+            this.index = index;
+            this.operation = operation;
+            this.start = start;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                long iteration = 0;
+                while (!measuring && running) {
+                    operation.run(index, iteration++);
+                }
+                // Always measure at least one operation, so slow ones still get a result
+                long allocatedBefore = allocatedBytes();
+                measureStart = System.nanoTime();
+                do {
+                    long begin = System.nanoTime();
+                    operation.run(index, iteration++);
+                    latencies.record(System.nanoTime() - begin);
+                    measured++;
+                } while (running);
+                measureEnd = System.nanoTime();
+                allocated = allocatedBytes() - allocatedBefore;
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    public static final class Result {
+        private final String name;
+        private final int threads;
+        private final double opsPerSecond;
+        private final LatencyHistogram latencies;
+        private final long allocatedBytesPerOp;
+        private final long gcCount;
+        private final long gcMillis;
+
+        private Result(String name, int threads, double opsPerSecond, LatencyHistogram latencies,
+                       long allocatedBytesPerOp, long gcCount, long gcMillis) {
+            this.name = name;
+            this.threads = threads;
+            this.opsPerSecond = opsPerSecond;
+            this.latencies = latencies;
+            this.allocatedBytesPerOp = allocatedBytesPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public double getOpsPerSecond() {
+            return opsPerSecond;
+        }
+
+        public long getAllocatedBytesPerOp() {
+            return allocatedBytesPerOp;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.http.LibraryHttpServer;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LatencyHistogram;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Closed-loop load test for LibraryHttpServer. Each client keeps one request in flight
+// on a keep-alive connection: mostly availability checks, plus a borrow and a return of
+// its own item every ten requests. Reports requests per second and latency percentiles
+// for requests that completed inside the measurement period.
+// Usage: HttpLoadBenchmark [-clients 10000] [-size 100000] [-warmup s] [-time s] [-url http://host:port]
+// Without -url a server is started in this JVM. 10,000 clients need as many open files;
+// raise the limit with ulimit -n first.
+public class HttpLoadBenchmark {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final Logger CSV_LOGGER = Logger.getLogger(CSVUtility.class.getName());
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final int size;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile long measureFrom = Long.MAX_VALUE;
+    private volatile long measureUntil = Long.MAX_VALUE;
+    private volatile boolean running = true;
+
+    private HttpLoadBenchmark(String baseUrl, int size) {
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        this.baseUrl = baseUrl;
+        this.size = size;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        CSV_LOGGER.setLevel(Level.WARNING);
+        int clients = 10_000;
+        int size = 100_000;
+        long warmup = 5, time = 20;
+        String url = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "-clients": clients = Integer.parseInt(args[++i]); break;
+                case "-size": size = Integer.parseInt(args[++i]); break;
+                case "-warmup": warmup = Long.parseLong(args[++i]); break;
+                case "-time": time = Long.parseLong(args[++i]); break;
+                case "-url": url = args[++i]; break;
+                default: break;
+            }
+        }
+
+        LibraryHttpServer server = null;
+        if (url == null) {
+            Path csv = Files.createTempFile("catalogue", ".csv");
+            try {
+                SyntheticCatalogue.write(csv, size);
+                LibraryDataStore dataStore = new LibraryDataStore(size);
+                CSVUtility.loadItemsFromCSV(dataStore, csv.toString());
+                server = new LibraryHttpServer(new LibraryService(dataStore), new InetSocketAddress("127.0.0.1", 0));
+                server.start();
+                url = "http://127.0.0.1:" + server.getPort();
+            } finally {
+                Files.deleteIfExists(csv);
+            }
+        }
+        try {
+            new HttpLoadBenchmark(url, size).run(clients, warmup * 1000, time * 1000);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private void run(int clients, long warmupMillis, long measureMillis) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            next(c, 0, finished);
+        }
+        Thread.sleep(warmupMillis);
+        long start = System.nanoTime();
+        measureFrom = start;
+        measureUntil = start + measureMillis * 1_000_000;
+        Thread.sleep(measureMillis);
+        running = false;
+        finished.await();
+
+        double seconds = measureMillis / 1000.0;
+        System.out.printf("%,d clients: %,.0f req/s, p50 %,d us, p99 %,d us, p99.9 %,d us, max %,d us, %,d errors%n",
+                clients, completed.sum() / seconds, latency.getPercentileNanos(50) / 1000,
+                latency.getPercentileNanos(99) / 1000, latency.getPercentileNanos(99.9) / 1000,
+                latency.getMaxNanos() / 1000, errors.sum());
+    }
+
+    // Sends the client's next request and chains the one after it onto the response
+    private void next(int clientId, long iteration, CountDownLatch finished) {
+        if (!running) {
+            finished.countDown();
+            return;
+        }
+        // Clients own distinct items, so borrows and returns succeed unless a client
+        // shares an item with another once clients outnumber items
+        int own = 1 + clientId % size;
+        HttpRequest request;
+        int phase = (int) (iteration % 10);
+        if (phase == 0) {
+            request = post("/items/" + own + "/borrow?user=client" + clientId);
+        } else if (phase == 5) {
+            request = post("/items/" + own + "/return?user=client" + clientId);
+        } else {
+            int uniqueId = 1 + ThreadLocalRandom.current().nextInt(size);
+            request = HttpRequest.newBuilder(URI.create(baseUrl + "/items/" + uniqueId + "/available")).GET().build();
+        }
+        long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            long end = System.nanoTime();
+            if (start >= measureFrom && end <= measureUntil) {
+                if (failure != null || response.statusCode() >= 500) {
+                    errors.increment();
+                } else {
+                    completed.increment();
+                    latency.record(end - start);
+                }
+            }
+            next(clientId, iteration + 1, finished);
+        });
+    }
+
+    private HttpRequest post(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+}
@@ -0,0 +1,84 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.ItemStoreBackend;
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Heap retained per item and GC activity under a borrow/return load for each
+// ItemStoreBackend. Run each backend in a fresh JVM for the cleanest numbers.
+// Usage: ItemStoreFootprintBenchmark [items] [backend...]
+public class ItemStoreFootprintBenchmark {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final int TITLES = 100_000;
+    private static final int LOAD_ROUNDS = 5_000_000;
+
+    public static void main(String[] args) {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        ItemStoreBackend[] backends = ItemStoreBackend.values();
+        if (args.length > 1) {
+            backends = new ItemStoreBackend[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                backends[i - 1] = ItemStoreBackend.valueOf(args[i]);
+            }
+        }
+
+        String[] titles = new String[TITLES];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = "Catalogue Title " + i;
+        }
+        ItemType[] types = ItemType.values();
+
+        for (ItemStoreBackend backend : backends) {
+            long before = usedHeapAfterGc();
+            LibraryDataStore dataStore = new LibraryDataStore(items, backend);
+            for (int uniqueId = 1; uniqueId <= items; uniqueId++) {
+                int itemId = uniqueId / 4;
+                dataStore.addItem(types[itemId % types.length].create(uniqueId, itemId, titles[itemId % TITLES]));
+            }
+            long retained = usedHeapAfterGc() - before;
+
+            LibraryService libraryService = new LibraryService(dataStore);
+            User user = new User("Load");
+            long[] gcBefore = gcTotals();
+            long start = System.nanoTime();
+            for (int i = 0; i < LOAD_ROUNDS; i++) {
+                int uniqueId = 1 + ThreadLocalRandom.current().nextInt(items);
+                if (libraryService.borrowItem(uniqueId, user)) {
+                    libraryService.returnItem(uniqueId, user);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            long[] gcAfter = gcTotals();
+
+            System.out.printf("%-20s %,d items: %,d bytes retained (%d per item), borrow+return %,d ns, %d GCs taking %,d ms%n",
+                    backend, dataStore.getItems().size(), retained, retained / items, elapsed / LOAD_ROUNDS,
+                    gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, collector.getCollectionCount());
+            totals[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return totals;
+    }
+}
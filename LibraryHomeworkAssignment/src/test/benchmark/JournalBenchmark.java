@@ -0,0 +1,84 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.DurabilityMode;
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.data.LoanJournal;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// Borrow+return throughput with no journal and with each DurabilityMode, at several
+// thread counts. Usage: JournalBenchmark [seconds per run]
+public class JournalBenchmark {
+    private static final int[] THREADS = {1, 4, 16, 64};
+    private static final int ITEMS_PER_THREAD = 256;
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger(LibraryService.class.getName()).setLevel(Level.WARNING);
+        long millis = (args.length > 0 ? Long.parseLong(args[0]) : 2) * 1000;
+
+        for (int threads : THREADS) {
+            StringBuilder line = new StringBuilder(String.format("%3d threads:", threads));
+            line.append(String.format("  none %,10d ops/s", run(null, threads, millis)));
+            for (DurabilityMode mode : DurabilityMode.values()) {
+                line.append(String.format("  %s %,10d ops/s", mode, run(mode, threads, millis)));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static long run(DurabilityMode mode, int threads, long millis) throws Exception {
+        Path directory = Files.createTempDirectory("journal-bench");
+        LoanJournal journal = mode == null ? null : LoanJournal.open(directory, mode);
+        try {
+            LibraryDataStore dataStore = new LibraryDataStore();
+            for (int uniqueId = 0; uniqueId < threads * ITEMS_PER_THREAD; uniqueId++) {
+                dataStore.addItem(new Book(uniqueId, uniqueId, "Title"));
+            }
+            LibraryService libraryService = new LibraryService(dataStore, 1024, journal);
+
+            AtomicLong operations = new AtomicLong();
+            long deadline = System.currentTimeMillis() + millis;
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int first = t * ITEMS_PER_THREAD;
+                User user = new User("User" + t);
+                workers[t] = new Thread(() -> {
+                    long done = 0;
+                    for (int i = 0; System.currentTimeMillis() < deadline; i++) {
+                        int uniqueId = first + (i % ITEMS_PER_THREAD);
+                        libraryService.borrowItem(uniqueId, user);
+                        libraryService.returnItem(uniqueId, user);
+                        done += 2;
+                    }
+                    operations.addAndGet(done);
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return operations.get() * 1000 / millis;
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LibraryClock;
+import main.java.simplelibrary.services.LibraryMetrics;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Cost of recording LibraryMetrics: the hot operations with metrics on and off.
+// Usage: MetricsOverheadBenchmark [-size 1000000] [-threads 8] [-warmup s] [-time s] [-out results.csv]
+public class MetricsOverheadBenchmark {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final Logger CSV_LOGGER = Logger.getLogger(CSVUtility.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        CSV_LOGGER.setLevel(Level.WARNING);
+        Harness harness = Harness.fromArgs(args);
+        int size = 1_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-size")) {
+                size = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        Path csv = Files.createTempFile("catalogue", ".csv");
+        try {
+            SyntheticCatalogue.write(csv, size);
+            Harness.printHeader();
+            for (boolean enabled : new boolean[]{false, true}) {
+                LibraryDataStore dataStore = new LibraryDataStore(size);
+                CSVUtility.loadItemsFromCSV(dataStore, csv.toString());
+                LibraryService libraryService = new LibraryService(dataStore, 64, null, LibraryClock.system(),
+                        enabled ? new LibraryMetrics() : LibraryMetrics.disabled());
+                run(harness, libraryService, size, 1, enabled);
+                run(harness, libraryService, size, threads, enabled);
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    private static void run(Harness harness, LibraryService libraryService, int size, int threads, boolean enabled) throws Exception {
+        String label = enabled ? " metrics on" : " metrics off";
+        int perThread = size / threads / 2;
+        User[] users = new User[threads];
+        for (int t = 0; t < threads; t++) {
+            users[t] = new User("Bench" + t);
+        }
+        harness.run("borrowItem+returnItem" + label, threads, (thread, iteration) -> {
+            int uniqueId = 1 + thread * perThread + (int) (iteration % perThread);
+            if (libraryService.borrowItem(uniqueId, users[thread])) {
+                libraryService.returnItem(uniqueId, users[thread]);
+            }
+        });
+        harness.run("isAvailable" + label, threads, (thread, iteration) ->
+                libraryService.isAvailable(1 + ThreadLocalRandom.current().nextInt(size)));
+    }
+}
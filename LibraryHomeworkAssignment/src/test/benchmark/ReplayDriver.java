@@ -0,0 +1,484 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Item;
+import main.java.simplelibrary.models.Loan;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.BulkCSVLoader;
+import main.java.simplelibrary.services.CSVUtility;
+import main.java.simplelibrary.services.LatencyHistogram;
+import main.java.simplelibrary.services.LibraryService;
+import test.benchmark.WorkloadGenerator.Op;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Replays a WorkloadGenerator trace against a LibraryService as fast as it will go and
+// reports throughput, latency per operation and whether the library is still consistent.
+//
+// Each patron's requests are replayed in trace order by one thread, with patrons spread
+// over the threads, so the interleaving between patrons varies from run to run but each
+// patron's own history does not. A borrow can still find the shelf empty when another
+// patron got there first in this run; it is counted as rejected, and the patron's later
+// return of it is skipped.
+//
+// Checked while replaying: a patron's loan list always matches the copies the driver
+// knows it borrowed, and available copy counts stay between 0 and the number catalogued.
+// Checked afterwards: every copy is either on the shelf or on loan to exactly one patron
+// and listed under that patron only, and the loan count, the availability index and the
+// inventory snapshot all agree with that.
+//
+// Usage: ReplayDriver [-catalogue in.csv -trace in.trace] [-threads 1,2,4] [-patronRate 2]
+//        Without files, a workload is generated from -seed, -titles, -patrons, -operations
+//        and -skew as in WorkloadGenerator. -patronRate is requests per patron per minute,
+//        used to turn throughput into a number of patrons one node can serve.
+public class ReplayDriver {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final Logger CSV_LOGGER = Logger.getLogger(CSVUtility.class.getName());
+    private static final int MAX_VIOLATIONS = 20;
+    private static final Op[] OPS = Op.values();
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        CSV_LOGGER.setLevel(Level.WARNING);
+        Path catalogue = null;
+        Path trace = null;
+        String threadCounts = String.valueOf(Runtime.getRuntime().availableProcessors());
+        double patronRate = 2;
+        long seed = 1;
+        int titles = 250_000;
+        int patrons = 100_000;
+        long operations = 10_000_000;
+        double skew = 0.9;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-catalogue")) {
+                catalogue = Paths.get(args[++i]);
+            } else if (args[i].equals("-trace")) {
+                trace = Paths.get(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                threadCounts = args[++i];
+            } else if (args[i].equals("-patronRate")) {
+                patronRate = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-titles")) {
+                titles = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-patrons")) {
+                patrons = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-operations")) {
+                operations = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-skew")) {
+                skew = Double.parseDouble(args[++i]);
+            }
+        }
+
+        boolean generated = catalogue == null || trace == null;
+        if (generated) {
+            catalogue = Files.createTempFile("workload", ".csv");
+            trace = Files.createTempFile("workload", ".trace");
+            WorkloadGenerator generator = new WorkloadGenerator(seed, titles, patrons, skew);
+            generator.writeCatalogue(catalogue);
+            generator.writeTrace(trace, operations);
+        }
+        boolean consistent = true;
+        try {
+            Trace requests = Trace.read(trace);
+            for (String value : threadCounts.split(",")) {
+                int threads = Integer.parseInt(value.trim());
+                LibraryDataStore dataStore = BulkCSVLoader.loadNewStore(catalogue, Runtime.getRuntime().availableProcessors(), new ArrayList<>());
+                Report report = replay(new LibraryService(dataStore), dataStore, requests, threads);
+                report.print(patronRate);
+                consistent &= report.getViolations().isEmpty();
+            }
+        } finally {
+            if (generated) {
+                Files.deleteIfExists(catalogue);
+                Files.deleteIfExists(trace);
+            }
+        }
+        if (!consistent) {
+            System.exit(1);
+        }
+    }
+
+    // The requests of a trace file, held in parallel arrays
+    public static final class Trace {
+        private final byte[] ops;
+        private final int[] patrons;
+        private final int[] itemIds;
+        private final int patronCount;
+
+        private Trace(byte[] ops, int[] patrons, int[] itemIds, int patronCount) {
+            this.ops = ops;
+            this.patrons = patrons;
+            this.itemIds = itemIds;
+            this.patronCount = patronCount;
+        }
+
+        public static Trace read(Path file) throws IOException {
+            int size = 0;
+            byte[] ops = new byte[1024];
+            int[] patrons = new int[1024];
+            int[] itemIds = new int[1024];
+            int patronCount = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int first = line.indexOf(',');
+                    int second = line.indexOf(',', first + 1);
+                    if (size == ops.length) {
+                        ops = Arrays.copyOf(ops, size * 2);
+                        patrons = Arrays.copyOf(patrons, size * 2);
+                        itemIds = Arrays.copyOf(itemIds, size * 2);
+                    }
+                    ops[size] = (byte) Op.valueOf(line.substring(0, first)).ordinal();
+                    patrons[size] = Integer.parseInt(line.substring(first + 1, second));
+                    itemIds[size] = Integer.parseInt(line.substring(second + 1));
+                    patronCount = Math.max(patronCount, patrons[size] + 1);
+                    size++;
+                }
+            }
+            return new Trace(Arrays.copyOf(ops, size), Arrays.copyOf(patrons, size),
+                    Arrays.copyOf(itemIds, size), patronCount);
+        }
+
+        public int size() {
+            return ops.length;
+        }
+    }
+
+    public static Report replay(LibraryService libraryService, LibraryDataStore dataStore, Trace trace, int threads) throws Exception {
+        Catalogue catalogue = new Catalogue(dataStore);
+        User[] users = new User[trace.patronCount];
+        for (int p = 0; p < users.length; p++) {
+            users[p] = new User("Patron" + p);
+        }
+        // Each thread replays the requests of its own patrons, in trace order
+        int[] counts = new int[threads];
+        for (int i = 0; i < trace.size(); i++) {
+            counts[threadOf(trace.patrons[i], threads)]++;
+        }
+        int[][] requests = new int[threads][];
+        for (int t = 0; t < threads; t++) {
+            requests[t] = new int[counts[t]];
+            counts[t] = 0;
+        }
+        for (int i = 0; i < trace.size(); i++) {
+            int thread = threadOf(trace.patrons[i], threads);
+            requests[thread][counts[thread]++] = i;
+        }
+
+        Replayer[] replayers = new Replayer[threads];
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        for (int t = 0; t < threads; t++) {
+            replayers[t] = new Replayer(libraryService, trace, requests[t], users, catalogue, start);
+            replayers[t].start();
+        }
+        start.await();
+        long begin = System.nanoTime();
+        for (Replayer replayer : replayers) {
+            replayer.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        Report report = new Report(threads, trace.size(), elapsed);
+        Map<User, Set<Integer>> ledger = new HashMap<>();
+        for (Replayer replayer : replayers) {
+            if (replayer.failure != null) {
+                throw new IllegalStateException("Replay thread failed", replayer.failure);
+            }
+            report.add(replayer);
+            for (Map.Entry<Long, Integer> loan : replayer.held.entrySet()) {
+                ledger.computeIfAbsent(users[(int) (loan.getKey() >>> 32)], user -> new HashSet<>()).add(loan.getValue());
+            }
+        }
+        checkConsistency(libraryService, dataStore, users, ledger, report);
+        return report;
+    }
+
+    private static int threadOf(int patron, int threads) {
+        int h = patron * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % threads;
+    }
+
+    // Titles and copy counts per itemId, read from the store before replaying
+    private static final class Catalogue {
+        private final String[] titles;
+        private final int[] copies;
+
+        private Catalogue(LibraryDataStore dataStore) {
+            int maxItemId = 0;
+            for (Item item : dataStore.getItems().values()) {
+                maxItemId = Math.max(maxItemId, item.getItemId());
+            }
+            titles = new String[maxItemId + 1];
+            copies = new int[maxItemId + 1];
+            for (Item item : dataStore.getItems().values()) {
+                titles[item.getItemId()] = item.getTitle();
+                copies[item.getItemId()]++;
+            }
+        }
+
+        // The title as a patron might have typed it so far: the first word and the start of the next
+        private String searchFor(int itemId) {
+            String title = titles[itemId];
+            int space = title.indexOf(' ');
+            return space < 0 ? title : title.substring(0, Math.min(title.length(), space + 4));
+        }
+    }
+
+    private static final class Replayer extends Thread {
+        private final LibraryService libraryService;
+        private final Trace trace;
+        private final int[] requests;
+        private final User[] users;
+        private final Catalogue catalogue;
+        private final CyclicBarrier start;
+        // (patron << 32 | itemId) to the uniqueId of the copy that patron borrowed
+        private final Map<Long, Integer> held = new HashMap<>();
+        private final int[] heldCount;
+        private final LatencyHistogram[] latencies = new LatencyHistogram[OPS.length];
+        private final long[] completed = new long[OPS.length];
+        private final long[] rejected = new long[OPS.length];
+        private final List<String> violations = new ArrayList<>();
+        private Throwable failure;
+
+        private Replayer(LibraryService libraryService, Trace trace, int[] requests, User[] users, Catalogue catalogue,
+                         CyclicBarrier start) {
+            super("replay-" + requests.length);
+            this.libraryService = libraryService;
+            this.trace = trace;
+            this.requests = requests;
+            this.users = users;
+            this.catalogue = catalogue;
+            this.start = start;
+            this.heldCount = new int[users.length];
+            for (int op = 0; op < OPS.length; op++) {
+                latencies[op] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                for (int request : requests) {
+                    replay(OPS[trace.ops[request]], trace.patrons[request], trace.itemIds[request]);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        private void replay(Op op, int patron, int itemId) {
+            User user = users[patron];
+            long key = (long) patron << 32 | itemId;
+            long begin = System.nanoTime();
+            boolean succeeded = true;
+            switch (op) {
+                case BORROW: {
+                    Item copy = libraryService.borrowAnyCopy(itemId, user);
+                    succeeded = copy != null;
+                    if (succeeded) {
+                        held.put(key, copy.getUniqueId());
+                        heldCount[patron]++;
+                    }
+                    break;
+                }
+                case RETURN: {
+                    Integer uniqueId = held.remove(key);
+                    if (uniqueId == null) {
+                        // The borrow was rejected in this run, so there is nothing to return
+                        rejected[op.ordinal()]++;
+                        return;
+                    }
+                    heldCount[patron]--;
+                    if (!libraryService.returnItem(uniqueId, user)) {
+                        violation("Patron" + patron + " could not return copy " + uniqueId + " they borrowed");
+                    }
+                    break;
+                }
+                case AVAILABLE: {
+                    int available = libraryService.getAvailableCopyCount(itemId);
+                    if (available < 0 || available > catalogue.copies[itemId]) {
+                        violation(available + " copies of itemId " + itemId + " on the shelf, but only "
+                                + catalogue.copies[itemId] + " catalogued");
+                    }
+                    break;
+                }
+                case BORROWED: {
+                    int loans = libraryService.getBorrowedItems(user).size();
+                    // Only this thread lends to this patron, so the count is exact
+                    if (loans != heldCount[patron]) {
+                        violation("Patron" + patron + " is listed with " + loans + " loans but borrowed " + heldCount[patron]);
+                    }
+                    break;
+                }
+                default:
+                    libraryService.searchTitles(catalogue.searchFor(itemId), 10, false);
+            }
+            latencies[op.ordinal()].record(System.nanoTime() - begin);
+            if (succeeded) {
+                completed[op.ordinal()]++;
+            } else {
+                rejected[op.ordinal()]++;
+            }
+        }
+
+        private void violation(String message) {
+            if (violations.size() < MAX_VIOLATIONS) {
+                violations.add(message);
+            }
+        }
+    }
+
+    private static void checkConsistency(LibraryService libraryService, LibraryDataStore dataStore, User[] users,
+                                         Map<User, Set<Integer>> ledger, Report report) {
+        // Each copy on loan is listed under its borrower and nobody else
+        Map<Integer, User> listedUnder = new HashMap<>();
+        for (User borrower : dataStore.getUsers().values()) {
+            Set<Item> borrowed = dataStore.borrowedItems(borrower);
+            if (borrowed == null) {
+                continue;
+            }
+            for (Item item : borrowed) {
+                User other = listedUnder.put(item.getUniqueId(), borrower);
+                if (other != null) {
+                    report.violation("Copy " + item.getUniqueId() + " is listed under both " + other + " and " + borrower);
+                }
+                Loan loan = item.getLoan();
+                if (loan == null) {
+                    report.violation("Copy " + item.getUniqueId() + " is on the shelf but listed under " + borrower);
+                } else if (!borrower.equals(loan.getBorrower())) {
+                    report.violation("Copy " + item.getUniqueId() + " is lent to " + loan.getBorrower() + " but listed under " + borrower);
+                }
+                if (dataStore.getItem(item.getUniqueId()) != item) {
+                    report.violation("Copy " + item.getUniqueId() + " is listed under " + borrower + " but not catalogued");
+                }
+            }
+        }
+        long onLoan = 0;
+        long onShelf = 0;
+        for (Item item : dataStore.getItems().values()) {
+            boolean available = item.getLoan() == null;
+            if (available) {
+                onShelf++;
+            } else {
+                onLoan++;
+                if (!listedUnder.containsKey(item.getUniqueId())) {
+                    report.violation("Copy " + item.getUniqueId() + " is on loan but not listed under any patron");
+                }
+            }
+            if (dataStore.availableCopies(item.getItemId()).contains(item) != available) {
+                report.violation("Availability index disagrees about copy " + item.getUniqueId());
+            }
+        }
+        if (dataStore.activeLoanCount() != onLoan) {
+            report.violation("Loan count is " + dataStore.activeLoanCount() + " but " + onLoan + " copies are on loan");
+        }
+        int inventory = libraryService.getInventorySnapshot().getItems().size();
+        if (inventory != onShelf) {
+            report.violation("Inventory lists " + inventory + " copies but " + onShelf + " are on the shelf");
+        }
+        // And the library's loans are exactly the ones the replay made
+        for (User user : users) {
+            Set<Integer> expected = ledger.getOrDefault(user, Collections.emptySet());
+            Set<Integer> actual = new HashSet<>();
+            for (Item item : libraryService.getBorrowedItems(user)) {
+                actual.add(item.getUniqueId());
+            }
+            if (!actual.equals(expected)) {
+                report.violation(user + " holds " + actual + " but borrowed " + expected);
+            }
+        }
+    }
+
+    public static final class Report {
+        private final int threads;
+        private final long requests;
+        private final long elapsedNanos;
+        private final LatencyHistogram[] latencies = new LatencyHistogram[OPS.length];
+        private final long[] completed = new long[OPS.length];
+        private final long[] rejected = new long[OPS.length];
+        private final List<String> violations = new ArrayList<>();
+
+        private Report(int threads, long requests, long elapsedNanos) {
+            this.threads = threads;
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+            for (int op = 0; op < OPS.length; op++) {
+                latencies[op] = new LatencyHistogram();
+            }
+        }
+
+        private void add(Replayer replayer) {
+            for (int op = 0; op < OPS.length; op++) {
+                latencies[op].add(replayer.latencies[op]);
+                completed[op] += replayer.completed[op];
+                rejected[op] += replayer.rejected[op];
+            }
+            for (String violation : replayer.violations) {
+                violation(violation);
+            }
+        }
+
+        private void violation(String message) {
+            if (violations.size() < MAX_VIOLATIONS) {
+                violations.add(message);
+            }
+        }
+
+        public double getRequestsPerSecond() {
+            return requests * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public long getCompleted(Op op) {
+            return completed[op.ordinal()];
+        }
+
+        // Borrows that found the shelf empty, and the returns skipped because of them
+        public long getRejected(Op op) {
+            return rejected[op.ordinal()];
+        }
+
+        // Empty when the library stayed consistent; at most MAX_VIOLATIONS are kept
+        public List<String> getViolations() {
+            return violations;
+        }
+
+        void print(double patronRate) {
+            System.out.printf("%d thread(s): %,d requests in %,d ms, %,.0f requests/s, about %,.0f patrons at %.1f requests/min each%n",
+                    threads, requests, elapsedNanos / 1_000_000, getRequestsPerSecond(),
+                    getRequestsPerSecond() * 60 / patronRate, patronRate);
+            System.out.printf("  %-10s %12s %10s %10s %10s %10s %10s%n", "op", "completed", "rejected", "p50 ns", "p99 ns", "p99.9 ns", "max ns");
+            for (Op op : OPS) {
+                LatencyHistogram histogram = latencies[op.ordinal()];
+                System.out.printf("  %-10s %,12d %,10d %,10d %,10d %,10d %,10d%n", op, completed[op.ordinal()], rejected[op.ordinal()],
+                        histogram.getPercentileNanos(50), histogram.getPercentileNanos(99), histogram.getPercentileNanos(99.9), histogram.getMaxNanos());
+            }
+            if (violations.isEmpty()) {
+                System.out.println("  consistent: every copy on the shelf or with exactly one patron");
+            } else {
+                System.out.println("  INCONSISTENT:");
+                for (String violation : violations) {
+                    System.out.println("    " + violation);
+                }
+            }
+        }
+    }
+}
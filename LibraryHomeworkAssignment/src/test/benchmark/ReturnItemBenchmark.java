@@ -0,0 +1,50 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.Book;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Measures returnItem + borrowItem round trips for a user who already holds many items.
+// With the uniqueId loan index the cost should stay flat as the loan count grows.
+public class ReturnItemBenchmark {
+
+    private static final int[] LOAN_COUNTS = {1, 1_000, 10_000, 100_000};
+    private static final int ROUNDS = 200_000;
+
+    public static void main(String[] args) {
+        Logger.getLogger(LibraryService.class.getName()).setLevel(Level.WARNING);
+
+        for (int loans : LOAN_COUNTS) {
+            LibraryDataStore dataStore = new LibraryDataStore();
+            for (int uniqueId = 1; uniqueId <= loans; uniqueId++) {
+                dataStore.addItem(new Book(uniqueId, 1, "Copy"));
+            }
+            LibraryService libraryService = new LibraryService(dataStore);
+            User user = new User("Institution");
+            for (int uniqueId = 1; uniqueId <= loans; uniqueId++) {
+                libraryService.borrowItem(uniqueId, user);
+            }
+
+            // Warm up, then measure
+            run(libraryService, user, loans, ROUNDS);
+            long start = System.nanoTime();
+            run(libraryService, user, loans, ROUNDS);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%,8d loans held: %,6d ns per return+borrow%n", loans, elapsed / ROUNDS);
+        }
+    }
+
+    private static void run(LibraryService libraryService, User user, int loans, int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            int uniqueId = 1 + (i % loans);
+            if (!libraryService.returnItem(uniqueId, user) || !libraryService.borrowItem(uniqueId, user)) {
+                throw new IllegalStateException("Round trip failed for uniqueId " + uniqueId);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.data.LibrarySnapshot;
+import main.java.simplelibrary.services.BulkCSVLoader;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+// Startup cost of loading a generated catalogue from CSV versus from the binary snapshot.
+// Both paths spend most of their time building the store's indexes and collecting the
+// garbage of a growing heap, so run with a fixed heap (-Xms equal to -Xmx) to compare them.
+// Usage: SnapshotLoadBenchmark [rows]
+public class SnapshotLoadBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        Path csv = Files.createTempFile("catalogue", ".csv");
+        Path snapshot = Files.createTempFile("catalogue", ".bin");
+        try {
+            SyntheticCatalogue.write(csv, rows);
+            LibrarySnapshot.write(snapshot, BulkCSVLoader.loadNewStore(csv, cores, new ArrayList<>()), 1);
+            System.out.printf("%,d rows: csv %,d bytes, snapshot %,d bytes%n", rows, Files.size(csv), Files.size(snapshot));
+
+            for (int round = 0; round < 5; round++) {
+                Load csvLoad = time(() -> BulkCSVLoader.loadNewStore(csv, cores, new ArrayList<>()));
+                Load snapshotLoad = time(() -> LibrarySnapshot.loadNewStore(snapshot));
+                System.out.printf("round %d: csv %,5d ms (gc %,5d ms) | snapshot %,5d ms (gc %,5d ms)%n",
+                        round, csvLoad.millis, csvLoad.gcMillis, snapshotLoad.millis, snapshotLoad.gcMillis);
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    private interface Loader {
+        LibraryDataStore load() throws IOException;
+    }
+
+    private static final class Load {
+        private long millis;
+        private long gcMillis;
+    }
+
+    // Each load starts from a collected heap with no earlier store alive, so the previous
+    // load's garbage is not charged to it; collector time during the load is reported apart
+    private static Load time(Loader loader) throws IOException {
+        System.gc();
+        Load load = new Load();
+        long gcStart = gcMillis();
+        long start = System.nanoTime();
+        LibraryDataStore dataStore = loader.load();
+        load.millis = (System.nanoTime() - start) / 1_000_000;
+        load.gcMillis = gcMillis() - gcStart;
+        if (dataStore.getItems().isEmpty()) {
+            throw new IllegalStateException("Nothing was loaded");
+        }
+        return load;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,27 @@
+package test.benchmark;
+
+import main.java.simplelibrary.models.ItemType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Catalogue CSV shared by the benchmarks: four copies per itemId, the types in turn and
+// one title per itemId
+public final class SyntheticCatalogue {
+
+    private SyntheticCatalogue() {
+    }
+
+    public static void write(Path csv, int rows) throws IOException {
+        ItemType[] types = ItemType.values();
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("UniqueID,ItemID,Type,Title\n");
+            for (int uniqueId = 1; uniqueId <= rows; uniqueId++) {
+                int itemId = uniqueId / 4;
+                writer.write(uniqueId + "," + itemId + "," + types[itemId % types.length].getCsvName() + ",Catalogue Title " + itemId + "\n");
+            }
+        }
+    }
+}
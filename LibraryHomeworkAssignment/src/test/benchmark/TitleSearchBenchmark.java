@@ -0,0 +1,105 @@
+package test.benchmark;
+
+import main.java.simplelibrary.data.LibraryDataStore;
+import main.java.simplelibrary.models.ItemType;
+import main.java.simplelibrary.models.User;
+import main.java.simplelibrary.services.LibraryService;
+
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Latency of LibraryService.searchTitles over a generated catalogue with one copy per title.
+// Titles are 2 to 6 words drawn from a skewed vocabulary, so common words have long
+// postings, as in a real catalogue. Queries are as typed: a short prefix, a word and a
+// partial second word, or two whole words.
+// Usage: TitleSearchBenchmark [-titles 5000000] [-threads 8] [-warmup s] [-time s] [-out results.csv]
+// Run with a heap large enough for the catalogue, e.g. -Xmx6g for 5M titles.
+public class TitleSearchBenchmark {
+    private static final Logger SERVICE_LOGGER = Logger.getLogger(LibraryService.class.getName());
+    private static final int VOCABULARY = 50_000;
+    private static final int QUERIES = 10_000;
+    private static final int LIMIT = 10;
+
+    public static void main(String[] args) throws Exception {
+        SERVICE_LOGGER.setLevel(Level.WARNING);
+        Harness harness = Harness.fromArgs(args);
+        int titleCount = 5_000_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-titles")) {
+                titleCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            }
+        }
+
+        Random random = new Random(42);
+        String[] vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = word(random);
+        }
+        String[] titles = new String[titleCount];
+        LibraryDataStore dataStore = new LibraryDataStore(titleCount);
+        long start = System.nanoTime();
+        for (int uniqueId = 1; uniqueId <= titleCount; uniqueId++) {
+            StringBuilder title = new StringBuilder();
+            int words = 2 + random.nextInt(5);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    title.append(' ');
+                }
+                String word = vocabulary[skewed(random)];
+                title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+            titles[uniqueId - 1] = title.toString();
+            dataStore.addItem(ItemType.BOOK.create(uniqueId, uniqueId, titles[uniqueId - 1]));
+        }
+        System.out.printf("Catalogued %,d items in %,d ms%n", titleCount, (System.nanoTime() - start) / 1_000_000);
+
+        LibraryService libraryService = new LibraryService(dataStore);
+        // Half the catalogue on loan, so the availability filter has work to do
+        User user = new User("Reader");
+        for (int uniqueId = 1; uniqueId <= titleCount; uniqueId += 2) {
+            libraryService.borrowItem(uniqueId, user);
+        }
+
+        String[][] queries = new String[3][QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            String[] words = titles[random.nextInt(titleCount)].split(" ");
+            queries[0][q] = words[0].substring(0, Math.min(words[0].length(), 1 + random.nextInt(3)));
+            queries[1][q] = words[0] + " " + words[1].substring(0, Math.min(words[1].length(), 2));
+            queries[2][q] = words[0] + " " + words[1] + " ";
+        }
+        String[] kinds = {"prefix", "word + prefix", "two words"};
+
+        Harness.printHeader();
+        for (int kind = 0; kind < kinds.length; kind++) {
+            String[] batch = queries[kind];
+            for (boolean availableOnly : new boolean[]{false, true}) {
+                String name = "searchTitles " + kinds[kind] + (availableOnly ? " available" : "");
+                for (int t : new int[]{1, threads}) {
+                    harness.run(name, t, (thread, iteration) ->
+                            libraryService.searchTitles(batch[(int) (iteration % QUERIES)], LIMIT, availableOnly));
+                    if (threads == 1) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static String word(Random random) {
+        char[] letters = new char[3 + random.nextInt(7)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    // Low indexes are much more likely, roughly like word frequencies in real titles
+    private static int skewed(Random random) {
+        double u = random.nextDouble();
+        return (int) (VOCABULARY * u * u * u);
+    }
+}
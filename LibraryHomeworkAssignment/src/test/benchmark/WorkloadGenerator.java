@@ -0,0 +1,226 @@
+package test.benchmark;
+
+import main.java.simplelibrary.models.ItemType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Seeded synthetic catalogues and request traces for capacity planning. The same seed and
+// sizes always give byte-for-byte the same files, so a run can be repeated on other
+// hardware or after a change.
+//
+// The catalogue is in the CSVUtility format. Titles are made of words from a generated
+// vocabulary. Popularity follows a Zipfian distribution over a shuffled order of the
+// itemIds, and popular titles get more copies: most titles have one or two copies, the
+// most popular ones up to MAX_COPIES.
+//
+// A trace is one request per line: "Op,Patron,ItemID". Patrons are also picked from a
+// Zipfian distribution, so a few busy patrons make many of the requests. Operations:
+//   BORROW     borrowAnyCopy of the itemId
+//   RETURN     return the copy of the itemId the patron holds
+//   AVAILABLE  getAvailableCopyCount of the itemId
+//   BORROWED   getBorrowedItems of the patron
+//   SEARCH     searchTitles for the start of the itemId's title, as typed so far
+// The generator keeps track of copies on the shelf and on loan as it goes, so replaying
+// a trace in order never borrows from an empty shelf or returns what was not borrowed.
+// ReplayDriver replays traces.
+//
+// Usage: WorkloadGenerator -catalogue out.csv -trace out.trace [-seed 1] [-titles 250000]
+//                          [-patrons 100000] [-operations 10000000] [-skew 0.9]
+public class WorkloadGenerator {
+    public enum Op { BORROW, RETURN, AVAILABLE, BORROWED, SEARCH }
+
+    static final int MAX_COPIES = 24;
+    // Loans a patron may have out at once
+    static final int MAX_LOANS = 12;
+    private static final int VOCABULARY = 20_000;
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ten", "vo", "shi", "del", "an", "or", "bel", "quin",
+            "sa", "tor", "el", "ny", "gar", "is", "mon", "du", "fen", "ro", "wy", "cal"};
+
+    private final long seed;
+    private final int titles;
+    private final int patrons;
+    private final double skew;
+    // Popularity rank to itemId, and copies per itemId; itemIds run from 1 to titles
+    private final int[] itemIdByRank;
+    private final int[] copies;
+    private final Zipf itemPopularity;
+    private final Zipf patronActivity;
+
+    public WorkloadGenerator(long seed, int titles, int patrons, double skew) {
+        this.seed = seed;
+        this.titles = titles;
+        this.patrons = patrons;
+        this.skew = skew;
+        Random random = new Random(seed);
+        this.itemIdByRank = new int[titles];
+        for (int i = 0; i < titles; i++) {
+            itemIdByRank[i] = i + 1;
+        }
+        for (int i = titles - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = itemIdByRank[i];
+            itemIdByRank[i] = itemIdByRank[j];
+            itemIdByRank[j] = swap;
+        }
+        this.copies = new int[titles + 1];
+        for (int rank = 0; rank < titles; rank++) {
+            // A geometric spread of one to a few copies, plus more for the most popular titles
+            int count = 1;
+            while (count < MAX_COPIES && random.nextInt(100) < 35) {
+                count++;
+            }
+            count += (int) (MAX_COPIES / Math.sqrt(rank + 1.0));
+            copies[itemIdByRank[rank]] = Math.min(MAX_COPIES, count);
+        }
+        this.itemPopularity = new Zipf(titles, skew);
+        this.patronActivity = new Zipf(patrons, skew);
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 1;
+        int titles = 250_000;
+        int patrons = 100_000;
+        long operations = 10_000_000;
+        double skew = 0.9;
+        Path catalogue = null;
+        Path trace = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-titles")) {
+                titles = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-patrons")) {
+                patrons = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-operations")) {
+                operations = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-skew")) {
+                skew = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-catalogue")) {
+                catalogue = Paths.get(args[++i]);
+            } else if (args[i].equals("-trace")) {
+                trace = Paths.get(args[++i]);
+            }
+        }
+        if (catalogue == null || trace == null) {
+            System.err.println("Usage: WorkloadGenerator -catalogue out.csv -trace out.trace [-seed 1] [-titles 250000]"
+                    + " [-patrons 100000] [-operations 10000000] [-skew 0.9]");
+            System.exit(2);
+        }
+        WorkloadGenerator generator = new WorkloadGenerator(seed, titles, patrons, skew);
+        int items = generator.writeCatalogue(catalogue);
+        generator.writeTrace(trace, operations);
+        System.out.printf("%,d titles, %,d copies in %s; %,d requests from %,d patrons in %s%n",
+                titles, items, catalogue, operations, patrons, trace);
+    }
+
+    public int getCopies(int itemId) {
+        return copies[itemId];
+    }
+
+    // Writes the catalogue and returns the number of copies in it. uniqueIds are dense
+    // from 1, with the copies of an itemId next to each other.
+    public int writeCatalogue(Path csv) throws IOException {
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        String[] vocabulary = vocabulary(random);
+        Zipf words = new Zipf(vocabulary.length, skew);
+        int uniqueId = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("UniqueID,ItemID,Type,Title\n");
+            StringBuilder title = new StringBuilder();
+            for (int itemId = 1; itemId <= titles; itemId++) {
+                title.setLength(0);
+                int length = 1 + random.nextInt(3) + random.nextInt(3);
+                for (int w = 0; w < length; w++) {
+                    if (w > 0) {
+                        title.append(' ');
+                    }
+                    title.append(vocabulary[words.next(random)]);
+                }
+                // Mostly books, then DVDs, CDs and the odd VHS
+                int kind = random.nextInt(100);
+                ItemType type = kind < 70 ? ItemType.BOOK : kind < 85 ? ItemType.DVD : kind < 97 ? ItemType.CD : ItemType.VHS;
+                for (int copy = 0; copy < copies[itemId]; copy++) {
+                    writer.write(++uniqueId + "," + itemId + "," + type.getCsvName() + "," + title + "\n");
+                }
+            }
+        }
+        return uniqueId;
+    }
+
+    private static String[] vocabulary(Random random) {
+        String[] words = new String[VOCABULARY];
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < words.length; i++) {
+            word.setLength(0);
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            words[i] = word.toString();
+        }
+        return words;
+    }
+
+    // Appends operations requests to the trace, starting from a fully stocked shelf
+    public void writeTrace(Path trace, long operations) throws IOException {
+        Random random = new Random(seed * 31 + 17);
+        int[] onShelf = copies.clone();
+        List<List<Integer>> loans = new ArrayList<>(patrons);
+        for (int p = 0; p < patrons; p++) {
+            loans.add(null);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(trace)) {
+            writer.write("Op,Patron,ItemID\n");
+            for (long i = 0; i < operations; i++) {
+                int patron = patronActivity.next(random);
+                int itemId = itemIdByRank[itemPopularity.next(random)];
+                Op op = pickOp(random.nextInt(100));
+                List<Integer> held = loans.get(patron);
+                if (op == Op.BORROW || op == Op.RETURN) {
+                    boolean canReturn = held != null && !held.isEmpty();
+                    boolean canBorrow = (held == null || held.size() < MAX_LOANS) && onShelf[itemId] > 0
+                            && (held == null || !held.contains(itemId));
+                    if (op == Op.RETURN && !canReturn || op == Op.BORROW && !canBorrow) {
+                        op = canReturn ? Op.RETURN : canBorrow ? Op.BORROW : Op.AVAILABLE;
+                    }
+                }
+                if (op == Op.BORROW) {
+                    if (held == null) {
+                        held = new ArrayList<>(MAX_LOANS);
+                        loans.set(patron, held);
+                    }
+                    held.add(itemId);
+                    onShelf[itemId]--;
+                } else if (op == Op.RETURN) {
+                    itemId = held.remove(random.nextInt(held.size()));
+                    onShelf[itemId]++;
+                }
+                writer.write(op.name() + "," + patron + "," + itemId + "\n");
+            }
+        }
+    }
+
+    // Per 100 requests: 8 borrows, 8 returns, 40 availability checks, 30 loan listings
+    // and 14 title searches
+    private static Op pickOp(int percent) {
+        if (percent < 8) {
+            return Op.BORROW;
+        } else if (percent < 16) {
+            return Op.RETURN;
+        } else if (percent < 56) {
+            return Op.AVAILABLE;
+        } else if (percent < 86) {
+            return Op.BORROWED;
+        }
+        return Op.SEARCH;
+    }
+}
@@ -0,0 +1,36 @@
+package test.benchmark;
+
+import java.util.Random;
+
+// Zipfian ranks in [0, n) by inverting the cumulative distribution, with rank 0 the most
+// popular. The table costs one double per rank and is shared by any number of threads.
+final class Zipf {
+    private final double[] cumulative;
+
+    Zipf(int n, double skew) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, skew);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    int next(Random random) {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < u) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}